@@ -0,0 +1,33 @@
+package com.company.bench;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry point of benchmarks.jar. Takes the usual JMH command line and always adds the
+ * GC profiler, so allocation rates are reported next to the scores. Unless a mode is
+ * given with -bm, the benchmarks run twice: once for throughput in ops/s and once in
+ * sample mode for latency percentiles in microseconds.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions command = new CommandLineOptions(args);
+        if (command.shouldHelp() || command.shouldList() || command.shouldListWithParams()
+                || command.shouldListProfilers() || command.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        new Runner(new OptionsBuilder().parent(command).addProfiler(GCProfiler.class).build()).run();
+        if (command.getBenchModes().isEmpty()) {
+            new Runner(new OptionsBuilder().parent(command).addProfiler(GCProfiler.class)
+                    .mode(Mode.SampleTime).timeUnit(TimeUnit.MICROSECONDS).build()).run();
+        }
+    }
+}
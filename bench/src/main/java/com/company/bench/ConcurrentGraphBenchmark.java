@@ -0,0 +1,97 @@
+package com.company.bench;
+
+import com.company.ConcurrentGraph;
+import com.company.Graph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link ConcurrentGraph}: reads on every core, and reads while a writer
+ * keeps adding friendships that are published every few milliseconds. Run with -t to
+ * compare read throughput at different thread counts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class ConcurrentGraphBenchmark {
+    /**
+     * Milliseconds between publishes in the read and write benchmark
+     */
+    private static final long PUBLISH_PERIOD = 10;
+
+    /**
+     * The shared graph, created again every iteration so the writes do not pile up
+     */
+    @State(Scope.Benchmark)
+    public static class Shared {
+        ConcurrentGraph graph;
+
+        @Setup(Level.Iteration)
+        public void share(GraphState state) {
+            graph = new ConcurrentGraph(state.graph);
+            graph.startPublishing(PUBLISH_PERIOD, TimeUnit.MILLISECONDS);
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            graph.close();
+        }
+    }
+
+    /**
+     * Position of one thread in the query sequence, so threads do not share a cursor
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        int nextVertex(GraphState state) {
+            position = (position + 1) & (state.samples.length - 1);
+            return state.samples[position];
+        }
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int[] neighbors(GraphState state, Shared shared, Cursor cursor) {
+        return shared.graph.neighbors(cursor.nextVertex(state));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int[] commonNeighbors(GraphState state, Shared shared, Cursor cursor) {
+        Graph snapshot = shared.graph.snapshot();
+        return snapshot.commonNeighbors(cursor.nextVertex(state), cursor.nextVertex(state));
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public int[] reader(GraphState state, Shared shared, Cursor cursor) {
+        return shared.graph.neighbors(cursor.nextVertex(state));
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void writer(GraphState state, Shared shared, Cursor cursor) {
+        shared.graph.addFriendship(cursor.nextVertex(state), cursor.nextVertex(state));
+    }
+}
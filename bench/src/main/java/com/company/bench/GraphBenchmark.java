@@ -0,0 +1,60 @@
+package com.company.bench;
+
+import com.company.Graph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the basic {@link Graph} operations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class GraphBenchmark {
+
+    /**
+     * Private copy of the graph for benchmarks that change it, taken again every iteration
+     */
+    @State(Scope.Thread)
+    public static class Copy {
+        Graph graph;
+
+        @Setup(Level.Iteration)
+        public void copy(GraphState state) {
+            graph = (Graph) state.graph.clone();
+        }
+    }
+
+    @Benchmark
+    public void addEdge(GraphState state, Copy copy) {
+        copy.graph.addEdge(state.nextVertex(), state.nextVertex());
+    }
+
+    @Benchmark
+    public int[] neighbors(GraphState state) {
+        return state.graph.neighbors(state.nextVertex());
+    }
+
+    @Benchmark
+    public int getVertexIndex(GraphState state) {
+        return state.graph.getVertexIndex(state.names[state.next()]);
+    }
+
+    @Benchmark
+    public Object cloneGraph(GraphState state) {
+        return state.graph.clone();
+    }
+}
@@ -0,0 +1,48 @@
+package com.company.bench;
+
+import com.company.GraphClusters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the whole graph algorithms of {@link GraphClusters}, one call per
+ * operation. Compare the thread counts to see how they scale with cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Benchmark)
+public class GraphClustersBenchmark {
+    /**
+     * Worker threads given to the engine, 0 for one per core
+     */
+    @Param({"1", "0"})
+    public int threads;
+
+    private GraphClusters clusters(GraphState state) {
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new GraphClusters(state.graph, parallelism);
+    }
+
+    @Benchmark
+    public GraphClusters.Partition components(GraphState state) {
+        return clusters(state).components();
+    }
+
+    @Benchmark
+    public GraphClusters.Partition communities(GraphState state) {
+        return clusters(state).communities();
+    }
+}
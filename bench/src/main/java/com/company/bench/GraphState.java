@@ -0,0 +1,77 @@
+package com.company.bench;
+
+import com.company.Graph;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+
+/**
+ * Shared benchmark input: one generated graph per parameter combination and a fixed,
+ * seeded sequence of members to query, cycled through by {@link #nextVertex()}.
+ */
+@State(Scope.Benchmark)
+public class GraphState {
+    /**
+     * Seed of the graph and of the query sequence
+     */
+    static final long SEED = 20220520L;
+    private static final int SAMPLES = 1 << 12;
+
+    /**
+     * Number of members of the generated graph
+     */
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int vertices;
+
+    /**
+     * Average number of friends per member
+     */
+    @Param({"16"})
+    public int averageDegree;
+
+    /**
+     * The generated graph
+     */
+    public Graph graph;
+    /**
+     * Members to query, in order
+     */
+    public int[] samples;
+    /**
+     * Names of the members to query, in the same order
+     */
+    public String[] names;
+    private int cursor;
+
+    @Setup
+    public void generate() {
+        graph = PowerLawGenerator.generate(vertices, averageDegree, SEED);
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        samples = new int[SAMPLES];
+        names = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = random.nextInt(vertices);
+            names[i] = PowerLawGenerator.name(samples[i]);
+        }
+    }
+
+    /**
+     * Position of the next member in the query sequence
+     * @return index into samples and names
+     */
+    public int next() {
+        cursor = (cursor + 1) & (SAMPLES - 1);
+        return cursor;
+    }
+
+    /**
+     * Next member of the query sequence
+     * @return vertex number
+     */
+    public int nextVertex() {
+        return samples[next()];
+    }
+}
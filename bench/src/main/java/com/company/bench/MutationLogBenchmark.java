@@ -0,0 +1,87 @@
+package com.company.bench;
+
+import com.company.Graph;
+import com.company.MutationLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of changes made to a graph followed by a {@link MutationLog}: friendships
+ * added and removed with the log synced in the background, and with a sync after every
+ * change, the worst case for the disk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class MutationLogBenchmark {
+    /**
+     * Milliseconds between background syncs
+     */
+    private static final long SYNC_PERIOD = 10;
+
+    /**
+     * A copy of the generated graph with a fresh log, created again every iteration
+     */
+    @State(Scope.Benchmark)
+    public static class Logged {
+        Graph graph;
+        MutationLog log;
+        Path file;
+        boolean add = true;
+
+        @Setup(Level.Iteration)
+        public void open(GraphState state) throws IOException {
+            graph = (Graph) state.graph.clone();
+            file = Files.createTempFile("mutations", MutationLog.EXTENSION);
+            log = MutationLog.open(file, graph);
+            log.startSyncing(SYNC_PERIOD, TimeUnit.MILLISECONDS);
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws IOException {
+            log.close();
+            Files.delete(file);
+        }
+    }
+
+    @Benchmark
+    public void toggleFriendship(GraphState state, Logged logged) {
+        toggle(state, logged);
+    }
+
+    @Benchmark
+    public void toggleFriendshipAndSync(GraphState state, Logged logged) throws IOException {
+        toggle(state, logged);
+        logged.log.sync();
+    }
+
+    private static void toggle(GraphState state, Logged logged) {
+        int first = state.nextVertex();
+        int second = state.nextVertex();
+        if (logged.add) {
+            logged.graph.addEdge(first, second);
+            logged.graph.addEdge(second, first);
+        } else {
+            logged.graph.removeEdge(first, second);
+            logged.graph.removeEdge(second, first);
+        }
+        logged.add = !logged.add;
+    }
+}
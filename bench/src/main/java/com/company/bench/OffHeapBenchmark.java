@@ -0,0 +1,75 @@
+package com.company.bench;
+
+import com.company.Graph;
+import com.company.OffHeapCsrAdjacency;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of friend lookups with the edges on the heap and in an
+ * {@link OffHeapCsrAdjacency}: copies into a reused buffer, zero copy views and edge tests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g", "-XX:MaxDirectMemorySize=6g"})
+public class OffHeapBenchmark {
+    /**
+     * The generated graph with its edges copied off the heap, and a buffer for its rows
+     */
+    @State(Scope.Benchmark)
+    public static class OffHeap {
+        Graph graph;
+        int[] buffer;
+
+        @Setup
+        public void copy(GraphState state) {
+            int n = state.graph.size();
+            OffHeapCsrAdjacency edges = new OffHeapCsrAdjacency(n);
+            for (int v = 0; v < n; v++) {
+                for (int target : state.graph.neighbors(v)) {
+                    edges.addEdge(v, target);
+                }
+            }
+            graph = new Graph(edges);
+            buffer = new int[graph.maxDegree()];
+        }
+    }
+
+    @Benchmark
+    public int neighborsHeap(GraphState state, OffHeap offHeap) {
+        return state.graph.neighbors(state.nextVertex(), offHeap.buffer);
+    }
+
+    @Benchmark
+    public int neighborsOffHeap(GraphState state, OffHeap offHeap) {
+        return offHeap.graph.neighbors(state.nextVertex(), offHeap.buffer);
+    }
+
+    @Benchmark
+    public long sumNeighborViewOffHeap(GraphState state, OffHeap offHeap) {
+        IntBuffer row = offHeap.graph.neighborView(state.nextVertex());
+        long sum = 0;
+        for (int i = 0; i < row.limit(); i++) {
+            sum += row.get(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public boolean isEdgeOffHeap(GraphState state, OffHeap offHeap) {
+        return offHeap.graph.isEdge(state.nextVertex(), state.nextVertex());
+    }
+}
@@ -0,0 +1,137 @@
+package com.company.bench;
+
+import com.company.CsrAdjacency;
+import com.company.Graph;
+
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic generator of friend networks with a power law degree distribution.
+ *
+ * Vertex i gets the weight (i + 1)^(-1 / (exponent - 1)) and every friendship joins two
+ * vertices drawn with probability proportional to their weights (the Chung-Lu model),
+ * so a few members have very many friends and most have few. Draws use an alias table
+ * and a seeded SplittableRandom, so the same arguments give the same graph on any machine.
+ * Member i is labeled "Member-i", which is already in the format
+ * {@link com.company.Main#reformatString(String)} produces.
+ */
+public final class PowerLawGenerator {
+    /**
+     * Exponent of the degree distribution used when none is given
+     */
+    public static final double DEFAULT_EXPONENT = 2.5;
+
+    private PowerLawGenerator() {
+    }
+
+    /**
+     * Generates a graph with the default exponent
+     * @param n number of members
+     * @param averageDegree average number of friends per member
+     * @param seed random seed
+     * @return the generated graph, with both directions of every friendship
+     */
+    public static Graph generate(int n, int averageDegree, long seed) {
+        return generate(n, averageDegree, DEFAULT_EXPONENT, seed);
+    }
+
+    /**
+     * Generates a graph
+     * @param n number of members
+     * @param averageDegree average number of friends per member
+     * @param exponent exponent of the degree distribution, greater than 2
+     * @param seed random seed
+     * @return the generated graph, with both directions of every friendship
+     */
+    public static Graph generate(int n, int averageDegree, double exponent, long seed) {
+        if (n < 2)
+            throw new IllegalArgumentException("At least two members are needed: " + n);
+        SplittableRandom random = new SplittableRandom(seed);
+        AliasTable table = new AliasTable(weights(n, exponent));
+
+        long friendships = (long) n * averageDegree / 2;
+        CsrAdjacency.Builder builder = new CsrAdjacency.Builder(n, 2 * friendships);
+        for (long i = 0; i < friendships; i++) {
+            int source = table.sample(random);
+            int target = table.sample(random);
+            if (source == target)
+                continue;
+            builder.addEdge(source, target);
+            builder.addEdge(target, source);
+        }
+
+        Graph g = new Graph(builder.build());
+        for (int v = 0; v < n; v++) {
+            g.setLabel(v, name(v));
+        }
+        return g;
+    }
+
+    /**
+     * Label given to a generated member
+     * @param vertex vertex number
+     * @return member name
+     */
+    public static String name(int vertex) {
+        return "Member-" + vertex;
+    }
+
+    private static double[] weights(int n, double exponent) {
+        double power = -1.0 / (exponent - 1.0);
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = Math.pow(i + 1, power);
+        }
+        return weights;
+    }
+
+    /**
+     * Vose's alias method: O(1) draws from a fixed discrete distribution
+     */
+    private static final class AliasTable {
+        private final double[] probability;
+        private final int[] alias;
+
+        AliasTable(double[] weights) {
+            int n = weights.length;
+            double total = 0;
+            for (double weight : weights) {
+                total += weight;
+            }
+            probability = new double[n];
+            alias = new int[n];
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int i = 0; i < n; i++) {
+                probability[i] = weights[i] * n / total;
+                if (probability[i] < 1.0)
+                    small[smallCount++] = i;
+                else
+                    large[largeCount++] = i;
+            }
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount];
+                int more = large[--largeCount];
+                alias[less] = more;
+                probability[more] += probability[less] - 1.0;
+                if (probability[more] < 1.0)
+                    small[smallCount++] = more;
+                else
+                    large[largeCount++] = more;
+            }
+            while (largeCount > 0) {
+                probability[large[--largeCount]] = 1.0;
+            }
+            while (smallCount > 0) {
+                probability[small[--smallCount]] = 1.0;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int i = random.nextInt(probability.length);
+            return random.nextDouble() < probability[i] ? i : alias[i];
+        }
+    }
+}
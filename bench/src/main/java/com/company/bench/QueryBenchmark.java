@@ -0,0 +1,94 @@
+package com.company.bench;
+
+import com.company.GraphQueries;
+import com.company.PathFinder;
+import com.company.People;
+import com.company.Recommender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the menu queries of {@link com.company.Main}, through {@link GraphQueries}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class QueryBenchmark {
+    /**
+     * Size of a popularity page, about one screen of the menu table
+     */
+    static final int PAGE = 100;
+
+    /**
+     * Queries of the generated graph, with the ranking built before measuring
+     */
+    @State(Scope.Benchmark)
+    public static class Queries {
+        GraphQueries queries;
+
+        @Setup
+        public void create(GraphState state) {
+            queries = new GraphQueries(state.graph);
+            queries.ranking();
+        }
+
+        @TearDown
+        public void close() {
+            queries.close();
+        }
+    }
+
+    @Benchmark
+    public int[] displayFriends(GraphState state, Queries queries) {
+        return queries.queries.friends(queries.queries.vertexOf(state.names[state.next()]));
+    }
+
+    @Benchmark
+    public int[] displayMutualFriends(GraphState state, Queries queries) {
+        return queries.queries.friendsOfFriends(queries.queries.vertexOf(state.names[state.next()]));
+    }
+
+    @Benchmark
+    public int[] displayCommonFriends(GraphState state, Queries queries) {
+        int first = queries.queries.vertexOf(state.names[state.next()]);
+        int second = queries.queries.vertexOf(state.names[state.next()]);
+        return queries.queries.commonFriends(first, second);
+    }
+
+    @Benchmark
+    public int[] displaySeparation(GraphState state, Queries queries) {
+        int first = queries.queries.vertexOf(state.names[state.next()]);
+        int second = queries.queries.vertexOf(state.names[state.next()]);
+        return queries.queries.path(first, second, PathFinder.DEFAULT_MAX_HOPS);
+    }
+
+    @Benchmark
+    public int[] displaySuggestions(GraphState state, Queries queries) {
+        return queries.queries.suggestions(queries.queries.vertexOf(state.names[state.next()]), Recommender.DEFAULT_COUNT);
+    }
+
+    @Benchmark
+    public List<People> displayPopularFriends(Queries queries) {
+        return queries.queries.popularity(0, PAGE);
+    }
+
+    @Benchmark
+    public Object rebuildPopularity(Queries queries) {
+        queries.queries.ranking().rebuild();
+        return queries.queries.ranking();
+    }
+}
@@ -0,0 +1,48 @@
+package com.company.bench;
+
+import com.company.Recommender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the nightly precompute of {@link Recommender}, one call per operation.
+ * Compare the thread counts to see how it scales with cores, and the friend count
+ * limits to see what the hubs cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Benchmark)
+public class RecommenderBenchmark {
+    /**
+     * Worker threads, 0 for one per core
+     */
+    @Param({"1", "0"})
+    public int threads;
+
+    /**
+     * Friend count above which a friend is not followed, 0 for no limit
+     */
+    @Param({"1000", "0"})
+    public int maxFriendDegree;
+
+    @Benchmark
+    public Recommender.Table recommendAll(GraphState state) {
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        int limit = maxFriendDegree > 0 ? maxFriendDegree : Integer.MAX_VALUE;
+        return Recommender.recommendAll(state.graph, Recommender.DEFAULT_MEASURE, Recommender.DEFAULT_COUNT,
+                limit, parallelism);
+    }
+}
@@ -0,0 +1,140 @@
+package com.company;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Storage for the edges of a {@link Graph}.
+ * The graph keeps the labels and delegates every edge operation to one of
+ * these, so the dense matrix can be swapped for a representation whose
+ * memory grows with the number of edges instead of the number of vertices squared.
+ *
+ * Vertex numbers range from 0 to size()-1 and every method may throw
+ * ArrayIndexOutOfBoundsException for a vertex outside that range.
+ */
+public interface Adjacency {
+
+    /**
+     * Number of vertices this storage holds
+     * @return vertex count
+     */
+    int size();
+
+    /**
+     * Adds a vertex with no edges. Storage grows by doubling its capacity, so adding
+     * vertices one at a time costs amortized O(1) per vertex, or O(n) for a matrix
+     * that has to widen every row.
+     * @return number of the new vertex, the previous size()
+     */
+    int addVertex();
+
+    /**
+     * Adds an edge from source to target. Adding an existing edge changes nothing.
+     * @param source source vertex
+     * @param target target vertex
+     * @return true if the edge was not there before
+     */
+    boolean addEdge(int source, int target);
+
+    /**
+     * Removes the edge from source to target. Removing a missing edge changes nothing.
+     * @param source source vertex
+     * @param target target vertex
+     * @return true if the edge was there before
+     */
+    boolean removeEdge(int source, int target);
+
+    /**
+     * Checks whether there is an edge from source to target
+     * @param source source vertex
+     * @param target target vertex
+     * @return true if the edge exists
+     */
+    boolean isEdge(int source, int target);
+
+    /**
+     * Number of edges that have the vertex as their source
+     * @param vertex vertex number
+     * @return out degree of the vertex
+     */
+    int degree(int vertex);
+
+    /**
+     * Targets of all edges leaving the vertex, in ascending order
+     * @param vertex vertex number
+     * @return a new array of neighbor vertex numbers
+     */
+    int[] neighbors(int vertex);
+
+    /**
+     * Copies the targets of all edges leaving the vertex, in ascending order, into a buffer
+     * @param vertex vertex number
+     * @param buffer array of at least degree(vertex) elements
+     * @return number of neighbors written
+     */
+    default int neighbors(int vertex, int[] buffer) {
+        int[] answer = neighbors(vertex);
+        System.arraycopy(answer, 0, buffer, 0, answer.length);
+        return answer.length;
+    }
+
+    /**
+     * Read only view of the targets of all edges leaving the vertex, in ascending order.
+     * Storage that keeps its rows in one piece returns the row itself, without copying;
+     * the view is then only valid until the next change of the storage.
+     * @param vertex vertex number
+     * @return the neighbors, from position 0 to the limit
+     */
+    default IntBuffer neighborView(int vertex) {
+        return IntBuffer.wrap(neighbors(vertex)).asReadOnlyBuffer();
+    }
+
+    /**
+     * The row of a vertex as a bitset, for storage that keeps one.
+     * Bit j % 64 of word j / 64 is set if there is an edge to j.
+     * The array must not be changed and is only valid until the next change of the storage.
+     * @param vertex vertex number
+     * @return the row bits, or null if this storage does not keep rows as bitsets
+     */
+    default long[] rowBits(int vertex) {
+        return null;
+    }
+
+    /**
+     * Creates an independent copy of this storage
+     * @return copy of the edges
+     */
+    Adjacency copy();
+
+    /**
+     * Creates a copy with the vertices renumbered, leaving out the vertices that are
+     * dropped and every edge that touches them. The default packs the rows into a
+     * {@link CsrAdjacency}; storage with its own layout may keep it.
+     * @param mapping new number of every vertex, or -1 to drop it; the vertices kept
+     *                must keep their order, numbered 0 to size-1
+     * @param size number of vertices kept
+     * @return the renumbered edges
+     */
+    default Adjacency renumber(int[] mapping, int size) {
+        int[] offsets = new int[size + 1];
+        int[] targets = new int[16];
+        int[] row = new int[16];
+        int used = 0;
+        for (int v = 0; v < mapping.length; v++) {
+            if (mapping[v] < 0)
+                continue;
+            int degree = degree(v);
+            if (degree > row.length)
+                row = new int[Math.max(degree, row.length * 2)];
+            int count = neighbors(v, row);
+            if (used + count > targets.length)
+                targets = Arrays.copyOf(targets, Math.max(used + count, targets.length * 2));
+            for (int i = 0; i < count; i++) {
+                if (mapping[row[i]] >= 0)
+                    targets[used++] = mapping[row[i]];
+            }
+            offsets[mapping[v] + 1] = used;
+        }
+        return new CsrAdjacency(offsets, Arrays.copyOf(targets, used));
+    }
+}
@@ -0,0 +1,349 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+/**
+ * Answers a file of queries without the menu of {@link Main}.
+ *
+ * Each line of the query file is one query, its fields separated by tabs:
+ * <pre>
+ * friends  name          friends of a member
+ * fof      name          friends and friends of the friends of a member
+ * common   name  name    common friends of two members
+ * path     name  name    members on a shortest chain of friends from the first member to
+ *                        the second, at most {@link PathFinder#DEFAULT_MAX_HOPS} hops
+ * suggest  name          people the member may know, best first, at most
+ *                        {@link Recommender#DEFAULT_COUNT}
+ * </pre>
+ * Names are formatted by {@link Main#reformatString(String)}; blank lines are skipped.
+ * Every query gets one line in the result file, in the order of the query file: the
+ * query line, a tab, the number of members found and the names of those members, all
+ * separated by tabs; a path query finding no chain gets 0. A query naming an unknown
+ * member gets -1 and "Given name does not exist" instead, a malformed query -1 and
+ * "Invalid query".
+ *
+ * The queries are processed in chunks that flow through four stages: reading, resolving
+ * the names of the whole chunk at once through the label index, answering the queries
+ * on a ForkJoinPool and writing. Writing runs on its own thread, so a chunk is written
+ * while the next one is read and answered. The busy time and item count of every stage
+ * are kept for {@link #printReport(PrintStream)}.
+ */
+public class BatchQueries {
+    /**
+     * Queries read and answered together
+     */
+    public static final int CHUNK = 1 << 14;
+    /**
+     * Ranges of a chunk handed out per worker thread, so a slow range does not hold up the others
+     */
+    private static final int RANGES_PER_THREAD = 4;
+
+    private static final int INVALID = 0;
+    private static final int FRIENDS = 1;
+    private static final int FRIENDS_OF_FRIENDS = 2;
+    private static final int COMMON = 3;
+    private static final int PATH = 4;
+    private static final int SUGGEST = 5;
+
+    private final Graph graph;
+    private final int parallelism;
+    private final ConcurrentLinkedQueue<GraphQueries> idle = new ConcurrentLinkedQueue<>();
+    private final Stage read = new Stage("read");
+    private final Stage resolve = new Stage("resolve");
+    private final Stage answer = new Stage("query");
+    private final Stage write = new Stage("write");
+
+    /**
+     * Creates a batch runner. The graph must not change while a batch runs.
+     * @param graph graph to query
+     * @param parallelism number of threads answering queries
+     */
+    public BatchQueries(Graph graph, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.graph = graph;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Answers the queries of one file into another
+     * @param queryFile file of queries, one per line
+     * @param resultFile file receiving one line per query, replaced if it exists
+     * @throws IOException when a file cannot be read or written
+     */
+    public void run(Path queryFile, Path resultFile) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(queryFile, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(resultFile, StandardCharsets.UTF_8)) {
+            run(in, out);
+        }
+    }
+
+    /**
+     * Answers every query of a reader. The writer is flushed but not closed.
+     * @param in queries, one per line
+     * @param out receives one line per query, in input order
+     * @throws IOException when reading or writing fails
+     */
+    public void run(BufferedReader in, Writer out) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> pending = null;
+            while (true) {
+                List<String> lines = readChunk(in);
+                if (lines.isEmpty())
+                    break;
+                String[] results = answer(pool, lines, resolve(lines));
+                // Keep at most one chunk waiting to be written
+                await(pending);
+                pending = writer.submit(() -> write(lines, results, out));
+            }
+            await(pending);
+            out.flush();
+        } finally {
+            writer.shutdown();
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Prints the items, busy time and throughput of every stage of the batches run so far
+     * @param out stream to print to
+     */
+    public void printReport(PrintStream out) {
+        for (Stage stage : new Stage[]{read, resolve, answer, write}) {
+            out.format("%-8s %,14d items %,12.1f ms %,16.0f items/s%n",
+                    stage.name, stage.items, stage.nanos / 1e6, stage.throughput());
+        }
+    }
+
+    /**
+     * Number of queries answered so far
+     * @return query count
+     */
+    public long getQueryCount() {
+        return answer.items;
+    }
+
+    /**
+     * Answers a query file with a graph read from text files or a snapshot
+     * @param args either a snapshot file or an index file and a friend file, then the
+     *             query file and the result file
+     * @throws IOException when a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 && args.length != 4) {
+            System.out.println("Usage: BatchQueries (<snapshot file> | <index file> <friend file>) <query file> <result file>");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        Graph g;
+        if (args.length == 3) {
+            Path snapshot = Paths.get(args[0]);
+            if (!GraphSnapshot.verify(snapshot)) {
+                System.out.println("Snapshot file is corrupt!!");
+                return;
+            }
+            g = Graph.readSnapshot(snapshot);
+        } else {
+            GraphLoader loader = new GraphLoader(threads);
+            g = loader.load(Paths.get(args[0]), Paths.get(args[1]));
+            if (!loader.countsMatch()) {
+                System.out.println("Specified count does not match the count of data in the file");
+            }
+        }
+        BatchQueries batch = new BatchQueries(g, threads);
+        batch.run(Paths.get(args[args.length - 2]), Paths.get(args[args.length - 1]));
+        batch.printReport(System.out);
+    }
+
+    private List<String> readChunk(BufferedReader in) throws IOException {
+        long start = System.nanoTime();
+        List<String> lines = new ArrayList<>(CHUNK);
+        String line;
+        while (lines.size() < CHUNK && (line = in.readLine()) != null) {
+            if (!line.trim().isEmpty())
+                lines.add(line);
+        }
+        read.add(lines.size(), System.nanoTime() - start);
+        return lines;
+    }
+
+    /**
+     * Parses a chunk and looks up all its names with one call to {@link Graph#resolve}
+     * @return command, first vertex and second vertex of every query
+     */
+    private int[] resolve(List<String> lines) {
+        long start = System.nanoTime();
+        int count = lines.size();
+        int[] queries = new int[3 * count];
+        String[] names = new String[2 * count];
+        for (int i = 0; i < count; i++) {
+            String[] fields = lines.get(i).split("\t");
+            int command = command(fields);
+            queries[3 * i] = command;
+            names[2 * i] = command == INVALID ? "" : Main.reformatString(fields[1].trim());
+            names[2 * i + 1] = command == COMMON || command == PATH ? Main.reformatString(fields[2].trim()) : names[2 * i];
+        }
+        int[] vertices = graph.resolve(names);
+        for (int i = 0; i < count; i++) {
+            queries[3 * i + 1] = vertices[2 * i];
+            queries[3 * i + 2] = vertices[2 * i + 1];
+        }
+        resolve.add(2L * count, System.nanoTime() - start);
+        return queries;
+    }
+
+    private static int command(String[] fields) {
+        switch (fields[0].trim().toLowerCase()) {
+            case "friends":
+                return fields.length == 2 ? FRIENDS : INVALID;
+            case "fof":
+                return fields.length == 2 ? FRIENDS_OF_FRIENDS : INVALID;
+            case "common":
+                return fields.length == 3 ? COMMON : INVALID;
+            case "path":
+                return fields.length == 3 ? PATH : INVALID;
+            case "suggest":
+                return fields.length == 2 ? SUGGEST : INVALID;
+            default:
+                return INVALID;
+        }
+    }
+
+    /**
+     * Answers the queries of a chunk in parallel, each range of the chunk with queries of its own
+     * @return result line of every query
+     */
+    private String[] answer(ForkJoinPool pool, List<String> lines, int[] queries) {
+        long start = System.nanoTime();
+        int count = lines.size();
+        String[] results = new String[count];
+        int ranges = Math.min(count, parallelism * RANGES_PER_THREAD);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(ranges);
+        for (int r = 0; r < ranges; r++) {
+            int from = (int) ((long) count * r / ranges);
+            int to = (int) ((long) count * (r + 1) / ranges);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                GraphQueries queriesOfRange = acquire();
+                StringBuilder line = new StringBuilder();
+                for (int i = from; i < to; i++) {
+                    line.setLength(0);
+                    line.append(lines.get(i));
+                    answer(queriesOfRange, queries[3 * i], queries[3 * i + 1], queries[3 * i + 2], line);
+                    results[i] = line.toString();
+                }
+                idle.offer(queriesOfRange);
+            }));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        answer.add(count, System.nanoTime() - start);
+        return results;
+    }
+
+    private GraphQueries acquire() {
+        GraphQueries queries = idle.poll();
+        return queries != null ? queries : new GraphQueries(graph);
+    }
+
+    private void answer(GraphQueries queries, int command, int first, int second, StringBuilder line) {
+        if (command == INVALID) {
+            line.append("\t-1\tInvalid query");
+            return;
+        }
+        if (first < 0 || second < 0) {
+            line.append("\t-1\tGiven name does not exist");
+            return;
+        }
+        int[] found;
+        switch (command) {
+            case FRIENDS:
+                found = queries.friends(first);
+                break;
+            case FRIENDS_OF_FRIENDS:
+                found = queries.friendsOfFriends(first);
+                break;
+            case PATH:
+                found = queries.path(first, second, PathFinder.DEFAULT_MAX_HOPS);
+                break;
+            case SUGGEST:
+                found = queries.suggestions(first, Recommender.DEFAULT_COUNT);
+                break;
+            default:
+                found = queries.commonFriends(first, second);
+                break;
+        }
+        line.append('\t').append(found.length);
+        for (int vertex : found) {
+            line.append('\t').append(graph.getLabel(vertex));
+        }
+    }
+
+    private void write(List<String> lines, String[] results, Writer out) {
+        long start = System.nanoTime();
+        try {
+            for (String result : results) {
+                out.write(result);
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        write.add(lines.size(), System.nanoTime() - start);
+    }
+
+    private static void await(Future<?> pending) throws IOException {
+        if (pending == null)
+            return;
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing results", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Items and busy time of one stage. Each stage is only updated by one thread at a time.
+     */
+    private static final class Stage {
+        final String name;
+        volatile long items;
+        volatile long nanos;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void add(long count, long elapsed) {
+            items += count;
+            nanos += elapsed;
+        }
+
+        double throughput() {
+            return nanos == 0 ? 0 : items * 1e9 / nanos;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * Adjacency matrix packed one bit per pair of vertices into long words.
+ * It keeps the O(1) edge test of {@link MatrixAdjacency} with an eighth of the memory,
+ * which makes it the smallest storage for dense communities of a few tens of thousands
+ * of members. Neighbor lists are read 64 vertices per word with
+ * Long.numberOfTrailingZeros, degrees are popcounts, and common neighbors of two
+ * vertices are the AND of their rows. Rows and columns are kept with spare capacity,
+ * doubled whenever a vertex is added to a full matrix.
+ */
+public class BitMatrixAdjacency implements Adjacency {
+    /**
+     * Bit j % 64 of rows[i][j / 64] is set if there is an edge from i to j.
+     * All rows have the same length and may cover more than n columns; the extra bits are 0.
+     */
+    private long[][] rows;
+    /**
+     * Number of vertices
+     */
+    private int n;
+
+    /**
+     * Creates a matrix with n vertices and no edges
+     * @param n number of vertices
+     */
+    public BitMatrixAdjacency(int n) {
+        int words = (n + 63) >>> 6;
+        rows = new long[n][words];
+        this.n = n;
+    }
+
+    /**
+     * Creates a matrix with the same edges as another storage
+     * @param edges storage to copy
+     * @return bit matrix holding the same edges
+     */
+    public static BitMatrixAdjacency copyOf(Adjacency edges) {
+        int n = edges.size();
+        BitMatrixAdjacency answer = new BitMatrixAdjacency(n);
+        int[] row = new int[16];
+        for (int v = 0; v < n; v++) {
+            if (edges.degree(v) > row.length)
+                row = new int[Math.max(edges.degree(v), row.length * 2)];
+            int count = edges.neighbors(v, row);
+            for (int i = 0; i < count; i++) {
+                answer.rows[v][row[i] >>> 6] |= 1L << row[i];
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Memory the rows of a bit matrix with n vertices take
+     * @param n number of vertices
+     * @return approximate size in bytes
+     */
+    public static long bytesFor(int n) {
+        return (long) n * (((n + 63) >>> 6) * 8L + 16);
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public int addVertex() {
+        if (n == rows.length) {
+            int capacity = Math.max(64, n * 2);
+            long[][] grown = new long[capacity][];
+            int words = (capacity + 63) >>> 6;
+            for (int i = 0; i < capacity; i++) {
+                grown[i] = i < n ? Arrays.copyOf(rows[i], words) : new long[words];
+            }
+            rows = grown;
+        }
+        return n++;
+    }
+
+    @Override
+    public boolean addEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        long[] row = rows[source];
+        long bit = 1L << target;
+        boolean added = (row[target >>> 6] & bit) == 0;
+        row[target >>> 6] |= bit;
+        return added;
+    }
+
+    @Override
+    public boolean removeEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        long[] row = rows[source];
+        long bit = 1L << target;
+        boolean removed = (row[target >>> 6] & bit) != 0;
+        row[target >>> 6] &= ~bit;
+        return removed;
+    }
+
+    @Override
+    public boolean isEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        return (rows[source][target >>> 6] & (1L << target)) != 0;
+    }
+
+    @Override
+    public int degree(int vertex) {
+        checkVertex(vertex);
+        int count = 0;
+        for (long word : rows[vertex]) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    @Override
+    public int[] neighbors(int vertex) {
+        int[] answer = new int[degree(vertex)];
+        neighbors(vertex, answer);
+        return answer;
+    }
+
+    @Override
+    public int neighbors(int vertex, int[] buffer) {
+        checkVertex(vertex);
+        long[] row = rows[vertex];
+        int count = 0;
+        for (int w = 0; w < row.length; w++) {
+            long word = row[w];
+            while (word != 0) {
+                buffer[count++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long[] rowBits(int vertex) {
+        checkVertex(vertex);
+        return rows[vertex];
+    }
+
+    @Override
+    public Adjacency copy() {
+        BitMatrixAdjacency answer = new BitMatrixAdjacency(0);
+        answer.rows = new long[rows.length][];
+        for (int v = 0; v < rows.length; v++) {
+            answer.rows[v] = rows[v].clone();
+        }
+        answer.n = n;
+        return answer;
+    }
+
+    @Override
+    public Adjacency renumber(int[] mapping, int size) {
+        BitMatrixAdjacency answer = new BitMatrixAdjacency(size);
+        for (int v = 0; v < n; v++) {
+            if (mapping[v] < 0)
+                continue;
+            long[] row = rows[v];
+            long[] target = answer.rows[mapping[v]];
+            for (int w = 0; w < row.length; w++) {
+                long word = row[w];
+                while (word != 0) {
+                    int j = mapping[(w << 6) + Long.numberOfTrailingZeros(word)];
+                    if (j >= 0)
+                        target[j >>> 6] |= 1L << j;
+                    word &= word - 1;
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Writes the vertices that are neighbors of both vertices by ANDing their rows
+     * @param first first vertex
+     * @param second second vertex
+     * @param out receives the common neighbors in ascending order, or null to only count them
+     * @return number of common neighbors
+     */
+    public int commonNeighbors(int first, int second, int[] out) {
+        checkVertex(first);
+        checkVertex(second);
+        return Intersections.intersect(rows[first], rows[second], out);
+    }
+
+    private void checkVertex(int vertex) {
+        if (vertex < 0 || vertex >= n)
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+}
@@ -0,0 +1,386 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link Graph} shared between many reading threads and a few writing threads.
+ *
+ * Readers never lock. They read the current published version, a Graph that is never
+ * changed once it has been published, through one volatile field. Writers do not touch
+ * that version either: addEdge, removeEdge and removeMember only append to a pending
+ * batch. {@link #publish()} copies the current version, applies the batch to the copy in
+ * the order the changes were made, and swaps the copy in (read-copy-update). Publishing
+ * happens when asked, every period given to {@link #startPublishing}, and whenever the
+ * batch reaches its size limit. A full batch is published on the background thread, so
+ * the writer adding the last change does not wait for it; only a writer finding a second
+ * full batch pending behind it publishes on its own thread, so writers cannot outrun the
+ * publishing without bound.
+ *
+ * Consistency guarantees:
+ * <ul>
+ *   <li>Every read method answers from exactly one published version.</li>
+ *   <li>Versions are published in order and each one contains every change of the
+ *       batches before it; a change is never visible without the changes made before it.</li>
+ *   <li>The two directions of a friendship given to addFriendship or removeFriendship,
+ *       and all the friendships removed by one removeMember, appear in the same version.</li>
+ *   <li>A change becomes visible at the next publish, not when the write method returns.
+ *       Call {@link #publish()} to read your own writes.</li>
+ *   <li>Separate read calls may see different versions. A query spanning several calls,
+ *       such as resolving two names and intersecting their friends, should take one
+ *       {@link #snapshot()} and make all its calls on it.</li>
+ * </ul>
+ * The versions keep their edges in a {@link SharedRowAdjacency}: a copy shares the rows
+ * of the version before it and copies a row only when the batch changes it. A publish
+ * thus copies the per member arrays, such as the degrees and labels, and the rows the
+ * batch touches, O(n) plus their length, instead of every edge; batching spreads that
+ * cost over many changes.
+ */
+public class ConcurrentGraph implements AutoCloseable {
+    /**
+     * Pending changes at which the batch is published on the background thread
+     */
+    public static final int DEFAULT_MAX_BATCH = 1 << 16;
+
+    private static final int ADD = 0;
+    private static final int REMOVE = 1;
+    private static final int REMOVE_MEMBER = 2;
+
+    private final int maxBatch;
+    private volatile Graph published;
+    private volatile long version;
+    /**
+     * Pending changes, three ints each: operation, source and target
+     */
+    private int[] batch = new int[48];
+    private int batchLength;
+    /**
+     * Guards batch and batchLength
+     */
+    private final Object batchLock = new Object();
+    /**
+     * Makes publishes run one at a time, so batches are applied in order
+     */
+    private final Object publishLock = new Object();
+    /**
+     * Thread of the periodic publishes and of full batches, started by the first of them;
+     * guarded by this
+     */
+    private ScheduledExecutorService publisher;
+    private boolean periodic;
+    private boolean closed;
+    /**
+     * Set while a publish of a full batch waits on the publisher
+     */
+    private final AtomicBoolean publishQueued = new AtomicBoolean();
+
+    /**
+     * Shares a graph. The graph is copied, so later changes to it are not seen.
+     * @param graph initial contents
+     */
+    public ConcurrentGraph(Graph graph) {
+        this(graph, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Shares a graph with a given batch size limit
+     * @param graph initial contents, copied
+     * @param maxBatch number of pending changes at which the batch is published in the background
+     */
+    public ConcurrentGraph(Graph graph, int maxBatch) {
+        if (maxBatch < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+        this.maxBatch = maxBatch;
+        this.published = graph.sharingRows();
+    }
+
+    /**
+     * The current published version. It must not be changed; use it to make several
+     * reads that have to agree with each other.
+     * @return the current version
+     */
+    public Graph snapshot() {
+        return published;
+    }
+
+    /**
+     * Number of versions published since this object was created
+     * @return version number of the current snapshot
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Number of vertices of the current version
+     * @return vertex count
+     */
+    public int size() {
+        return published.size();
+    }
+
+    /**
+     * Label of a vertex in the current version
+     * @param vertex vertex number
+     * @return the label
+     */
+    public Object getLabel(int vertex) {
+        return published.getLabel(vertex);
+    }
+
+    /**
+     * Vertex of a label in the current version
+     * @param label label to find
+     * @return lowest vertex with that label, or -1
+     */
+    public int getVertexIndex(Object label) {
+        return published.getVertexIndex(label);
+    }
+
+    /**
+     * Edge test in the current version
+     * @param source source vertex
+     * @param target target vertex
+     * @return true if the edge exists
+     */
+    public boolean isEdge(int source, int target) {
+        return published.isEdge(source, target);
+    }
+
+    /**
+     * Degree in the current version
+     * @param vertex vertex number
+     * @return number of neighbors
+     */
+    public int degree(int vertex) {
+        return published.degree(vertex);
+    }
+
+    /**
+     * Neighbors in the current version
+     * @param vertex vertex number
+     * @return neighbors in ascending order
+     */
+    public int[] neighbors(int vertex) {
+        return published.neighbors(vertex);
+    }
+
+    /**
+     * Common neighbors of two vertices, both read from the same version
+     * @param first first vertex
+     * @param second second vertex
+     * @return common neighbors in ascending order
+     */
+    public int[] commonNeighbors(int first, int second) {
+        return published.commonNeighbors(first, second);
+    }
+
+    /**
+     * Counts and degree histogram of the current version
+     * @return statistics taken from the counters of the version
+     */
+    public GraphStats stats() {
+        return published.stats();
+    }
+
+    /**
+     * Adds an edge at the next publish
+     * @param source source vertex
+     * @param target target vertex
+     */
+    public void addEdge(int source, int target) {
+        submit(ADD, source, target);
+    }
+
+    /**
+     * Removes an edge at the next publish
+     * @param source source vertex
+     * @param target target vertex
+     */
+    public void removeEdge(int source, int target) {
+        submit(REMOVE, source, target);
+    }
+
+    /**
+     * Adds an edge in both directions at the next publish. Both edges appear in the
+     * same version, which two addEdge calls do not promise.
+     * @param first first member vertex
+     * @param second second member vertex
+     */
+    public void addFriendship(int first, int second) {
+        submit(ADD, first, second, true);
+    }
+
+    /**
+     * Removes an edge in both directions at the next publish, both in the same version
+     * @param first first member vertex
+     * @param second second member vertex
+     */
+    public void removeFriendship(int first, int second) {
+        submit(REMOVE, first, second, true);
+    }
+
+    /**
+     * Removes a member with all its friendships at the next publish, see {@link Graph#removeVertex(int)}
+     * @param vertex member vertex number
+     */
+    public void removeMember(int vertex) {
+        submit(REMOVE_MEMBER, vertex, vertex);
+    }
+
+    /**
+     * Number of changes waiting for the next publish
+     * @return pending change count
+     */
+    public int pending() {
+        synchronized (batchLock) {
+            return batchLength / 3;
+        }
+    }
+
+    /**
+     * Applies the pending changes to a copy of the current version and publishes the copy.
+     * Does nothing if no change is pending.
+     * @return true if a new version was published
+     */
+    public boolean publish() {
+        synchronized (publishLock) {
+            int[] changes;
+            int length;
+            synchronized (batchLock) {
+                if (batchLength == 0)
+                    return false;
+                changes = batch;
+                length = batchLength;
+                batch = new int[Math.max(48, Math.min(changes.length, 3 * maxBatch + 6))];
+                batchLength = 0;
+            }
+
+            Graph next = (Graph) published.clone();
+            for (int i = 0; i < length; i += 3) {
+                apply(next, changes[i], changes[i + 1], changes[i + 2]);
+            }
+            published = next;
+            version++;
+            return true;
+        }
+    }
+
+    /**
+     * Publishes pending changes on a background thread at a fixed period
+     * @param period time between publishes
+     * @param unit unit of period
+     */
+    public synchronized void startPublishing(long period, TimeUnit unit) {
+        if (periodic)
+            throw new IllegalStateException("Already publishing");
+        if (closed)
+            throw new IllegalStateException("Closed");
+        periodic = true;
+        publisher().scheduleWithFixedDelay(this::publish, period, period, unit);
+    }
+
+    /**
+     * Stops background publishing and publishes what is still pending. Later changes are
+     * published when asked or by the writer filling a batch.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            periodic = false;
+            if (publisher != null) {
+                publisher.shutdown();
+                publisher = null;
+            }
+        }
+        publish();
+    }
+
+    /**
+     * The publishing thread, started on first use. Called holding this.
+     */
+    private ScheduledExecutorService publisher() {
+        if (publisher == null) {
+            publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "graph-publisher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return publisher;
+    }
+
+    /**
+     * Hands the publish of a full batch to the publishing thread, or runs it here once
+     * closed
+     */
+    private void publishInBackground() {
+        synchronized (this) {
+            if (!closed) {
+                publisher().execute(() -> {
+                    publishQueued.set(false);
+                    publish();
+                });
+                return;
+            }
+        }
+        publishQueued.set(false);
+        publish();
+    }
+
+    private void submit(int operation, int source, int target) {
+        submit(operation, source, target, false);
+    }
+
+    /**
+     * Appends a change, and its reverse if asked, to the pending batch. Both go in under
+     * one lock so that no publish can separate them.
+     */
+    private void submit(int operation, int source, int target, boolean reverse) {
+        int pending;
+        synchronized (batchLock) {
+            if (batchLength + 6 > batch.length)
+                batch = Arrays.copyOf(batch, batch.length * 2);
+            batch[batchLength++] = operation;
+            batch[batchLength++] = source;
+            batch[batchLength++] = target;
+            if (reverse) {
+                batch[batchLength++] = operation;
+                batch[batchLength++] = target;
+                batch[batchLength++] = source;
+            }
+            pending = batchLength / 3;
+        }
+        if (pending >= 2 * maxBatch)
+            publish();
+        else if (pending >= maxBatch && publishQueued.compareAndSet(false, true))
+            publishInBackground();
+    }
+
+    /**
+     * Applies one change to the copy being prepared. A change naming a vertex that does not
+     * exist or was removed is skipped, so one bad write cannot stop the rest of the batch.
+     */
+    private static void apply(Graph g, int operation, int source, int target) {
+        int n = g.size();
+        if (source < 0 || source >= n || target < 0 || target >= n)
+            return;
+        if (g.isRemoved(source) || g.isRemoved(target))
+            return;
+        switch (operation) {
+            case ADD:
+                g.addEdge(source, target);
+                break;
+            case REMOVE:
+                g.removeEdge(source, target);
+                break;
+            case REMOVE_MEMBER:
+                g.removeVertex(source);
+                break;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.company;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Compressed sparse row storage. The targets of every vertex are kept sorted in
+ * one slice of a shared int array, so memory is proportional to the number of edges
+ * and neighbor queries cost O(degree) instead of O(n).
+ *
+ * The rows built by {@link Builder} are packed back to back. When an edge is added
+ * to a full row the row is moved to the end of the target array with twice the room,
+ * so single edge insertions stay amortized O(degree). {@link #trimToSize()} packs
+ * the rows again. The per vertex arrays keep spare capacity too, so vertices can be
+ * added one at a time.
+ */
+public class CsrAdjacency implements Adjacency {
+    /**
+     * Number of vertices; the per vertex arrays may be longer
+     */
+    private int vertices;
+    /**
+     * offsets[v] is the index in targets where the row of v starts
+     */
+    private int[] offsets;
+    /**
+     * lengths[v] is the number of edges leaving v
+     */
+    private int[] lengths;
+    /**
+     * capacities[v] is the number of slots reserved for the row of v
+     */
+    private int[] capacities;
+    /**
+     * Sorted rows of edge targets
+     */
+    private int[] targets;
+    /**
+     * Number of slots of targets that are reserved by some row
+     */
+    private int used;
+
+    /**
+     * Creates storage with n vertices and no edges
+     * @param n number of vertices
+     */
+    public CsrAdjacency(int n) {
+        vertices = n;
+        offsets = new int[n];
+        lengths = new int[n];
+        capacities = new int[n];
+        targets = new int[0];
+    }
+
+    /**
+     * Creates storage from already packed rows
+     * @param offsets row starts, offsets[n] being the total number of edges
+     * @param targets sorted, duplicate free rows
+     */
+    CsrAdjacency(int[] offsets, int[] targets) {
+        int n = offsets.length - 1;
+        this.vertices = n;
+        this.offsets = Arrays.copyOf(offsets, n);
+        this.lengths = new int[n];
+        for (int v = 0; v < n; v++) {
+            lengths[v] = offsets[v + 1] - offsets[v];
+        }
+        this.capacities = lengths.clone();
+        this.targets = targets;
+        this.used = offsets[n];
+    }
+
+    /**
+     * Creates storage from rows that may leave spare room at their end
+     * @param offsets row starts, offsets[n] being the end of the last row's room
+     * @param lengths number of sorted, duplicate free targets at the start of each row
+     * @param targets rows of targets
+     */
+    CsrAdjacency(int[] offsets, int[] lengths, int[] targets) {
+        int n = lengths.length;
+        this.vertices = n;
+        this.offsets = Arrays.copyOf(offsets, n);
+        this.lengths = lengths;
+        this.capacities = new int[n];
+        for (int v = 0; v < n; v++) {
+            capacities[v] = offsets[v + 1] - offsets[v];
+        }
+        this.targets = targets;
+        this.used = offsets[n];
+    }
+
+    @Override
+    public int size() {
+        return vertices;
+    }
+
+    @Override
+    public int addVertex() {
+        if (vertices == offsets.length) {
+            int capacity = Math.max(16, vertices * 2);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            capacities = Arrays.copyOf(capacities, capacity);
+        }
+        //An empty row with no room; the first edge relocates it
+        offsets[vertices] = used;
+        return vertices++;
+    }
+
+    @Override
+    public boolean addEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        int position = find(source, target);
+        if (position >= 0)
+            return false;
+        position = -(position + 1);
+        if (lengths[source] == capacities[source]) {
+            relocate(source, Math.max(4, capacities[source] * 2));
+        }
+        int start = offsets[source];
+        System.arraycopy(targets, start + position, targets, start + position + 1, lengths[source] - position);
+        targets[start + position] = target;
+        lengths[source]++;
+        return true;
+    }
+
+    @Override
+    public boolean removeEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        int position = find(source, target);
+        if (position < 0)
+            return false;
+        int start = offsets[source];
+        System.arraycopy(targets, start + position + 1, targets, start + position, lengths[source] - position - 1);
+        lengths[source]--;
+        return true;
+    }
+
+    @Override
+    public boolean isEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        return find(source, target) >= 0;
+    }
+
+    @Override
+    public int degree(int vertex) {
+        checkVertex(vertex);
+        return lengths[vertex];
+    }
+
+    @Override
+    public int[] neighbors(int vertex) {
+        checkVertex(vertex);
+        int start = offsets[vertex];
+        return Arrays.copyOfRange(targets, start, start + lengths[vertex]);
+    }
+
+    @Override
+    public int neighbors(int vertex, int[] buffer) {
+        checkVertex(vertex);
+        System.arraycopy(targets, offsets[vertex], buffer, 0, lengths[vertex]);
+        return lengths[vertex];
+    }
+
+    @Override
+    public IntBuffer neighborView(int vertex) {
+        checkVertex(vertex);
+        return IntBuffer.wrap(targets, offsets[vertex], lengths[vertex]).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public Adjacency copy() {
+        CsrAdjacency answer = new CsrAdjacency(0);
+        answer.offsets = offsets.clone();
+        answer.lengths = lengths.clone();
+        answer.capacities = capacities.clone();
+        answer.targets = targets.clone();
+        answer.used = used;
+        answer.vertices = vertices;
+        return answer;
+    }
+
+    /**
+     * Total number of edges stored
+     * @return edge count
+     */
+    public long edgeCount() {
+        long total = 0;
+        for (int length : lengths) {
+            total += length;
+        }
+        return total;
+    }
+
+    /**
+     * Packs all rows back to back and drops the spare room left by insertions and removals
+     */
+    public void trimToSize() {
+        int[] packed = new int[(int) edgeCount()];
+        int next = 0;
+        for (int v = 0; v < vertices; v++) {
+            System.arraycopy(targets, offsets[v], packed, next, lengths[v]);
+            offsets[v] = next;
+            capacities[v] = lengths[v];
+            next += lengths[v];
+        }
+        targets = packed;
+        used = next;
+    }
+
+    /**
+     * Binary search for target in the row of source
+     * @param source row to search
+     * @param target vertex to find
+     * @return position in the row, or -(insertion point)-1 when absent
+     */
+    private int find(int source, int target) {
+        int start = offsets[source];
+        int position = Arrays.binarySearch(targets, start, start + lengths[source], target);
+        return position >= 0 ? position - start : position + start;
+    }
+
+    /**
+     * Moves the row of a vertex to the end of the target array with a bigger capacity
+     * @param vertex vertex whose row is full
+     * @param capacity new capacity of the row
+     */
+    private void relocate(int vertex, int capacity) {
+        if (used + capacity > targets.length) {
+            targets = Arrays.copyOf(targets, Math.max(used + capacity, targets.length * 2));
+        }
+        System.arraycopy(targets, offsets[vertex], targets, used, lengths[vertex]);
+        offsets[vertex] = used;
+        capacities[vertex] = capacity;
+        used += capacity;
+    }
+
+    private void checkVertex(int vertex) {
+        if (vertex < 0 || vertex >= vertices)
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+
+    /**
+     * Collects edges in the order they are read and packs them into a
+     * {@link CsrAdjacency} with one counting pass and one filling pass.
+     */
+    public static class Builder {
+        private final int n;
+        private int[] sources;
+        private int[] ends;
+        private int count;
+
+        /**
+         * Creates a builder for a graph with n vertices
+         * @param n number of vertices
+         */
+        public Builder(int n) {
+            this(n, 16);
+        }
+
+        /**
+         * Creates a builder for a graph with n vertices with room for the expected edges
+         * @param n number of vertices
+         * @param expectedEdges number of edges that will be added, used only for presizing
+         */
+        public Builder(int n, long expectedEdges) {
+            this.n = n;
+            int capacity = (int) Math.max(16, Math.min(expectedEdges, Integer.MAX_VALUE - 8));
+            sources = new int[capacity];
+            ends = new int[capacity];
+        }
+
+        /**
+         * Records an edge from source to target
+         * @param source source vertex
+         * @param target target vertex
+         * @return this builder
+         */
+        public Builder addEdge(int source, int target) {
+            if (source < 0 || source >= n)
+                throw new ArrayIndexOutOfBoundsException(source);
+            if (target < 0 || target >= n)
+                throw new ArrayIndexOutOfBoundsException(target);
+            if (count == sources.length) {
+                sources = Arrays.copyOf(sources, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            sources[count] = source;
+            ends[count] = target;
+            count++;
+            return this;
+        }
+
+        /**
+         * Packs the recorded edges. Rows are sorted and duplicate edges dropped.
+         * @return the packed storage
+         */
+        public CsrAdjacency build() {
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < count; i++) {
+                offsets[sources[i] + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            int[] targets = new int[count];
+            int[] next = Arrays.copyOf(offsets, n);
+            for (int i = 0; i < count; i++) {
+                targets[next[sources[i]]++] = ends[i];
+            }
+            return pack(offsets, targets);
+        }
+
+        /**
+         * Sorts every row and squeezes out duplicate targets
+         * @param offsets row starts with offsets[n] the number of targets
+         * @param targets unsorted rows
+         * @return the packed storage
+         */
+        static CsrAdjacency pack(int[] offsets, int[] targets) {
+            int n = offsets.length - 1;
+            int write = 0;
+            int start = 0;
+            for (int v = 0; v < n; v++) {
+                int end = offsets[v + 1];
+                Arrays.sort(targets, start, end);
+                offsets[v] = write;
+                for (int i = start; i < end; i++) {
+                    if (write == offsets[v] || targets[write - 1] != targets[i])
+                        targets[write++] = targets[i];
+                }
+                start = end;
+            }
+            offsets[n] = write;
+            return new CsrAdjacency(offsets, write == targets.length ? targets : Arrays.copyOf(targets, write));
+        }
+    }
+}
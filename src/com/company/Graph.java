@@ -1,12 +1,18 @@
 package com.company;
 
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 // File: Graph.java from the package EDU.colorado.graphs
 // Complete documentation is available from the Graph link in
 //   http://www.cs.colorado.edu/~main/docs/
 
 
 /******************************************************************************
- * A <CODE>Graph</CODE> is a labeled graph with a fixed number of vertices.
+ * A <CODE>Graph</CODE> is a labeled graph whose vertices can be added and removed.
  *
  * <dt><b>Java Source Code for this class:</b><dd>
  *   <A HREF="../../../../edu/colorado/collections/Graph.java">
@@ -22,12 +28,59 @@ package com.company;
 public class Graph implements Cloneable
 {
     // Invariant of the Graph class:
-    //   1. The vertex numbers range from 0 to labels.length-1.
+    //   1. The vertex numbers range from 0 to manyVertices-1.
     //   2. For each vertex number i, labels[i] contains the label for vertex i.
-    //   3. For any two vertices i and j, edges[i][j] is true if there is a
-    //      vertex from i to j; otherwise edges[i][j] is false.
-    private boolean[ ][ ] edges;
+    //      labels.length is at least manyVertices and the spare elements are
+    //      null, so vertices can be added without copying the labels each time.
+    //   3. For any two vertices i and j, edges.isEdge(i, j) is true if there is
+    //      an edge from i to j; otherwise edges.isEdge(i, j) is false.
+    //   4. edges.size() is equal to manyVertices.
+    //   5. index maps every nonnull label to the vertices that carry it.
+    //   6. hubRows is null or, for each vertex i, hubRows.get(i) is null or a
+    //      bitset of the neighbors of i. Only vertices with at least
+    //      size()/HUB_DIVISOR neighbors get one, and none are kept when
+    //      edges keeps its rows as bitsets already. hubRows and the bitsets
+    //      are as long as labels.
+    //   7. removed is null if no vertex has been removed since the last
+    //      compaction. Otherwise removed[i] is true for each removed vertex i,
+    //      which has a null label and no edges, removedCount is the number of
+    //      them and free[0] through free[removedCount-1] are their numbers, the
+    //      most recently removed last.
+    //   8. externalOf and internalOf are null while each vertex number is also
+    //      the external id of the vertex. Otherwise externalOf[i] is the
+    //      external id of vertex i (-1 if it is removed), internalOf[e] is the
+    //      vertex with external id e (-1 if there is none) and nextExternal is
+    //      the id the next added vertex gets. External ids are never reused.
+    //   9. degrees[i] is edges.degree(i) for each vertex i, manyEdges is the
+    //      sum of the degrees, degreeCounts[d] is the number of vertices that
+    //      are not removed and have degree d, and maxDegree is the highest
+    //      degree (0 for no vertices). degrees is as long as labels and
+    //      degreeCounts is longer than maxDegree.
+    //  10. nameIndex is null or a NameIndex of this Graph: of the labels it
+    //      had when it was built, with every label set to a nonnull value
+    //      since among its recent names, and renumbered with the vertices.
+    //      Removed and renamed vertices are skipped by the NameIndex itself.
+    private Adjacency edges;
     private Object[ ] labels;
+    private int manyVertices;
+    private LabelIndex index;
+    private AtomicReferenceArray<long[ ]> hubRows;
+    private GraphListener[ ] listeners = new GraphListener[0];
+    private boolean[ ] removed;
+    private int[ ] free;
+    private int removedCount;
+    private int[ ] externalOf;
+    private int[ ] internalOf;
+    private int nextExternal;
+    private int[ ] degrees;
+    private long manyEdges;
+    private int[ ] degreeCounts;
+    private int maxDegree;
+    private volatile NameIndex nameIndex;
+
+    // A vertex whose degree is at least size()/HUB_DIVISOR has a neighbor
+    // bitset no bigger than its sorted int neighbor list.
+    private static final int HUB_DIVISOR = 32;
 
 
     /**
@@ -48,8 +101,34 @@ public class Graph implements Cloneable
      **/
     public Graph(int n)
     {
-        edges = new boolean[n][n];  // All values initially false
-        labels = new Object[n];     // All values initially null
+        this(new MatrixAdjacency(n));
+    }
+
+
+    /**
+     * Initialize a <CODE>Graph</CODE> that keeps its edges in the given storage,
+     * with null labels.
+     * @param <CODE>edges</CODE>
+     *   the edge storage, for example a <CODE>CsrAdjacency</CODE> built from
+     *   the friend file
+     * <dt><b>Postcondition:</b><dd>
+     *   This <CODE>Graph</CODE> has <CODE>edges.size()</CODE> vertices and the
+     *   edges already present in <CODE>edges</CODE>. All vertex labels are null.
+     *   Later changes made through this <CODE>Graph</CODE> are made to
+     *   <CODE>edges</CODE>.
+     * @exception NullPointerException
+     *   Indicates that <CODE>edges</CODE> is null.
+     **/
+    public Graph(Adjacency edges)
+    {
+        this.edges = edges;
+        manyVertices = edges.size( );
+        labels = new Object[manyVertices];  // All values initially null
+        index = new LabelIndex(manyVertices);
+        degrees = new int[manyVertices];
+        for (int v = 0; v < manyVertices; v++)
+            degrees[v] = edges.degree(v);
+        countDegrees( );
     }
 
 
@@ -69,11 +148,19 @@ public class Graph implements Cloneable
      *   <CODE>Graph</CODE> is unchanged.)
      * @exception ArrayIndexOutOfBoundsException
      *   Indicates that the <CODE>source</CODE> or <CODE>target</CODE> was not a
-     *   valid vertex number.
+     *   valid vertex number, or was a removed vertex.
      **/
     public void addEdge(int source, int target)
     {
-        edges[source][target] = true;
+        checkLive(source);
+        checkLive(target);
+        if (edges.addEdge(source, target))
+        {
+            forgetHubRow(source);
+            raiseDegree(source);
+            for (GraphListener listener : listeners)
+                listener.edgeAdded(source, target);
+        }
     }
 
 
@@ -89,6 +176,29 @@ public class Graph implements Cloneable
      **/
     public Object clone( )
     {  // Clone a Graph object.
+        return copyWith(edges.copy( ));
+    }
+
+
+    /**
+     * Generate a copy of this <CODE>Graph</CODE> that keeps its edges in a
+     * <CODE>SharedRowAdjacency</CODE>, so its own clones share the rows they
+     * do not change. Used by <CODE>ConcurrentGraph</CODE> for its versions.
+     * @param - none
+     * @return
+     *   a copy of this <CODE>Graph</CODE>, changed independently of it
+     * @throws OutOfMemoryError
+     *   Indicates insufficient memory for creating the copy.
+     **/
+    Graph sharingRows( )
+    {
+        return copyWith(SharedRowAdjacency.copyOf(edges));
+    }
+
+
+    // Copies everything but the edges, which the copy keeps in the given storage.
+    private Graph copyWith(Adjacency copiedEdges)
+    {
         Graph answer;
 
         try
@@ -101,13 +211,69 @@ public class Graph implements Cloneable
             throw new InternalError(e.toString( ));
         }
 
-        answer.edges = (boolean [ ][ ]) edges.clone( );
+        answer.edges = copiedEdges;
         answer.labels = (Object [ ]) labels.clone( );
+        answer.index = index.copy( );
+        answer.hubRows = null;
+        answer.listeners = new GraphListener[0];
+        answer.degrees = (int [ ]) degrees.clone( );
+        answer.degreeCounts = (int [ ]) degreeCounts.clone( );
+        if (nameIndex != null)
+            answer.nameIndex = nameIndex.forGraph(answer);
+        if (removed != null)
+        {
+            answer.removed = (boolean [ ]) removed.clone( );
+            answer.free = (int [ ]) free.clone( );
+        }
+        if (externalOf != null)
+        {
+            answer.externalOf = (int [ ]) externalOf.clone( );
+            answer.internalOf = (int [ ]) internalOf.clone( );
+        }
 
         return answer;
     }
 
 
+    /**
+     * Save this <CODE>Graph</CODE> as a binary snapshot.
+     * @param <CODE>file</CODE>
+     *   the file to create or replace
+     * <dt><b>Postcondition:</b><dd>
+     *   <CODE>file</CODE> holds the vertex count, the labels and the edges of this
+     *   <CODE>Graph</CODE> in the format described by <CODE>GraphSnapshot</CODE>.
+     *   Labels are saved as the text of their <CODE>toString</CODE>. Removed
+     *   vertices are saved as vertices with no edges and a null label, and
+     *   come back removed, with the external ids of the other vertices, once
+     *   the ids are no longer the vertex numbers; call <CODE>compact</CODE>
+     *   first to leave removed vertices out.
+     * @exception IOException
+     *   Indicates that the file could not be written.
+     **/
+    public void writeSnapshot(Path file) throws IOException
+    {
+        GraphSnapshot.write(this, file);
+    }
+
+
+    /**
+     * Open a binary snapshot written by <CODE>writeSnapshot</CODE>.
+     * @param <CODE>file</CODE>
+     *   the snapshot file
+     * @return
+     *   a <CODE>Graph</CODE> with the vertices, labels and edges of the snapshot.
+     *   Its edges are read in place from the memory mapped file until the
+     *   <CODE>Graph</CODE> is first changed, so opening takes time proportional
+     *   to the labels only.
+     * @exception IOException
+     *   Indicates that the file could not be read or is not a snapshot.
+     **/
+    public static Graph readSnapshot(Path file) throws IOException
+    {
+        return GraphSnapshot.read(file);
+    }
+
+
     /**
      * Static method to print the labels of a graph with a depth-first search.
      * @param <CODE>g</CODE>
@@ -120,21 +286,27 @@ public class Graph implements Cloneable
      *   A depth-first search of <CODE>g</CODE> has been conducted, starting at
      *   the specified start vertex. Each vertex visited has its label printed
      *   using <CODE>System.out.println</CODE>. Note that vertices that are not
-     *   connected to the start will not be visited.
+     *   connected to the start will not be visited. The search is iterative, so
+     *   components of any size can be printed.
      * @throws NullPointerException
      *   Indicates that <CODE>g</CODE> is null.
      * @throws ArrayIndexOutOfBoundsException
      *   Indicates that the vertex was not a valid vertex number.
      * @throws OutOfMemoryError
-     *   Indicates that there is insufficient memory for an array of boolean values
+     *   Indicates that there is insufficient memory for the arrays of int values
      *   used by this method.
      **/
-    public static void depthFirstPrint(Graph g, int start)
+    public static void depthFirstPrint(final Graph g, int start)
     {
-        boolean[ ] marked = new boolean [g.size( )];
-
-        depthFirstRecurse(g, start, marked);
-
+        g.traversal( ).depthFirst(start, GraphTraversal.UNLIMITED, new VertexVisitor( )
+        {
+            @Override
+            public boolean visit(int vertex, int depth)
+            {
+                System.out.println(g.getLabel(vertex));
+                return true;
+            }
+        });
     }
 
 
@@ -165,7 +337,11 @@ public class Graph implements Cloneable
      * @throws ArrayIndexOutOfBoundsException
      *   Indicates that the vertex was not a valid vertex number, or
      *   <CODE>marked</CODE> was the wrong size.
+     * @deprecated
+     *   Recurses once per vertex and overflows the stack on large components.
+     *   Use <CODE>traversal().depthFirst</CODE> with a <CODE>VertexVisitor</CODE>.
      **/
+    @Deprecated
     public static void depthFirstRecurse(Graph g, int v, boolean[ ] marked)
     {
         int[ ] connections = g.neighbors(v);
@@ -200,6 +376,7 @@ public class Graph implements Cloneable
      **/
     public Object getLabel(int vertex)
     {
+        checkVertex(vertex);
         return labels[vertex];
     }
 
@@ -224,7 +401,7 @@ public class Graph implements Cloneable
      **/
     public boolean isEdge(int source, int target)
     {
-        return edges[source][target];
+        return edges.isEdge(source, target);
     }
 
     /**
@@ -243,37 +420,767 @@ public class Graph implements Cloneable
      * @return
      *   The return value is an array that contains all the vertex numbers of
      *   vertices that are targets for edges with a source at the specified
-     *   <CODE>vertex</CODE>.
+     *   <CODE>vertex</CODE>, in ascending order.
      * @exception ArrayIndexOutOfBoundsException
      *   Indicates that the <CODE>source</CODE> or <CODE>target</CODE> was not a
      *   valid vertex number.
      **/
     public int[ ] neighbors(int vertex)
     {
-        int i;
-        int count;
-        int[ ] answer;
+        long start = Metrics.start( );
+        int[ ] answer = edges.neighbors(vertex);
+        Metrics.record(Metrics.Operation.NEIGHBORS, start, 1, answer.length);
+        return answer;
+    }
+
+
+    /**
+     * Accessor method to count the neighbors of a specified vertex of this
+     * <CODE>Graph</CODE> without building the list of them.
+     * @param <CODE>vertex</CODE>
+     *   a vertex number
+     * <dt><b>Precondition:</b><dd>
+     *   <CODE>vertex</CODE> is nonnegative and
+     *   less than <CODE>size()</CODE>.
+     * @return
+     *   the number of edges that have the specified <CODE>vertex</CODE> as
+     *   their source. Degrees are counters kept by <CODE>addEdge</CODE> and
+     *   <CODE>removeEdge</CODE>, so this takes constant time whatever the
+     *   edge storage.
+     * @exception ArrayIndexOutOfBoundsException
+     *   Indicates that the <CODE>vertex</CODE> was not a
+     *   valid vertex number.
+     **/
+    public int degree(int vertex)
+    {
+        checkVertex(vertex);
+        return degrees[vertex];
+    }
+
+
+    /**
+     * Accessor method to determine the number of edges of this <CODE>Graph</CODE>.
+     * @param - none
+     * @return
+     *   the number of edges, each friendship counting once per direction. The
+     *   count is kept up to date by <CODE>addEdge</CODE> and
+     *   <CODE>removeEdge</CODE>, so this takes constant time.
+     **/
+    public long edgeCount( )
+    {
+        return manyEdges;
+    }
+
+
+    /**
+     * Accessor method to determine the highest degree of this <CODE>Graph</CODE>.
+     * @param - none
+     * @return
+     *   the largest <CODE>degree(v)</CODE> of any vertex, or 0 if there are
+     *   no edges. This takes constant time.
+     **/
+    public int maxDegree( )
+    {
+        return maxDegree;
+    }
+
+
+    /**
+     * Accessor method to determine how many vertices have a given degree.
+     * @param <CODE>degree</CODE>
+     *   a number of edges
+     * @return
+     *   the number of vertices that are not removed and are the source of
+     *   exactly <CODE>degree</CODE> edges (0 for a negative degree or one
+     *   above <CODE>maxDegree()</CODE>). This takes constant time.
+     **/
+    public int degreeCount(int degree)
+    {
+        return (degree >= 0 && degree <= maxDegree) ? degreeCounts[degree] : 0;
+    }
+
+
+    /**
+     * Accessor method to take the statistics of this <CODE>Graph</CODE>.
+     * @param - none
+     * @return
+     *   the vertex and edge counts and the degree histogram of this
+     *   <CODE>Graph</CODE> as they are now, in time proportional to
+     *   <CODE>maxDegree()</CODE>
+     **/
+    public GraphStats stats( )
+    {
+        return new GraphStats(vertexCount( ), manyEdges, Arrays.copyOf(degreeCounts, maxDegree + 1));
+    }
+
+
+    // Counts an edge added from vertex.
+    private void raiseDegree(int vertex)
+    {
+        int d = degrees[vertex]++;
+        manyEdges++;
+        if (d + 1 == degreeCounts.length)
+            degreeCounts = Arrays.copyOf(degreeCounts, degreeCounts.length * 2);
+        degreeCounts[d]--;
+        degreeCounts[d + 1]++;
+        if (d == maxDegree)
+            maxDegree = d + 1;
+    }
+
+
+    // Counts an edge removed from vertex.
+    private void lowerDegree(int vertex)
+    {
+        int d = degrees[vertex]--;
+        manyEdges--;
+        degreeCounts[d]--;
+        degreeCounts[d - 1]++;
+        if (d == maxDegree && degreeCounts[d] == 0)
+            maxDegree = d - 1;
+    }
+
+
+    // Rebuilds manyEdges, degreeCounts and maxDegree from degrees.
+    private void countDegrees( )
+    {
+        manyEdges = 0;
+        maxDegree = 0;
+        for (int v = 0; v < manyVertices; v++)
+        {
+            manyEdges += degrees[v];
+            maxDegree = Math.max(maxDegree, degrees[v]);
+        }
+        degreeCounts = new int[Math.max(16, maxDegree + 2)];
+        for (int v = 0; v < manyVertices; v++)
+        {
+            if (removed == null || !removed[v])
+                degreeCounts[degrees[v]]++;
+        }
+    }
+
+
+    /**
+     * Accessor method to copy the neighbors of a specified vertex into a
+     * caller supplied buffer, so repeated queries need not allocate.
+     * @param <CODE>vertex</CODE>
+     *   a vertex number
+     * @param <CODE>buffer</CODE>
+     *   an array with room for at least <CODE>degree(vertex)</CODE> elements
+     * <dt><b>Precondition:</b><dd>
+     *   <CODE>vertex</CODE> is nonnegative and
+     *   less than <CODE>size()</CODE>.
+     * @return
+     *   the number of neighbors written to the start of <CODE>buffer</CODE>,
+     *   in ascending order
+     * @exception ArrayIndexOutOfBoundsException
+     *   Indicates that the <CODE>vertex</CODE> was not a valid vertex number
+     *   or that <CODE>buffer</CODE> is too small.
+     **/
+    public int neighbors(int vertex, int[ ] buffer)
+    {
+        return edges.neighbors(vertex, buffer);
+    }
+
+
+    /**
+     * Accessor method to read the neighbors of a specified vertex without
+     * copying them.
+     * @param <CODE>vertex</CODE>
+     *   a vertex number
+     * <dt><b>Precondition:</b><dd>
+     *   <CODE>vertex</CODE> is nonnegative and
+     *   less than <CODE>size()</CODE>.
+     * @return
+     *   a read only <CODE>IntBuffer</CODE> holding the neighbors in ascending
+     *   order from position 0 to its limit. Storage that keeps each row in one
+     *   piece, such as <CODE>CsrAdjacency</CODE>, <CODE>MappedCsrAdjacency</CODE>
+     *   and <CODE>OffHeapCsrAdjacency</CODE>, returns a view of the row itself,
+     *   which is only valid until the next change of this <CODE>Graph</CODE>.
+     * @exception ArrayIndexOutOfBoundsException
+     *   Indicates that the <CODE>vertex</CODE> was not a valid vertex number.
+     **/
+    public IntBuffer neighborView(int vertex)
+    {
+        long start = Metrics.start( );
+        IntBuffer answer = edges.neighborView(vertex);
+        Metrics.record(Metrics.Operation.NEIGHBORS, start, 1, answer.limit( ));
+        return answer;
+    }
+
+
+    /**
+     * Create a reusable iterative traversal of this <CODE>Graph</CODE>.
+     * @param - none
+     * @return
+     *   a new <CODE>GraphTraversal</CODE> offering depth-first and breadth-first
+     *   searches that report each vertex to a <CODE>VertexVisitor</CODE>.
+     *   It must not be shared between threads.
+     * @exception OutOfMemoryError
+     *   Indicates insufficient memory for two arrays of <CODE>size()</CODE> ints.
+     **/
+    public GraphTraversal traversal( )
+    {
+        return new GraphTraversal(this);
+    }
+
+
+    /**
+     * Create a reusable expander for friends plus friends of friends queries
+     * on this <CODE>Graph</CODE>.
+     * @param - none
+     * @return
+     *   a new <CODE>TwoHopExpander</CODE> reading this <CODE>Graph</CODE>.
+     *   Once its buffers have grown to the largest neighborhood seen it answers
+     *   queries without allocating. It must not be shared between threads.
+     * @exception OutOfMemoryError
+     *   Indicates insufficient memory for an array of <CODE>size()</CODE> ints.
+     **/
+    public TwoHopExpander twoHopExpander( )
+    {
+        return new TwoHopExpander(this);
+    }
+
+
+    /**
+     * Create a reusable shortest path search between two vertices of this
+     * <CODE>Graph</CODE>.
+     * @param - none
+     * @return
+     *   a new <CODE>PathFinder</CODE> running bidirectional breadth-first
+     *   searches with a hop limit, which gives the degrees of separation of two
+     *   members and one path between them. Its buffers are reused between
+     *   searches. It must not be shared between threads.
+     * @exception OutOfMemoryError
+     *   Indicates insufficient memory for two arrays of <CODE>size()</CODE> ints.
+     **/
+    public PathFinder pathFinder( )
+    {
+        return new PathFinder(this);
+    }
+
+
+    /**
+     * Create a reusable "people you may know" query on this <CODE>Graph</CODE>.
+     * @param measure
+     *   how the friends of friends of a vertex are scored
+     * @return
+     *   a new <CODE>Recommender</CODE> returning the best scored friends of
+     *   friends of a vertex that are not its neighbors yet. Its buffers are
+     *   reused between queries. It must not be shared between threads.
+     * @exception NullPointerException
+     *   Indicates that <CODE>measure</CODE> is null.
+     * @exception OutOfMemoryError
+     *   Indicates insufficient memory for an array of <CODE>size()</CODE> ints.
+     **/
+    public Recommender recommender(Recommender.Measure measure)
+    {
+        return new Recommender(this, measure);
+    }
+
+
+    /**
+     * Accessor method to obtain the prefix and misspelled name search over the
+     * labels of this <CODE>Graph</CODE>.
+     * @param - none
+     * @return
+     *   the <CODE>NameIndex</CODE> built by <CODE>buildNameIndex</CODE>, kept
+     *   up to date as labels are set and vertices renumbered, or one built
+     *   now on the calling thread if there is none. It may be shared between
+     *   threads.
+     * @exception OutOfMemoryError
+     *   Indicates insufficient memory for the index.
+     **/
+    public NameIndex nameIndex( )
+    {
+        NameIndex answer = nameIndex;
+
+        if (answer == null)
+            answer = buildNameIndex(1);
+        return answer;
+    }
+
+
+    /**
+     * Modification method to index the labels of this <CODE>Graph</CODE> for
+     * prefix and misspelled name search.
+     * @param <CODE>parallelism</CODE>
+     *   number of threads formatting and sorting the labels
+     * <dt><b>Precondition:</b><dd>
+     *   <CODE>parallelism</CODE> is positive and this <CODE>Graph</CODE> does
+     *   not change while the index is built.
+     * <dt><b>Postcondition:</b><dd>
+     *   <CODE>nameIndex()</CODE> returns the new index, which the labels set
+     *   later are added to.
+     * @return
+     *   the new <CODE>NameIndex</CODE>
+     * @exception IllegalArgumentException
+     *   Indicates that <CODE>parallelism</CODE> is not positive.
+     * @exception OutOfMemoryError
+     *   Indicates insufficient memory for the index.
+     **/
+    public NameIndex buildNameIndex(int parallelism)
+    {
+        NameIndex answer = NameIndex.build(this, parallelism);
+
+        nameIndex = answer;
+        return answer;
+    }
+
+
+    /**
+     * Accessor method to obtain the vertices that are neighbors of both of
+     * two specified vertices of this <CODE>Graph</CODE>.
+     * @param <CODE>first</CODE>
+     *   a vertex number
+     * @param <CODE>second</CODE>
+     *   a vertex number
+     * <dt><b>Precondition:</b><dd>
+     *   Both <CODE>first</CODE> and <CODE>second</CODE> are nonnegative and
+     *   less than <CODE>size()</CODE>.
+     * @return
+     *   the vertex numbers that are targets of edges from both
+     *   <CODE>first</CODE> and <CODE>second</CODE>, in ascending order.
+     *   Two vertices that both have very many neighbors are intersected one
+     *   64 vertex word at a time; otherwise the sorted neighbor lists are
+     *   merged, galloping through the longer one when their lengths differ a lot.
+     * @exception ArrayIndexOutOfBoundsException
+     *   Indicates that <CODE>first</CODE> or <CODE>second</CODE> was not a
+     *   valid vertex number.
+     **/
+    public int[ ] commonNeighbors(int first, int second)
+    {
+        int[ ] answer = new int[Math.min(degree(first), degree(second))];
+        int count = common(first, second, answer);
+
+        return count == answer.length ? answer : Arrays.copyOf(answer, count);
+    }
+
+
+    /**
+     * Accessor method to count the vertices that are neighbors of both of
+     * two specified vertices of this <CODE>Graph</CODE>.
+     * @param <CODE>first</CODE>
+     *   a vertex number
+     * @param <CODE>second</CODE>
+     *   a vertex number
+     * <dt><b>Precondition:</b><dd>
+     *   Both <CODE>first</CODE> and <CODE>second</CODE> are nonnegative and
+     *   less than <CODE>size()</CODE>.
+     * @return
+     *   <CODE>commonNeighbors(first, second).length</CODE>, computed without
+     *   building the list
+     * @exception ArrayIndexOutOfBoundsException
+     *   Indicates that <CODE>first</CODE> or <CODE>second</CODE> was not a
+     *   valid vertex number.
+     **/
+    public int countCommonNeighbors(int first, int second)
+    {
+        return common(first, second, null);
+    }
 
-        // First count how many edges have the vertex as their source
-        count = 0;
-        for (i = 0; i < labels.length; i++)
+
+    // Intersects the neighbors of two vertices, writing them to out unless it is null.
+    private int common(int first, int second, int[ ] out)
+    {
+        long[ ] firstBits = hubRow(first);
+        long[ ] secondBits = (firstBits == null) ? null : hubRow(second);
+
+        if (secondBits != null)
+            return Intersections.intersect(firstBits, secondBits, out);
+
+        int[ ] firstList = neighbors(first);
+        int[ ] secondList = neighbors(second);
+        return Intersections.intersect(firstList, firstList.length, secondList, secondList.length, out);
+    }
+
+
+    // Returns the neighbor bitset of a vertex when the storage keeps rows as
+    // bitsets. Otherwise returns the bitset of a vertex with very many neighbors,
+    // building it on first use, or null for any other vertex.
+    private long[ ] hubRow(int vertex)
+    {
+        long[ ] row = edges.rowBits(vertex);
+        if (row != null)
+            return row;
+
+        int degree = degree(vertex);
+
+        if ((long) degree * HUB_DIVISOR < manyVertices)
+            return null;
+        // Read the field once: concurrent readers of a published graph may race to
+        // create the cache, and losing that race only costs a rebuilt bitset.
+        AtomicReferenceArray<long[ ]> cache = hubRows;
+        if (cache == null)
+            hubRows = cache = new AtomicReferenceArray<long[ ]>(labels.length);
+
+        long[ ] bits = cache.get(vertex);
+        if (bits == null)
         {
-            if (edges[vertex][i])
-                count++;
+            bits = Intersections.toBits(neighbors(vertex), degree, labels.length);
+            cache.set(vertex, bits);
         }
+        return bits;
+    }
 
-        // Allocate the array for the answer
-        answer = new int[count];
 
-        // Fill the array for the answer
-        count = 0;
-        for (i = 0; i < labels.length; i++)
+    // Drops the cached bitset of a vertex whose neighbors changed.
+    private void forgetHubRow(int vertex)
+    {
+        if (hubRows != null)
+            hubRows.set(vertex, null);
+    }
+
+
+    /**
+     * Remove a vertex from this <CODE>Graph</CODE>.
+     * @param <CODE>vertex</CODE>
+     *   the vertex number of the vertex to remove
+     * <dt><b>Precondition:</b><dd>
+     *   <CODE>vertex</CODE> is nonnegative, less than <CODE>size()</CODE> and
+     *   not removed. Every edge into <CODE>vertex</CODE> has an edge back, as
+     *   the two directions of a friendship do.
+     * <dt><b>Postcondition:</b><dd>
+     *   The edges from and to <CODE>vertex</CODE> have been removed one by one
+     *   with <CODE>removeEdge</CODE>, from its highest numbered friend down, so
+     *   removing a member with d friends takes O(d) on its own row rather than
+     *   O(d * d) on compressed rows. Its label is null and it is marked as
+     *   removed: it no longer counts in <CODE>vertexCount()</CODE>, it has no
+     *   external id and it can get no edges. Its number is kept for reuse by
+     *   <CODE>addVertex</CODE> until <CODE>compact</CODE> renumbers the vertices.
+     * @exception ArrayIndexOutOfBoundsException
+     *   Indicates that <CODE>vertex</CODE> was not a valid vertex number, or
+     *   was removed already.
+     **/
+    public void removeVertex(int vertex)
+    {
+        checkLive(vertex);
+        for (GraphListener listener : listeners)
+            listener.vertexRemoving(vertex);
+        // From the last friend back, so rows kept in one piece empty without shifting
+        int[ ] friends = neighbors(vertex);
+        for (int i = friends.length - 1; i >= 0; i--)
         {
-            if (edges[vertex][i])
-                answer[count++] = i;
+            removeEdge(friends[i], vertex);
+            removeEdge(vertex, friends[i]);
         }
+        setLabel(vertex, null);
 
-        return answer;
+        if (removed == null)
+        {
+            removed = new boolean[labels.length];
+            free = new int[16];
+        }
+        if (removedCount == free.length)
+            free = Arrays.copyOf(free, removedCount * 2);
+        removed[vertex] = true;
+        free[removedCount++] = vertex;
+        degreeCounts[0]--;
+
+        assignExternalIds( );
+        internalOf[externalOf[vertex]] = -1;
+        externalOf[vertex] = -1;
+
+        for (GraphListener listener : listeners)
+            listener.vertexRemoved(vertex);
+    }
+
+
+    /**
+     * Add a vertex to this <CODE>Graph</CODE>.
+     * @param <CODE>label</CODE>
+     *   the label of the new vertex (which may be null)
+     * <dt><b>Postcondition:</b><dd>
+     *   This <CODE>Graph</CODE> has one more vertex, with no edges, the
+     *   specified <CODE>label</CODE> and an external id no vertex had before.
+     *   The most recently removed vertex number is reused if there is one;
+     *   otherwise the new vertex is numbered <CODE>size()</CODE> and the
+     *   labels and edge storage double their capacity when they are full, so
+     *   adding vertices one at a time takes amortized constant time (linear
+     *   for the matrix storage of <CODE>Graph(int n)</CODE>).
+     * @return
+     *   the vertex number of the new vertex
+     * @exception OutOfMemoryError
+     *   Indicates insufficient memory for the bigger storage.
+     **/
+    public int addVertex(Object label)
+    {
+        int vertex;
+
+        if (removedCount > 0)
+        {
+            vertex = free[--removedCount];
+            removed[vertex] = false;
+        }
+        else
+        {
+            vertex = edges.addVertex( );
+            if (manyVertices == labels.length)
+                grow(Math.max(16, manyVertices * 2));
+            manyVertices++;
+        }
+        degreeCounts[0]++;
+
+        if (externalOf != null)
+        {
+            externalOf[vertex] = nextExternal;
+            if (nextExternal == internalOf.length)
+                internalOf = Arrays.copyOf(internalOf, nextExternal * 2);
+            internalOf[nextExternal++] = vertex;
+        }
+        setLabel(vertex, label);
+
+        for (GraphListener listener : listeners)
+            listener.vertexAdded(vertex);
+        return vertex;
+    }
+
+
+    // Gives the arrays indexed by vertex number room for capacity vertices.
+    private void grow(int capacity)
+    {
+        labels = Arrays.copyOf(labels, capacity);
+        degrees = Arrays.copyOf(degrees, capacity);
+        if (removed != null)
+            removed = Arrays.copyOf(removed, capacity);
+        if (externalOf != null)
+            externalOf = Arrays.copyOf(externalOf, capacity);
+        hubRows = null;
+    }
+
+
+    /**
+     * Renumber the vertices of this <CODE>Graph</CODE> so that removed
+     * vertices no longer take room.
+     * @param - none
+     * <dt><b>Postcondition:</b><dd>
+     *   The vertices that are not removed have been numbered from 0 in their
+     *   previous order, with their labels, edges and external ids, and the
+     *   removed vertices are gone. The edge storage has been rebuilt at its
+     *   new size. Listeners are told the new numbers; vertex numbers held
+     *   anywhere else are no longer valid, external ids are.
+     * @return
+     *   the new number of vertices
+     * @exception OutOfMemoryError
+     *   Indicates insufficient memory for the new edge storage.
+     **/
+    public int compact( )
+    {
+        if (removedCount == 0)
+            return manyVertices;
+
+        int size = manyVertices - removedCount;
+        int[ ] mapping = new int[manyVertices];
+        int next = 0;
+        for (int v = 0; v < manyVertices; v++)
+            mapping[v] = removed[v] ? -1 : next++;
+
+        Adjacency compacted = edges.renumber(mapping, size);
+        Object[ ] keptLabels = new Object[size];
+        int[ ] keptExternal = new int[size];
+        int[ ] keptDegrees = new int[size];
+        LabelIndex keptIndex = new LabelIndex(size);
+        for (int v = 0; v < manyVertices; v++)
+        {
+            if (mapping[v] < 0)
+                continue;
+            keptLabels[mapping[v]] = labels[v];
+            keptIndex.put(labels[v], mapping[v]);
+            keptExternal[mapping[v]] = externalOf[v];
+            keptDegrees[mapping[v]] = degrees[v];
+            internalOf[externalOf[v]] = mapping[v];
+        }
+
+        edges = compacted;
+        labels = keptLabels;
+        manyVertices = size;
+        index = keptIndex;
+        externalOf = keptExternal;
+        degrees = keptDegrees;
+        hubRows = null;
+        if (nameIndex != null)
+            nameIndex = nameIndex.renumbered(mapping);
+        removed = null;
+        free = null;
+        removedCount = 0;
+
+        for (GraphListener listener : listeners)
+            listener.verticesRenumbered(mapping, size);
+        return size;
+    }
+
+
+    /**
+     * Accessor method to determine whether a vertex has been removed.
+     * @param <CODE>vertex</CODE>
+     *   a vertex number
+     * <dt><b>Precondition:</b><dd>
+     *   <CODE>vertex</CODE> is nonnegative and less than <CODE>size()</CODE>.
+     * @return
+     *   true if <CODE>vertex</CODE> was removed and has not been reused since
+     * @exception ArrayIndexOutOfBoundsException
+     *   Indicates that <CODE>vertex</CODE> was not a valid vertex number.
+     **/
+    public boolean isRemoved(int vertex)
+    {
+        checkVertex(vertex);
+        return removed != null && removed[vertex];
+    }
+
+
+    /**
+     * Determine the number of vertices of this <CODE>Graph</CODE> that are
+     * not removed.
+     * @param - none
+     * @return
+     *   <CODE>size()</CODE> minus the number of removed vertices
+     **/
+    public int vertexCount( )
+    {
+        return manyVertices - removedCount;
+    }
+
+
+    /**
+     * Accessor method to get the external id of a vertex. External ids start
+     * out equal to the vertex numbers, are kept by <CODE>compact</CODE> and are
+     * never given to another vertex, so they can be stored outside the graph.
+     * @param <CODE>vertex</CODE>
+     *   a vertex number
+     * <dt><b>Precondition:</b><dd>
+     *   <CODE>vertex</CODE> is nonnegative and less than <CODE>size()</CODE>.
+     * @return
+     *   the external id of <CODE>vertex</CODE>, or -1 if it is removed
+     * @exception ArrayIndexOutOfBoundsException
+     *   Indicates that <CODE>vertex</CODE> was not a valid vertex number.
+     **/
+    public int getExternalId(int vertex)
+    {
+        checkVertex(vertex);
+        return (externalOf == null) ? vertex : externalOf[vertex];
+    }
+
+
+    /**
+     * Accessor method to find the vertex with an external id.
+     * @param <CODE>id</CODE>
+     *   an external id returned by <CODE>getExternalId</CODE>
+     * @return
+     *   the current vertex number of the vertex with that external id, or -1
+     *   if the vertex was removed or there never was one
+     **/
+    public int getVertexOfExternalId(int id)
+    {
+        if (internalOf == null)
+            return (id >= 0 && id < manyVertices) ? id : -1;
+        return (id >= 0 && id < nextExternal) ? internalOf[id] : -1;
+    }
+
+
+    /**
+     * Accessor method to get the number of external ids given out so far.
+     * @param - none
+     * @return
+     *   the external id the next added vertex gets (unless a removed vertex
+     *   number is reused, it is <CODE>size()</CODE> until a vertex is removed)
+     **/
+    public int externalIdCount( )
+    {
+        return (externalOf == null) ? manyVertices : nextExternal;
+    }
+
+
+    /**
+     * Modification method to give the vertices of a graph just loaded the
+     * external ids they had when it was saved.
+     * @param <CODE>ids</CODE>
+     *   the external id of each vertex, or -1 for a vertex that was removed
+     * @param <CODE>count</CODE>
+     *   the value <CODE>externalIdCount()</CODE> had when the graph was saved
+     * <dt><b>Precondition:</b><dd>
+     *   <CODE>ids.length</CODE> is <CODE>size()</CODE>, every id other than -1
+     *   is less than <CODE>count</CODE> and given to one vertex only, and every
+     *   vertex with -1 has no edges and a null label. No vertex has been
+     *   removed yet.
+     * <dt><b>Postcondition:</b><dd>
+     *   <CODE>getExternalId(v)</CODE> is <CODE>ids[v]</CODE> for every vertex
+     *   <CODE>v</CODE> that is not -1, the vertices with -1 are removed and the
+     *   next added vertex gets the external id <CODE>count</CODE>. Listeners
+     *   are not told.
+     * @exception IllegalArgumentException
+     *   Indicates that <CODE>ids</CODE> or <CODE>count</CODE> break the
+     *   precondition.
+     * @exception IllegalStateException
+     *   Indicates that a vertex has been removed already.
+     **/
+    public void setExternalIds(int[ ] ids, int count)
+    {
+        if (ids.length != manyVertices)
+            throw new IllegalArgumentException("External ids must be given for " + manyVertices + " vertices: " + ids.length);
+        if (removedCount > 0)
+            throw new IllegalStateException("External ids are set before any vertex is removed");
+        int[ ] vertexOf = new int[Math.max(16, count)];
+        Arrays.fill(vertexOf, -1);
+        for (int v = 0; v < manyVertices; v++)
+        {
+            int id = ids[v];
+            if (id == -1 ? (degrees[v] > 0 || labels[v] != null) : (id < 0 || id >= count || vertexOf[id] >= 0))
+                throw new IllegalArgumentException("External id must be unused and below " + count + ": " + id);
+            if (id >= 0)
+                vertexOf[id] = v;
+        }
+
+        externalOf = Arrays.copyOf(ids, labels.length);
+        internalOf = vertexOf;
+        nextExternal = count;
+        for (int v = 0; v < manyVertices; v++)
+        {
+            if (ids[v] >= 0)
+                continue;
+            if (removed == null)
+            {
+                removed = new boolean[labels.length];
+                free = new int[16];
+            }
+            if (removedCount == free.length)
+                free = Arrays.copyOf(free, removedCount * 2);
+            removed[v] = true;
+            free[removedCount++] = v;
+            degreeCounts[0]--;
+        }
+    }
+
+
+    // Stores the external ids explicitly, the first time they stop being the
+    // vertex numbers.
+    private void assignExternalIds( )
+    {
+        if (externalOf != null)
+            return;
+
+        externalOf = new int[labels.length];
+        internalOf = new int[Math.max(16, manyVertices)];
+        for (int v = 0; v < manyVertices; v++)
+        {
+            externalOf[v] = v;
+            internalOf[v] = v;
+        }
+        nextExternal = manyVertices;
+    }
+
+
+    // Throws for a vertex number that is out of range.
+    private void checkVertex(int vertex)
+    {
+        if (vertex < 0 || vertex >= manyVertices)
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+
+
+    // Throws for a vertex number that is out of range or removed.
+    private void checkLive(int vertex)
+    {
+        if (isRemoved(vertex))
+            throw new ArrayIndexOutOfBoundsException(vertex);
     }
 
 
@@ -297,7 +1204,13 @@ public class Graph implements Cloneable
      **/
     public void removeEdge(int source, int target)
     {
-        edges[source][target] = false;
+        if (edges.removeEdge(source, target))
+        {
+            forgetHubRow(source);
+            lowerDegree(source);
+            for (GraphListener listener : listeners)
+                listener.edgeRemoved(source, target);
+        }
     }
 
 
@@ -313,22 +1226,109 @@ public class Graph implements Cloneable
      * <dt><b>Postcondition:</b><dd>
      *   The label of the specified vertex in this <CDOE>Graph</CODE> has been
      *   changed to the <CODE>newLabel</CODE>.
+     *   A nonnull label is added to the <CODE>NameIndex</CODE>, if there is
+     *   one, so searches find it without the index being built again.
      * @exception ArrayIndexOutOfBoundsException
      *   Indicates that the <CODE>vertex</CODE> was not a
      *   valid vertex number.
      **/
     public void setLabel(int vertex, Object newLabel)
     {
+        checkVertex(vertex);
+        Object oldLabel = labels[vertex];
+
+        index.remove(oldLabel, vertex);
         labels[vertex] = newLabel;
+        index.put(newLabel, vertex);
+        if (newLabel != null && nameIndex != null)
+            nameIndex = nameIndex.withName(vertex);
+        for (GraphListener listener : listeners)
+            listener.labelChanged(vertex, oldLabel, newLabel);
     }
 
-    public int getVertexIndex(Object label) {
-        for(int i=0; i<labels.length; ++i) {
-            if(labels[i].equals(label))
-                return i;
+
+    /**
+     * Modification method to register a listener for the changes made to
+     * this <CODE>Graph</CODE>.
+     * @param <CODE>listener</CODE>
+     *   the listener to add
+     * <dt><b>Postcondition:</b><dd>
+     *   Every later successful <CODE>addEdge</CODE>, <CODE>removeEdge</CODE>
+     *   and <CODE>setLabel</CODE> is reported to <CODE>listener</CODE> after
+     *   it is made. Copies made by <CODE>clone</CODE> have no listeners.
+     * @exception NullPointerException
+     *   Indicates that <CODE>listener</CODE> is null.
+     **/
+    public void addGraphListener(GraphListener listener)
+    {
+        if (listener == null)
+            throw new NullPointerException("listener");
+
+        GraphListener[ ] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[listeners.length] = listener;
+        listeners = grown;
+    }
+
+
+    /**
+     * Modification method to stop reporting changes to a listener.
+     * @param <CODE>listener</CODE>
+     *   a listener given to <CODE>addGraphListener</CODE>
+     * <dt><b>Postcondition:</b><dd>
+     *   <CODE>listener</CODE> receives no further changes. (If it was not
+     *   registered, then this <CODE>Graph</CODE> is unchanged.)
+     **/
+    public void removeGraphListener(GraphListener listener)
+    {
+        for (int i = 0; i < listeners.length; i++)
+        {
+            if (listeners[i] == listener)
+            {
+                GraphListener[ ] shrunk = new GraphListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, shrunk, 0, i);
+                System.arraycopy(listeners, i + 1, shrunk, i, shrunk.length - i);
+                listeners = shrunk;
+                return;
+            }
         }
+    }
+
+
+    /**
+     * Accessor method to find the vertex that carries a label.
+     * @param <CODE>label</CODE>
+     *   the label to look for (which may be null)
+     * @return
+     *   the lowest vertex number whose label is equal to <CODE>label</CODE>,
+     *   or -1 if no vertex has that label. Vertices with null labels never match.
+     **/
+    public int getVertexIndex(Object label)
+    {
+        long start = Metrics.start( );
+        int answer = index.get(label);
+        Metrics.record(Metrics.Operation.VERTEX_INDEX, start, 0, 0);
+        return answer;
+    }
+
+
+    /**
+     * Accessor method to find the vertices of several labels at once.
+     * @param <CODE>names</CODE>
+     *   the labels to look for
+     * @return
+     *   an array of the same length as <CODE>names</CODE> where element i is
+     *   <CODE>getVertexIndex(names[i])</CODE>
+     * @exception NullPointerException
+     *   Indicates that <CODE>names</CODE> is null.
+     **/
+    public int[ ] resolve(String... names)
+    {
+        int[ ] answer = new int[names.length];
+
+        for (int i = 0; i < names.length; i++)
+            answer[i] = index.get(names[i]);
 
-        return -1;
+        return answer;
     }
 
     /**
@@ -339,7 +1339,7 @@ public class Graph implements Cloneable
      **/
     public int size( )
     {
-        return labels.length;
+        return manyVertices;
     }
 
 }
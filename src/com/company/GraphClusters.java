@@ -0,0 +1,394 @@
+package com.company;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits the members of a {@link Graph} into groups on a ForkJoinPool: connected
+ * components, and communities found by label propagation.
+ *
+ * Both algorithms walk the vertices in ranges holding about the same number of edges,
+ * cut from the degrees the graph keeps, so a range of hubs is not slower than a range
+ * of loners. Components follow edges in both directions; label propagation reads the
+ * row of each member only, which holds all its friends as friendships are stored both ways.
+ *
+ * Components use a lock-free union-find. Every thread unions the ends of the edges of
+ * its ranges with compare-and-set, always hanging the higher numbered root under the
+ * lower one, which leaves no cycle and makes the root the lowest vertex of a component.
+ * Finds halve the path they walk, also with compare-and-set.
+ *
+ * Label propagation starts with every member in a community of its own. Each round,
+ * every member joins the community most of its friends are in, staying where it is when
+ * that is one of the most common, and breaking other ties by a hash that changes every
+ * round. Members are updated in place, so a round already sees the moves made earlier in
+ * it, on its own thread and possibly on others; the result of a parallel run therefore
+ * depends on timing. Rounds stop when no member moves or the round limit is reached.
+ *
+ * The graph must not change while a computation runs.
+ */
+public class GraphClusters {
+    /**
+     * Round limit of {@link #communities()}
+     */
+    public static final int DEFAULT_MAX_ROUNDS = 20;
+    /**
+     * Atomic access to the elements of the union-find parent array
+     */
+    private static final VarHandle INT_ARRAY = MethodHandles.arrayElementVarHandle(int[].class);
+    /**
+     * Ranges handed out per worker thread, so a slow range does not hold up the others
+     */
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final Graph graph;
+    private final int parallelism;
+    private int rounds;
+
+    /**
+     * Groups of the vertices of a graph, numbered from 0 in the order of their lowest vertex
+     */
+    public static final class Partition {
+        private final int[] ids;
+        private final int[] sizes;
+
+        Partition(int[] ids, int[] sizes) {
+            this.ids = ids;
+            this.sizes = sizes;
+        }
+
+        /**
+         * Group of a vertex
+         * @param vertex vertex number
+         * @return group number, -1 for a removed vertex
+         */
+        public int getId(int vertex) {
+            return ids[vertex];
+        }
+
+        /**
+         * Number of groups
+         * @return group count
+         */
+        public int getCount() {
+            return sizes.length;
+        }
+
+        /**
+         * Number of vertices of a group
+         * @param id group number
+         * @return vertex count
+         */
+        public int getSize(int id) {
+            return sizes[id];
+        }
+
+        /**
+         * Number of vertices of the biggest group
+         * @return vertex count, 0 without groups
+         */
+        public int getLargestSize() {
+            int largest = 0;
+            for (int size : sizes) {
+                largest = Math.max(largest, size);
+            }
+            return largest;
+        }
+
+        /**
+         * Copy of the group of every vertex
+         * @return group numbers indexed by vertex, -1 for removed vertices
+         */
+        public int[] getIds() {
+            return ids.clone();
+        }
+    }
+
+    /**
+     * Creates an engine for one graph
+     * @param graph graph to split
+     * @param parallelism number of worker threads
+     */
+    public GraphClusters(Graph graph, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.graph = graph;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Finds the connected components
+     * @return one group per component
+     */
+    public Partition components() {
+        int n = graph.size();
+        int[] parent = new int[n];
+        int[] bounds = ranges();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            forEach(pool, bounds.length - 1, range -> {
+                for (int v = bounds[range]; v < bounds[range + 1]; v++) {
+                    parent[v] = v;
+                }
+            });
+            forEach(pool, bounds.length - 1, range -> {
+                int[] row = new int[16];
+                for (int v = bounds[range]; v < bounds[range + 1]; v++) {
+                    int degree = graph.degree(v);
+                    if (degree > row.length)
+                        row = new int[Math.max(degree, row.length * 2)];
+                    graph.neighbors(v, row);
+                    for (int i = 0; i < degree; i++) {
+                        union(parent, v, row[i]);
+                    }
+                }
+            });
+            forEach(pool, bounds.length - 1, range -> {
+                for (int v = bounds[range]; v < bounds[range + 1]; v++) {
+                    parent[v] = find(parent, v);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        rounds = 1;
+        return partition(parent);
+    }
+
+    /**
+     * Finds communities by label propagation with the default round limit
+     * @return one group per community
+     */
+    public Partition communities() {
+        return communities(DEFAULT_MAX_ROUNDS, 0);
+    }
+
+    /**
+     * Finds communities by label propagation
+     * @param maxRounds largest number of rounds
+     * @param seed varies the tie breaking between runs
+     * @return one group per community, each inside one connected component
+     */
+    public Partition communities(int maxRounds, long seed) {
+        if (maxRounds < 1)
+            throw new IllegalArgumentException("Round limit must be positive: " + maxRounds);
+        int n = graph.size();
+        int[] labels = new int[n];
+        for (int v = 0; v < n; v++) {
+            labels[v] = v;
+        }
+        int[] bounds = ranges();
+        int[] moved = new int[bounds.length - 1];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            rounds = 0;
+            int changes;
+            do {
+                long salt = mix(seed + rounds);
+                forEach(pool, bounds.length - 1, range -> {
+                    int[] row = new int[16];
+                    int count = 0;
+                    for (int v = bounds[range]; v < bounds[range + 1]; v++) {
+                        int degree = graph.degree(v);
+                        if (degree == 0)
+                            continue;
+                        if (degree > row.length)
+                            row = new int[Math.max(degree, row.length * 2)];
+                        graph.neighbors(v, row);
+                        int label = commonestLabel(labels, v, row, degree, salt);
+                        if (label != labels[v]) {
+                            labels[v] = label;
+                            count++;
+                        }
+                    }
+                    moved[range] = count;
+                });
+                rounds++;
+                changes = 0;
+                for (int count : moved) {
+                    changes += count;
+                }
+            } while (changes > 0 && rounds < maxRounds);
+        } finally {
+            pool.shutdown();
+        }
+        return partition(labels);
+    }
+
+    /**
+     * Rounds run by the last computation, 1 for components
+     * @return round count
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Prints the components and communities of a graph read from text files or a snapshot
+     * @param args either a snapshot file or an index file and a friend file
+     * @throws IOException when a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 2) {
+            System.out.println("Usage: GraphClusters (<snapshot file> | <index file> <friend file>)");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        Graph g;
+        if (args.length == 1) {
+            g = Graph.readSnapshot(Paths.get(args[0]));
+        } else {
+            GraphLoader loader = new GraphLoader(threads);
+            g = loader.load(Paths.get(args[0]), Paths.get(args[1]));
+            if (!loader.countsMatch()) {
+                System.out.println("Specified count does not match the count of data in the file");
+            }
+        }
+        GraphClusters clusters = new GraphClusters(g, threads);
+        long start = System.nanoTime();
+        Partition components = clusters.components();
+        System.out.format("%,d components, largest %,d members, %,.1f ms%n", components.getCount(),
+                components.getLargestSize(), (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        Partition communities = clusters.communities();
+        System.out.format("%,d communities, largest %,d members, %d rounds, %,.1f ms%n", communities.getCount(),
+                communities.getLargestSize(), clusters.getRounds(), (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Label most of the neighbors carry: the current label of v if it is among the most
+     * common, otherwise the most common label with the lowest hash
+     */
+    private static int commonestLabel(int[] labels, int v, int[] row, int degree, long salt) {
+        int current = labels[v];
+        for (int i = 0; i < degree; i++) {
+            row[i] = labels[row[i]];
+        }
+        Arrays.sort(row, 0, degree);
+        int best = current;
+        int bestCount = 0;
+        long bestHash = 0;
+        int currentCount = 0;
+        for (int i = 0; i < degree; ) {
+            int label = row[i];
+            int end = i + 1;
+            while (end < degree && row[end] == label) {
+                end++;
+            }
+            int count = end - i;
+            if (label == current)
+                currentCount = count;
+            long hash = mix(label ^ salt);
+            if (count > bestCount || (count == bestCount && hash < bestHash)) {
+                best = label;
+                bestCount = count;
+                bestHash = hash;
+            }
+            i = end;
+        }
+        return currentCount == bestCount ? current : best;
+    }
+
+    /**
+     * Splits the vertices into ranges of about the same number of vertices plus edges
+     * @return range boundaries, from 0 to size()
+     */
+    private int[] ranges() {
+        int n = graph.size();
+        int count = (int) Math.max(1, Math.min(n, (long) parallelism * RANGES_PER_THREAD));
+        long perRange = (n + graph.edgeCount()) / count + 1;
+        int[] bounds = new int[count + 1];
+        int range = 1;
+        long work = 0;
+        for (int v = 0; v < n && range < count; v++) {
+            work += 1 + graph.degree(v);
+            if (work >= perRange * range)
+                bounds[range++] = v + 1;
+        }
+        while (range <= count) {
+            bounds[range++] = n;
+        }
+        return bounds;
+    }
+
+    /**
+     * Numbers the groups from 0 in the order of their lowest vertex
+     * @param labels label of every vertex, each label being a vertex number
+     */
+    private Partition partition(int[] labels) {
+        int n = labels.length;
+        int[] ids = new int[n];
+        int[] idOfLabel = new int[n];
+        Arrays.fill(idOfLabel, -1);
+        int[] sizes = new int[16];
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            if (graph.isRemoved(v)) {
+                ids[v] = -1;
+                continue;
+            }
+            int label = labels[v];
+            if (idOfLabel[label] < 0) {
+                if (count == sizes.length)
+                    sizes = Arrays.copyOf(sizes, count * 2);
+                idOfLabel[label] = count++;
+            }
+            ids[v] = idOfLabel[label];
+            sizes[ids[v]]++;
+        }
+        return new Partition(ids, Arrays.copyOf(sizes, count));
+    }
+
+    private static int find(int[] parent, int v) {
+        while (true) {
+            int p = (int) INT_ARRAY.getVolatile(parent, v);
+            if (p == v)
+                return v;
+            int grandparent = (int) INT_ARRAY.getVolatile(parent, p);
+            if (grandparent != p)
+                INT_ARRAY.compareAndSet(parent, v, p, grandparent);
+            v = grandparent;
+        }
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        while (true) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b)
+                return;
+            //Hang the higher root under the lower one; a failed set means a moved meanwhile
+            if (a < b) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            if (INT_ARRAY.compareAndSet(parent, a, a, b))
+                return;
+        }
+    }
+
+    private static long mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Runs the body once for every index below count on the pool and waits for all of them
+     */
+    private static void forEach(ForkJoinPool pool, int count, IntConsumer body) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            tasks.add(ForkJoinTask.adapt(() -> body.accept(index)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+}
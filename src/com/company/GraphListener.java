@@ -0,0 +1,67 @@
+package com.company;
+
+/**
+ * Receives the changes made to a {@link Graph}, so structures derived from it can be
+ * updated in place instead of being rebuilt. Listeners are called on the thread that made
+ * the change, after the change, and only when something actually changed; the one
+ * exception is {@link #vertexRemoving}, called before a vertex and its edges go.
+ */
+public interface GraphListener {
+
+    /**
+     * Called after an edge that was not there has been added
+     * @param source source vertex
+     * @param target target vertex
+     */
+    default void edgeAdded(int source, int target) {
+    }
+
+    /**
+     * Called after an existing edge has been removed
+     * @param source source vertex
+     * @param target target vertex
+     */
+    default void edgeRemoved(int source, int target) {
+    }
+
+    /**
+     * Called after the label of a vertex has been replaced
+     * @param vertex vertex number
+     * @param oldLabel previous label, may be null
+     * @param newLabel new label, may be null
+     */
+    default void labelChanged(int vertex, Object oldLabel, Object newLabel) {
+    }
+
+    /**
+     * Called after a vertex has been added, with its label already set
+     * @param vertex vertex number, possibly the number of a vertex removed earlier
+     */
+    default void vertexAdded(int vertex) {
+    }
+
+    /**
+     * Called before a vertex is removed, while it still has its edges and label. Every
+     * one of its edges is then removed and reported to edgeRemoved, and vertexRemoved
+     * ends the removal, so a listener can handle the whole removal here at once.
+     * @param vertex vertex number
+     */
+    default void vertexRemoving(int vertex) {
+    }
+
+    /**
+     * Called after a vertex has been removed. Its edges have been removed before, each
+     * reported to edgeRemoved, and its label has been set to null.
+     * @param vertex vertex number, which stays unused until it is reused or renumbered away
+     */
+    default void vertexRemoved(int vertex) {
+    }
+
+    /**
+     * Called after the graph has been compacted and its vertices renumbered
+     * @param mapping new number of every old vertex, or -1 for a removed vertex
+     * @param size new number of vertices
+     */
+    default void verticesRenumbered(int[] mapping, int size) {
+    }
+}
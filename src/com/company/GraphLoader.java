@@ -0,0 +1,539 @@
+package com.company;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Builds a {@link Graph} from an index file and a friend file.
+ * Both files start with the number of records that follow. The index file then holds
+ * "vertex name" pairs and the friend file "source target" pairs, one friendship per pair.
+ * An index file written from a graph whose external ids are no longer its member numbers,
+ * see {@link Graph#getExternalId}, ends with -1, the number of external ids given out and
+ * one "vertex id" pair per member; the members left out of it come back removed.
+ *
+ * The files are memory mapped and parsed in one pass with {@link MappedInput}.
+ * The counts in the headers only size the arrays the records are read into: the graph
+ * gets as many members as the highest member number read plus one, whatever the header
+ * says. The counts found in the files are kept so the caller can report a mismatch
+ * against the headers, as {@link Main#setUpGraph} does.
+ *
+ * With a parallelism above one the friend file is split into one newline aligned chunk
+ * per worker, parsed on a ForkJoinPool. Every worker counts the degrees of its chunk in
+ * an array of its own, so workers never write to the same counters, even of the members
+ * with the most friends; this takes an int per member and worker. The counts are summed
+ * per range of members into the row offsets, and every count becomes the place of its
+ * worker within the row, so each worker then fills its own slots of every row without
+ * atomic operations or locks. Parallel loading needs one "source target" pair per line;
+ * the serial loader accepts any whitespace.
+ *
+ * Dense networks, where a bit per pair of members takes less room than the compressed
+ * rows, are stored in a {@link BitMatrixAdjacency} instead. A loader asked to keep the
+ * edges off the heap copies the rows it read into an {@link OffHeapCsrAdjacency}, so
+ * the heap keeps none of them once loading is done.
+ *
+ * The names are then indexed for search by prefix and misspelled name with the same
+ * parallelism, see {@link NameIndex}.
+ *
+ * Every load is reported to {@link Metrics#loaded}, which commits a JFR event for it.
+ */
+public class GraphLoader {
+    /**
+     * Vertex ranges created per worker thread when rows are summed and sorted, so a range
+     * of hubs does not hold up the others
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+    /**
+     * Characters buffered before a written file is appended to
+     */
+    private static final int WRITE_BUFFER = 1 << 16;
+    /**
+     * System property that makes the loaders created without the choice, and snapshots
+     * at their first change, keep the edges off the heap: -Dgraph.offHeap=true
+     */
+    public static final String OFF_HEAP_PROPERTY = "graph.offHeap";
+
+    private final int parallelism;
+    private final boolean offHeap;
+    private int personCount;
+    private int personCheck;
+    private int friendCount;
+    private int friendCheck;
+    private int[] externalIds;
+    private int externalIdCount;
+
+    /**
+     * Creates a loader that reads the friend file on the calling thread and keeps the
+     * edges off the heap if {@link #OFF_HEAP_PROPERTY} is set
+     */
+    public GraphLoader() {
+        this(1);
+    }
+
+    /**
+     * Creates a loader that reads the friend file with the given number of threads
+     * and keeps the edges off the heap if {@link #OFF_HEAP_PROPERTY} is set
+     * @param parallelism number of worker threads, 1 for serial loading
+     */
+    public GraphLoader(int parallelism) {
+        this(parallelism, Boolean.getBoolean(OFF_HEAP_PROPERTY));
+    }
+
+    /**
+     * Creates a loader that reads the friend file with the given number of threads
+     * @param parallelism number of worker threads, 1 for serial loading
+     * @param offHeap true to keep the edges in an {@link OffHeapCsrAdjacency}
+     */
+    public GraphLoader(int parallelism, boolean offHeap) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Reads both files and builds the graph
+     * @param indexFile file that contains members list (Label and Vertex)
+     * @param friendsFile file that contains friend list (Edges)
+     * @return graph with one vertex per member and an edge in both directions per friendship
+     * @throws IOException when a file cannot be read
+     * @throws ArrayIndexOutOfBoundsException when a member number is negative or a friendship
+     *                                        names a member that is not in the index file
+     */
+    public Graph load(Path indexFile, Path friendsFile) throws IOException {
+        long start = System.nanoTime();
+        String[] names = readPeople(indexFile);
+        CsrAdjacency friends;
+        if (parallelism > 1) {
+            try {
+                friends = readFriendsParallel(friendsFile, names.length);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else {
+            friends = readFriends(friendsFile, names.length);
+        }
+        Graph answer = new Graph(offHeap ? OffHeapCsrAdjacency.copyOf(friends) : smallest(friends));
+
+        for (int i = 0; i < names.length; i++) {
+            answer.setLabel(i, names[i]);
+        }
+        if (externalIds != null) {
+            try {
+                answer.setExternalIds(Arrays.copyOf(externalIds, names.length), externalIdCount);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt external ids in " + indexFile, e);
+            }
+        }
+        answer.buildNameIndex(parallelism);
+        Metrics.loaded(indexFile + " " + friendsFile, start, names.length, friends.edgeCount());
+        return answer;
+    }
+
+    /**
+     * Writes a graph in the format {@link #load} reads. Removed members are left out with
+     * their numbers unused, and every friendship is written once, from the lower member
+     * number, so an edge in one direction only comes back in both; a member who is their
+     * own friend is written as one pair of the same number. External ids are written once
+     * they are no longer the member numbers, so they come back with the members. Both files are written
+     * next to their destinations first and only then moved over them, each in one move,
+     * so a crash leaves each file either old or new. A crash between the two moves still
+     * leaves a new file next to an old one; {@link MutationLog#checkpoint} records what it
+     * is replacing first so it can finish after such a crash.
+     * @param g graph to write
+     * @param indexFile file receiving the members list (Label and Vertex)
+     * @param friendsFile file receiving the friend list (Edges)
+     * @throws IOException when a file cannot be written
+     */
+    public static void write(Graph g, Path indexFile, Path friendsFile) throws IOException {
+        Path writtenIndex = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        Path writtenFriends = friendsFile.resolveSibling(friendsFile.getFileName() + ".tmp");
+        writeText(g, writtenIndex, writtenFriends);
+        Files.move(writtenIndex, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(writtenFriends, friendsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a graph in the format {@link #load} reads straight into the given files and
+     * forces them to disk. The text is streamed, so it may be larger than any array; the
+     * friendships are counted in a first pass over the rows for the header.
+     * @param g graph to write
+     * @param indexFile file receiving the members list (Label and Vertex), replaced if it exists
+     * @param friendsFile file receiving the friend list (Edges), replaced if it exists
+     * @throws IOException when a file cannot be written
+     */
+    public static void writeText(Graph g, Path indexFile, Path friendsFile) throws IOException {
+        int n = g.size();
+        try (FileChannel channel = create(indexFile);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), WRITE_BUFFER)) {
+            out.write(g.vertexCount() + "\n");
+            for (int v = 0; v < n; v++) {
+                if (!g.isRemoved(v))
+                    out.write(v + " " + g.getLabel(v) + "\n");
+            }
+            if (!GraphSnapshot.idsAreVertexNumbers(g)) {
+                out.write("-1 " + g.externalIdCount() + "\n");
+                for (int v = 0; v < n; v++) {
+                    if (!g.isRemoved(v))
+                        out.write(v + " " + g.getExternalId(v) + "\n");
+                }
+            }
+            out.flush();
+            channel.force(true);
+        }
+
+        int[] row = new int[16];
+        long friendships = 0;
+        for (int v = 0; v < n; v++) {
+            row = rowOf(g, v, row);
+            for (int i = 0, degree = g.degree(v); i < degree; i++) {
+                if (writtenFrom(g, v, row[i]))
+                    friendships++;
+            }
+        }
+        try (FileChannel channel = create(friendsFile);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), WRITE_BUFFER)) {
+            out.write(friendships + "\n");
+            for (int v = 0; v < n; v++) {
+                row = rowOf(g, v, row);
+                for (int i = 0, degree = g.degree(v); i < degree; i++) {
+                    int friend = row[i];
+                    if (writtenFrom(g, v, friend))
+                        out.write(Math.min(v, friend) + " " + Math.max(v, friend) + "\n");
+                }
+            }
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    private static FileChannel create(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads the friends of a vertex into a buffer, growing it when they do not fit
+     */
+    private static int[] rowOf(Graph g, int vertex, int[] row) {
+        int degree = g.degree(vertex);
+        if (degree > row.length)
+            row = new int[Math.max(degree, row.length * 2)];
+        g.neighbors(vertex, row);
+        return row;
+    }
+
+    /**
+     * Whether the edge from vertex to friend is the one a friendship is written from: the
+     * edge from the lower number or from a member to themselves, or the only edge when
+     * there is one direction
+     */
+    private static boolean writtenFrom(Graph g, int vertex, int friend) {
+        return friend >= vertex || !g.isEdge(friend, vertex);
+    }
+
+    /**
+     * Picks the smaller of the compressed rows and a bit matrix for the edges that were read
+     * @param friends edges read from the friend file
+     * @return friends, or a bit matrix copy of them when the network is dense enough for it to be smaller
+     */
+    private static Adjacency smallest(CsrAdjacency friends) {
+        long rowBytes = 4 * friends.edgeCount() + 12L * friends.size();
+        if (BitMatrixAdjacency.bytesFor(friends.size()) < rowBytes)
+            return BitMatrixAdjacency.copyOf(friends);
+        return friends;
+    }
+
+    /**
+     * Reads the friend file on the calling thread
+     * @param friendsFile file that contains friend list (Edges)
+     * @param n number of members
+     * @return packed edges in both directions
+     * @throws IOException when the file cannot be read
+     */
+    private CsrAdjacency readFriends(Path friendsFile, int n) throws IOException {
+        CsrAdjacency.Builder friends;
+
+        try (MappedInput friendReader = new MappedInput(friendsFile)) {
+            friendCount = friendReader.nextInt();
+            friendCheck = 0;
+            friends = new CsrAdjacency.Builder(n, 2L * Math.max(0, friendCount));
+            while (friendReader.hasNext()) {
+                friendCheck++;
+                int source = friendReader.nextInt();
+                int target = friendReader.nextInt();
+                friends.addEdge(source, target);
+                friends.addEdge(target, source);
+            }
+        }
+
+        return friends.build();
+    }
+
+    /**
+     * Reads the friend file in newline aligned chunks on a ForkJoinPool
+     * @param friendsFile file that contains friend list (Edges), one pair per line
+     * @param n number of members
+     * @return packed edges in both directions
+     * @throws IOException when the file cannot be read
+     */
+    private CsrAdjacency readFriendsParallel(Path friendsFile, int n) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(friendsFile, StandardOpenOption.READ)) {
+            MappedInput header = new MappedInput(channel, 0, -1);
+            friendCount = header.nextInt();
+            long[] bounds = splitLines(channel, header.position(), parallelism);
+            int workers = bounds.length - 1;
+            int ranges = Math.min(n, parallelism * CHUNKS_PER_THREAD);
+
+            //Parsing a chunk per worker, each counting the degrees it sees in its own array
+            int[][] pairs = new int[workers][];
+            int[] pairCounts = new int[workers];
+            int[][] counts = new int[workers][];
+            forEach(pool, workers, worker -> {
+                try {
+                    MappedInput reader = new MappedInput(channel, bounds[worker], bounds[worker + 1]);
+                    int[] local = new int[(int) Math.max(16, (bounds[worker + 1] - bounds[worker]) / 4)];
+                    int[] degrees = new int[n];
+                    int count = 0;
+                    while (reader.hasNext()) {
+                        int source = reader.nextInt();
+                        int target = reader.nextInt();
+                        if (source < 0 || source >= n)
+                            throw new ArrayIndexOutOfBoundsException(source);
+                        if (target < 0 || target >= n)
+                            throw new ArrayIndexOutOfBoundsException(target);
+                        if (count + 2 > local.length)
+                            local = Arrays.copyOf(local, local.length * 2);
+                        local[count++] = source;
+                        local[count++] = target;
+                        degrees[source]++;
+                        degrees[target]++;
+                    }
+                    pairs[worker] = local;
+                    pairCounts[worker] = count;
+                    counts[worker] = degrees;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            friendCheck = 0;
+            for (int count : pairCounts) {
+                friendCheck += count / 2;
+            }
+
+            //Summing the counts of the workers into the degrees, each count becoming the
+            //place of its worker within the row
+            int[] offsets = new int[n + 1];
+            forEach(pool, ranges, range -> {
+                for (int v = (int) ((long) n * range / ranges); v < (long) n * (range + 1) / ranges; v++) {
+                    int degree = 0;
+                    for (int[] degrees : counts) {
+                        int count = degrees[v];
+                        degrees[v] = degree;
+                        degree += count;
+                    }
+                    offsets[v + 1] = degree;
+                }
+            });
+
+            //Prefix sum of the degrees gives the start of every row
+            Arrays.parallelPrefix(offsets, Math::addExact);
+            int[] targets = new int[offsets[n]];
+
+            //Every worker fills its own part of every row, so no slot is claimed twice
+            forEach(pool, workers, worker -> {
+                int[] cursors = counts[worker];
+                for (int v = 0; v < n; v++) {
+                    cursors[v] += offsets[v];
+                }
+                int[] local = pairs[worker];
+                for (int i = 0; i < pairCounts[worker]; i += 2) {
+                    int source = local[i];
+                    int target = local[i + 1];
+                    targets[cursors[source]++] = target;
+                    targets[cursors[target]++] = source;
+                }
+                pairs[worker] = null;
+                counts[worker] = null;
+            });
+
+            //Sorting every row and squeezing out repeated friendships
+            int[] lengths = new int[n];
+            forEach(pool, ranges, range -> {
+                for (int v = (int) ((long) n * range / ranges); v < (long) n * (range + 1) / ranges; v++) {
+                    int start = offsets[v];
+                    int end = offsets[v + 1];
+                    Arrays.sort(targets, start, end);
+                    int write = start;
+                    for (int i = start; i < end; i++) {
+                        if (write == start || targets[write - 1] != targets[i])
+                            targets[write++] = targets[i];
+                    }
+                    lengths[v] = write - start;
+                }
+            });
+            return new CsrAdjacency(offsets, lengths, targets);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Splits a region of a file into chunks that each start at the beginning of a line
+     * @param channel file to split
+     * @param start first byte of the region
+     * @param chunks number of chunks wanted
+     * @return chunk boundaries, from start to the end of the file
+     * @throws IOException when the file cannot be read
+     */
+    private static long[] splitLines(FileChannel channel, long start, int chunks) throws IOException {
+        long size = channel.size();
+        long[] bounds = new long[chunks + 1];
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        bounds[0] = start;
+        for (int i = 1; i < chunks; i++) {
+            long position = Math.max(bounds[i - 1], start + (size - start) * i / chunks);
+            //Moving forward to the byte after the next newline
+            search:
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0)
+                    break;
+                for (int j = 0; j < read; j++) {
+                    if (buffer.get(j) == '\n') {
+                        position += j + 1;
+                        break search;
+                    }
+                }
+                position += read;
+            }
+            bounds[i] = Math.min(position, size);
+        }
+        bounds[chunks] = size;
+        return bounds;
+    }
+
+    /**
+     * Runs the body once for every index below count on the pool and waits for all of them
+     * @param pool pool to run on
+     * @param count number of tasks
+     * @param body task body, given the task index
+     */
+    private static void forEach(ForkJoinPool pool, int count, IntConsumer body) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            tasks.add(ForkJoinTask.adapt(() -> body.accept(index)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+
+    /**
+     * Reads the index file into an array of labels indexed by vertex. The declared count
+     * presizes the array, which doubles when a higher member number turns up.
+     * @param indexFile file that contains members list (Label and Vertex)
+     * @return labels by vertex number, as long as the highest member number plus one
+     * @throws IOException when the file cannot be read
+     */
+    private String[] readPeople(Path indexFile) throws IOException {
+        try (MappedInput peopleReader = new MappedInput(indexFile)) {
+            personCount = peopleReader.nextInt();
+            personCheck = 0;
+            externalIds = null;
+            String[] names = new String[Math.max(0, personCount)];
+            int members = 0;
+            while (peopleReader.hasNext()) {
+                int vertex = peopleReader.nextInt();
+                if (vertex == -1) {
+                    readExternalIds(peopleReader, members);
+                    break;
+                }
+                personCheck++;
+                if (vertex < 0)
+                    throw new ArrayIndexOutOfBoundsException(vertex);
+                if (vertex >= names.length)
+                    names = Arrays.copyOf(names, Math.max(vertex + 1, names.length * 2));
+                names[vertex] = peopleReader.next();
+                members = Math.max(members, vertex + 1);
+            }
+            return members == names.length ? names : Arrays.copyOf(names, members);
+        }
+    }
+
+    /**
+     * Reads the external ids section that ends an index file, after its -1
+     * @param peopleReader index file positioned after the -1
+     * @param members number of members read
+     * @throws IOException when the file cannot be read
+     * @throws ArrayIndexOutOfBoundsException when an id is given for a member that is not in the file
+     */
+    private void readExternalIds(MappedInput peopleReader, int members) throws IOException {
+        externalIdCount = peopleReader.nextInt();
+        externalIds = new int[members];
+        Arrays.fill(externalIds, -1);
+        while (peopleReader.hasNext()) {
+            int vertex = peopleReader.nextInt();
+            int id = peopleReader.nextInt();
+            if (vertex < 0 || vertex >= members)
+                throw new ArrayIndexOutOfBoundsException(vertex);
+            externalIds[vertex] = id;
+        }
+    }
+
+    /**
+     * Checks whether the files held as many records as their headers declared
+     * @return true if both counts match
+     */
+    public boolean countsMatch() {
+        return personCheck == personCount && friendCheck == friendCount;
+    }
+
+    /**
+     * Number of members declared in the index file header
+     * @return declared member count
+     */
+    public int getPersonCount() {
+        return personCount;
+    }
+
+    /**
+     * Number of member records read from the index file
+     * @return member record count
+     */
+    public int getPersonCheck() {
+        return personCheck;
+    }
+
+    /**
+     * Number of friendships declared in the friend file header
+     * @return declared friendship count
+     */
+    public int getFriendCount() {
+        return friendCount;
+    }
+
+    /**
+     * Number of friendship records read from the friend file
+     * @return friendship record count
+     */
+    public int getFriendCheck() {
+        return friendCheck;
+    }
+}
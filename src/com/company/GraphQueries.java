@@ -0,0 +1,260 @@
+package com.company;
+
+import java.util.List;
+
+/**
+ * The questions the menu of {@link Main} asks, without the console input and output,
+ * so they can be called from benchmarks and other front ends.
+ *
+ * Vertex numbers come from {@link #vertexOf(String)}, which returns -1 for an unknown name.
+ * Like {@link Graph}, every query throws ArrayIndexOutOfBoundsException for a vertex
+ * number that is not valid, including -1.
+ *
+ * The friends of friends expansion, the path finder, the recommender and the popularity
+ * ranking are created on first use and reused. A GraphQueries object is not thread safe.
+ *
+ * Friends and friends of friends can be answered through a {@link QueryCache}, which then
+ * returns the same array to every caller asking about the same member; such arrays
+ * must not be changed.
+ *
+ * Every query is timed by {@link Metrics} with the vertices and edges it read; an answer
+ * taken from the cache read none.
+ */
+public class GraphQueries {
+    private Graph graph;
+    private TwoHopExpander expander;
+    private PathFinder pathFinder;
+    private Recommender recommender;
+    private PopularityRanking ranking;
+    private final QueryCache cache;
+
+    /**
+     * Creates the queries for a graph
+     * @param graph graph to query
+     */
+    public GraphQueries(Graph graph) {
+        this(graph, null);
+    }
+
+    /**
+     * Creates the queries for a graph, answering friends and friends of friends through a cache
+     * @param graph graph to query
+     * @param cache cache following the same graph, or null for none
+     */
+    public GraphQueries(Graph graph, QueryCache cache) {
+        if (cache != null && cache.getGraph() != graph)
+            throw new IllegalArgumentException("Cache follows another graph");
+        this.graph = graph;
+        this.cache = cache;
+    }
+
+    /**
+     * Cache the friends and friends of friends are answered through
+     * @return the cache, or null
+     */
+    public QueryCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Graph being queried
+     * @return the graph
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Queries another graph from now on, such as a newer version of a
+     * {@link ConcurrentGraph}. The friends of friends expansion, the path finder and the
+     * recommender keep the arrays they have grown, so moving to a new version allocates
+     * nothing per member; the popularity ranking is dropped.
+     * @param graph graph to query
+     * @throws IllegalStateException when the queries answer through a cache, which follows one graph
+     */
+    public void setGraph(Graph graph) {
+        if (cache != null)
+            throw new IllegalStateException("Cache follows another graph");
+        close();
+        this.graph = graph;
+        if (expander != null)
+            expander.setGraph(graph);
+        if (pathFinder != null)
+            pathFinder.setGraph(graph);
+        if (recommender != null)
+            recommender.setGraph(graph);
+    }
+
+    /**
+     * Looks up a member by name
+     * @param name member name, already formatted by {@link Main#reformatString(String)}
+     * @return vertex number of the member, or -1 if there is none
+     */
+    public int vertexOf(String name) {
+        return graph.getVertexIndex(name);
+    }
+
+    /**
+     * Members whose name starts with a prefix, for completing a name being typed
+     * @param prefix beginning of a name, formatted here like the names
+     * @param count largest number of members
+     * @return vertex numbers of the members in the order of their names
+     */
+    public int[] namesStartingWith(String prefix, int count) {
+        long start = Metrics.start();
+        int[] answer = graph.nameIndex().startingWith(prefix, count);
+        Metrics.record(Metrics.Operation.NAME_PREFIX, start, 0, 0);
+        return answer;
+    }
+
+    /**
+     * Members whose name is at most {@link NameIndex#DEFAULT_MAX_EDITS} edits away from a
+     * name, for a name that was mistyped
+     * @param name name as typed, formatted here like the names
+     * @param count largest number of members
+     * @return vertex numbers of the members, closest first
+     */
+    public int[] similarNames(String name, int count) {
+        long start = Metrics.start();
+        int[] answer = graph.nameIndex().closestTo(name, NameIndex.DEFAULT_MAX_EDITS, count);
+        Metrics.record(Metrics.Operation.NAME_FUZZY, start, 0, 0);
+        return answer;
+    }
+
+    /**
+     * All friends of a member
+     * @param vertex member vertex number
+     * @return vertex numbers of the friends in ascending order
+     */
+    public int[] friends(int vertex) {
+        long start = Metrics.start();
+        int[] friends = cache == null ? null : cache.get(QueryCache.FRIENDS, vertex);
+        if (friends != null) {
+            Metrics.record(Metrics.Operation.FRIENDS, start, 0, 0);
+            return friends;
+        }
+        friends = graph.neighbors(vertex);
+        if (cache != null)
+            cache.put(QueryCache.FRIENDS, vertex, friends);
+        Metrics.record(Metrics.Operation.FRIENDS, start, 1, friends.length);
+        return friends;
+    }
+
+    /**
+     * All friends and friends of the friends of a member, without the member
+     * @param vertex member vertex number
+     * @return vertex numbers in ascending order
+     */
+    public int[] friendsOfFriends(int vertex) {
+        long start = Metrics.start();
+        int[] answer = cache == null ? null : cache.get(QueryCache.FRIENDS_OF_FRIENDS, vertex);
+        if (answer != null) {
+            Metrics.record(Metrics.Operation.FRIENDS_OF_FRIENDS, start, 0, 0);
+            return answer;
+        }
+        if (expander == null)
+            expander = graph.twoHopExpander();
+        expander.expand(vertex);
+        answer = expander.toArray();
+        if (cache != null)
+            cache.put(QueryCache.FRIENDS_OF_FRIENDS, vertex, answer);
+        Metrics.record(Metrics.Operation.FRIENDS_OF_FRIENDS, start, expander.getVerticesRead(), expander.getEdgesRead());
+        return answer;
+    }
+
+    /**
+     * Friends that two members have in common
+     * @param first first member vertex number
+     * @param second second member vertex number
+     * @return vertex numbers of the common friends in ascending order
+     */
+    public int[] commonFriends(int first, int second) {
+        long start = Metrics.start();
+        int[] answer = graph.commonNeighbors(first, second);
+        Metrics.record(Metrics.Operation.COMMON_FRIENDS, start, 2, (long) graph.degree(first) + graph.degree(second));
+        return answer;
+    }
+
+    /**
+     * Members on a shortest chain of friendships between two members
+     * @param first first member vertex number
+     * @param second second member vertex number
+     * @param maxHops largest number of friendships on the chain
+     * @return vertex numbers from first to second, so the degrees of separation are its
+     *         length minus one, or an empty array when there is no chain within maxHops
+     */
+    public int[] path(int first, int second, int maxHops) {
+        if (pathFinder == null)
+            pathFinder = graph.pathFinder();
+        long start = Metrics.start();
+        pathFinder.search(first, second, maxHops);
+        int[] answer = pathFinder.path();
+        Metrics.record(Metrics.Operation.PATH, start, pathFinder.getVerticesRead(), pathFinder.getEdgesRead());
+        return answer;
+    }
+
+    /**
+     * People a member may know: friends of friends who are not friends yet, scored by
+     * {@link Recommender#DEFAULT_MEASURE}
+     * @param vertex member vertex number
+     * @param count largest number of suggestions
+     * @return vertex numbers of the suggested members, best first
+     */
+    public int[] suggestions(int vertex, int count) {
+        if (recommender == null)
+            recommender = graph.recommender(Recommender.DEFAULT_MEASURE);
+        long start = Metrics.start();
+        recommender.recommend(vertex, count);
+        int[] answer = recommender.toArray();
+        Metrics.record(Metrics.Operation.SUGGESTIONS, start, recommender.getVerticesRead(), recommender.getEdgesRead());
+        return answer;
+    }
+
+    /**
+     * Removes a member and every friendship of the member, in both directions.
+     * The member is no longer found by name or ranked.
+     * @param vertex member vertex number
+     * @return number of friendships removed
+     */
+    public int removeMember(int vertex) {
+        long start = Metrics.start();
+        int friends = graph.degree(vertex);
+        graph.removeVertex(vertex);
+        Metrics.record(Metrics.Operation.REMOVE_MEMBER, start, 1, friends);
+        return friends;
+    }
+
+    /**
+     * A page of the members sorted by popularity, then by names
+     * @param from rank of the first member, 0 being the most popular
+     * @param count largest number of members to return
+     * @return members of the page in rank order
+     */
+    public List<People> popularity(int from, int count) {
+        long start = Metrics.start();
+        List<People> page = ranking().top(from, count);
+        Metrics.record(Metrics.Operation.POPULARITY, start, 0, 0);
+        return page;
+    }
+
+    /**
+     * Ranking used by {@link #popularity(int, int)}, created on first use and then
+     * kept up to date with the changes to the graph
+     * @return the ranking
+     */
+    public PopularityRanking ranking() {
+        if (ranking == null)
+            ranking = new PopularityRanking(graph);
+        return ranking;
+    }
+
+    /**
+     * Stops the ranking from following the graph; call when the queries are no longer used
+     */
+    public void close() {
+        if (ranking != null) {
+            ranking.detach();
+            ranking = null;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.company;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of a {@link Graph}, so a restart can skip parsing the text files.
+ *
+ * Layout, all values big endian and every section starting at a multiple of 8:
+ * <pre>
+ *   int    magic "SNGR"
+ *   int    format version
+ *   int    vertex count n
+ *   int    flags: EXTERNAL_IDS when the external ids section follows the targets, else 0
+ *   long   edge count m (each friendship counts once per direction)
+ *   long   label byte count b
+ *   int[n] label byte lengths, -1 for a null label
+ *   byte[b] UTF-8 label bytes, padded to a multiple of 8
+ *   long[n+1] index of the first target of every row, the last one being m
+ *   int[m] sorted targets of all rows, padded to a multiple of 8
+ *   int[n] external id of every vertex, -1 for a removed one, padded to a multiple of 8
+ *   long   number of external ids given out
+ *   long   CRC32C of everything before it
+ * </pre>
+ * The external ids section is only written once the ids of the graph are no longer its
+ * vertex numbers, see {@link Graph#getExternalId}, so it survives being compacted.
+ * Opening maps the file and reads the rows in place through {@link MappedCsrAdjacency};
+ * only the labels are decoded. Labels are written with toString() and read back as Strings.
+ */
+public class GraphSnapshot {
+    /**
+     * File name extension used for snapshots
+     */
+    public static final String EXTENSION = ".snapshot";
+    /**
+     * "SNGR" in ASCII
+     */
+    static final int MAGIC = 0x534E4752;
+    /**
+     * Format version written by this class
+     */
+    static final int VERSION = 1;
+    /**
+     * Flag set when the snapshot holds the external ids of the vertices
+     */
+    static final int EXTERNAL_IDS = 1;
+    private static final int HEADER_BYTES = 32;
+
+    /**
+     * Writes a snapshot of the graph
+     * @param g graph to save
+     * @param file file to create or replace
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(Graph g, Path file) throws IOException {
+        int n = g.size();
+        byte[][] labels = new byte[n][];
+        long labelBytes = 0;
+        long edges = g.edgeCount();
+        boolean externalIds = !idsAreVertexNumbers(g);
+        for (int v = 0; v < n; v++) {
+            Object label = g.getLabel(v);
+            if (label != null) {
+                labels[v] = label.toString().getBytes(StandardCharsets.UTF_8);
+                labelBytes += labels[v].length;
+            }
+        }
+
+        CRC32C crc = new CRC32C();
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(stream, 1 << 16), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(externalIds ? EXTERNAL_IDS : 0);
+            out.writeLong(edges);
+            out.writeLong(labelBytes);
+            for (byte[] label : labels) {
+                out.writeInt(label == null ? -1 : label.length);
+            }
+            for (byte[] label : labels) {
+                if (label != null)
+                    out.write(label);
+            }
+            pad(out, 4L * n + labelBytes);
+
+            long start = 0;
+            for (int v = 0; v < n; v++) {
+                out.writeLong(start);
+                start += g.degree(v);
+            }
+            out.writeLong(start);
+            for (int v = 0; v < n; v++) {
+                for (int target : g.neighbors(v)) {
+                    out.writeInt(target);
+                }
+            }
+            pad(out, 4L * edges);
+            if (externalIds) {
+                for (int v = 0; v < n; v++) {
+                    out.writeInt(g.getExternalId(v));
+                }
+                pad(out, 4L * n);
+                out.writeLong(g.externalIdCount());
+            }
+            out.flush();
+            new DataOutputStream(stream).writeLong(crc.getValue());
+        }
+    }
+
+    /**
+     * Opens a snapshot without copying its rows to the heap
+     * @param file snapshot file
+     * @return graph whose edges are read from the mapped file until it is first changed
+     * @throws IOException when the file cannot be read or is not a snapshot of this version
+     */
+    public static Graph read(Path file) throws IOException {
+        long start = System.nanoTime();
+        MappedPages pages;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            pages = new MappedPages(channel);
+        }
+        if (pages.size() < HEADER_BYTES + 8 || pages.getInt(0) != MAGIC)
+            throw new IOException("Not a graph snapshot: " + file);
+        if (pages.getInt(4) != VERSION)
+            throw new IOException("Unsupported snapshot version " + pages.getInt(4) + ": " + file);
+        int n = pages.getInt(8);
+        boolean externalIds = (pages.getInt(12) & EXTERNAL_IDS) != 0;
+        long edges = pages.getLong(16);
+        long labelBytes = pages.getLong(24);
+        long labelsStart = HEADER_BYTES + 4L * n;
+        long offsetsStart = align(labelsStart + labelBytes);
+        long targetsStart = offsetsStart + 8L * (n + 1);
+        long idsStart = align(targetsStart + 4L * edges);
+        long end = externalIds ? align(idsStart + 4L * n) + 8 : idsStart;
+        if (n < 0 || edges < 0 || labelBytes < 0 || end + 8 != pages.size())
+            throw new IOException("Truncated or corrupt graph snapshot: " + file);
+
+        Graph answer = new Graph(new MappedCsrAdjacency(pages, n, offsetsStart, targetsStart));
+        byte[] buffer = new byte[64];
+        long position = labelsStart;
+        for (int v = 0; v < n; v++) {
+            int length = pages.getInt(HEADER_BYTES + 4L * v);
+            if (length >= 0) {
+                if (length > buffer.length)
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                pages.getBytes(position, buffer, 0, length);
+                answer.setLabel(v, new String(buffer, 0, length, StandardCharsets.UTF_8));
+                position += length;
+            }
+        }
+        if (externalIds) {
+            int[] ids = new int[n];
+            for (int v = 0; v < n; v++) {
+                ids[v] = pages.getInt(idsStart + 4L * v);
+            }
+            long count = pages.getLong(end - 8);
+            if (count > Integer.MAX_VALUE)
+                throw new IOException("Truncated or corrupt graph snapshot: " + file);
+            try {
+                answer.setExternalIds(ids, (int) count);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt external ids in graph snapshot: " + file, e);
+            }
+        }
+        Metrics.loaded(file.toString(), start, n, edges);
+        return answer;
+    }
+
+    /**
+     * Checks the stored checksum against the contents of a snapshot
+     * @param file snapshot file
+     * @return true if the checksum matches
+     * @throws IOException when the file cannot be read
+     */
+    public static boolean verify(Path file) throws IOException {
+        MappedPages pages;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            pages = new MappedPages(channel);
+        }
+        if (pages.size() < 8)
+            return false;
+        CRC32C crc = new CRC32C();
+        pages.update(crc, 0, pages.size() - 8);
+        return crc.getValue() == pages.getLong(pages.size() - 8);
+    }
+
+    /**
+     * Converts a pair of text files into a snapshot
+     * @param args index file, friend file and snapshot file to write
+     * @throws IOException when a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Usage: GraphSnapshot <index file> <friend file> <snapshot file>");
+            return;
+        }
+        GraphLoader loader = new GraphLoader(Runtime.getRuntime().availableProcessors());
+        Graph g = loader.load(Paths.get(args[0]), Paths.get(args[1]));
+        if (!loader.countsMatch()) {
+            System.out.println("Specified count does not match the count of data in the file");
+        }
+        write(g, Paths.get(args[2]));
+    }
+
+    /**
+     * Whether every vertex still has its number as external id, so none need saving
+     * @param g graph to save
+     * @return true when the ids are the vertex numbers and no vertex was removed
+     */
+    static boolean idsAreVertexNumbers(Graph g) {
+        int n = g.size();
+        if (g.externalIdCount() != n)
+            return false;
+        for (int v = 0; v < n; v++) {
+            if (g.getExternalId(v) != v)
+                return false;
+        }
+        return true;
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static void pad(DataOutputStream out, long written) throws IOException {
+        for (long i = written; i < align(written); i++) {
+            out.writeByte(0);
+        }
+    }
+}
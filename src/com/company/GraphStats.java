@@ -0,0 +1,116 @@
+package com.company;
+
+import java.io.PrintStream;
+
+/**
+ * Vertex and edge counts and degree histogram of a {@link Graph} at one moment, taken
+ * by {@link Graph#stats()} from the counters the graph keeps up to date, so no vertex
+ * or edge is visited to build it. Removed vertices are not counted.
+ */
+public class GraphStats {
+    private final int vertices;
+    private final long edges;
+    private final int[] histogram;
+
+    /**
+     * Creates statistics from counts already taken
+     * @param vertices number of vertices
+     * @param edges number of edges, each friendship counting once per direction
+     * @param histogram histogram[d] is the number of vertices with d edges, as long as the
+     *                  highest degree plus one; kept without copying
+     */
+    public GraphStats(int vertices, long edges, int[] histogram) {
+        this.vertices = vertices;
+        this.edges = edges;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Number of vertices
+     * @return vertex count
+     */
+    public int getVertexCount() {
+        return vertices;
+    }
+
+    /**
+     * Number of edges, each friendship counting once per direction
+     * @return edge count
+     */
+    public long getEdgeCount() {
+        return edges;
+    }
+
+    /**
+     * Highest number of edges from one vertex
+     * @return max degree, 0 without edges
+     */
+    public int getMaxDegree() {
+        return histogram.length - 1;
+    }
+
+    /**
+     * Mean number of edges per vertex
+     * @return average degree, 0 without vertices
+     */
+    public double getAverageDegree() {
+        return vertices == 0 ? 0 : (double) edges / vertices;
+    }
+
+    /**
+     * Number of vertices with a given number of edges
+     * @param degree number of edges
+     * @return vertex count, 0 for a degree nobody has
+     */
+    public int getDegreeCount(int degree) {
+        return degree >= 0 && degree < histogram.length ? histogram[degree] : 0;
+    }
+
+    /**
+     * Lowest degree that at least the given fraction of the vertices do not exceed
+     * @param fraction fraction of the vertices, between 0 and 1
+     * @return degree percentile, 0 without vertices
+     */
+    public int getDegreePercentile(double fraction) {
+        if (fraction < 0 || fraction > 1)
+            throw new IllegalArgumentException("Fraction must be between 0 and 1: " + fraction);
+        long needed = (long) Math.ceil(fraction * vertices);
+        long seen = 0;
+        for (int d = 0; d < histogram.length; d++) {
+            seen += histogram[d];
+            if (seen >= needed && seen > 0)
+                return d;
+        }
+        return 0;
+    }
+
+    /**
+     * Copy of the degree histogram
+     * @return histogram[d] is the number of vertices with d edges, up to the max degree
+     */
+    public int[] getHistogram() {
+        return histogram.clone();
+    }
+
+    /**
+     * Prints the counts, the degree percentiles and the nonzero histogram buckets,
+     * grouped in powers of two
+     * @param out stream to print to
+     */
+    public void print(PrintStream out) {
+        out.format("Members: %,d%nFriendships: %,d%nAverage friends: %.2f%nMost friends: %,d%n",
+                vertices, edges / 2, getAverageDegree(), getMaxDegree());
+        out.format("Median friends: %,d, 90th percentile: %,d, 99th percentile: %,d%n",
+                getDegreePercentile(0.5), getDegreePercentile(0.9), getDegreePercentile(0.99));
+        out.format("%-16s %,12d%n", "0 friends", histogram[0]);
+        for (int low = 1; low < histogram.length; low *= 2) {
+            int high = Math.min(histogram.length, low * 2);
+            long count = 0;
+            for (int d = low; d < high; d++) {
+                count += histogram[d];
+            }
+            if (count > 0)
+                out.format("%-16s %,12d%n", high - low == 1 ? low + " friends" : low + "-" + (high - 1) + " friends", count);
+        }
+    }
+}
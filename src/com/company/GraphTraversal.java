@@ -0,0 +1,212 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * Iterative depth-first and breadth-first search over a {@link Graph}.
+ *
+ * Both searches keep their state in int arrays instead of the call stack, so a connected
+ * component of any size can be traversed without a StackOverflowError. Every reached
+ * vertex is handed to a {@link VertexVisitor}, which may stop the search early, and the
+ * search can be limited to a number of hops from the start. After a search
+ * {@link #depth(int)} gives the hop count at which each vertex was reached.
+ *
+ * The buffers are reused between searches. A traversal is not thread safe.
+ */
+public class GraphTraversal {
+    /**
+     * Depth limit that never stops a search
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final Graph graph;
+    private int[] stamps;
+    private int[] depths;
+    private int epoch;
+    /**
+     * Breadth-first queue, or depth-first stack of vertices on the current path
+     */
+    private int[] vertices = new int[16];
+    /**
+     * Depth-first only: for every vertex on the path, where its neighbor list starts in rows
+     */
+    private int[] rowStarts = new int[16];
+    /**
+     * Depth-first only: for every vertex on the path, the next neighbor to look at in rows
+     */
+    private int[] cursors = new int[16];
+    /**
+     * Depth-first only: neighbor lists of every vertex on the path, one after the other
+     */
+    private int[] rows = new int[16];
+    /**
+     * Neighbor list of the vertex being expanded
+     */
+    private int[] row = new int[16];
+
+    /**
+     * Creates a traversal for the graph
+     * @param graph graph to traverse
+     */
+    public GraphTraversal(Graph graph) {
+        this.graph = graph;
+        this.stamps = new int[graph.size()];
+        this.depths = new int[graph.size()];
+    }
+
+    /**
+     * Depth-first search visiting vertices in the same order as a recursive search
+     * that follows neighbors in ascending order
+     * @param start vertex to start at
+     * @param maxDepth largest depth to visit, {@link #UNLIMITED} for no limit
+     * @param visitor receives every vertex reached with its depth in the search tree
+     * @return number of vertices visited
+     * @throws ArrayIndexOutOfBoundsException when start is not a valid vertex number
+     */
+    public int depthFirst(int start, int maxDepth, VertexVisitor visitor) {
+        checkVertex(start);
+        nextEpoch();
+        stamps[start] = epoch;
+        depths[start] = 0;
+        int visited = 1;
+        if (!visitor.visit(start, 0))
+            return visited;
+        int top = 0;
+        int rowsUsed = enter(start, 0, 0);
+
+        while (top >= 0) {
+            if (cursors[top] == rowsUsed) {
+                //Every neighbor of the vertex on top is done, backtracking
+                rowsUsed = rowStarts[top];
+                top--;
+                continue;
+            }
+            int next = rows[cursors[top]++];
+            if (stamps[next] == epoch)
+                continue;
+            stamps[next] = epoch;
+            depths[next] = depths[vertices[top]] + 1;
+            visited++;
+            if (!visitor.visit(next, depths[next]))
+                break;
+            if (depths[next] < maxDepth) {
+                top++;
+                rowsUsed = enter(next, top, rowsUsed);
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Breadth-first search visiting vertices in order of their hop distance from the start
+     * @param start vertex to start at
+     * @param maxDepth largest distance to visit, {@link #UNLIMITED} for no limit
+     * @param visitor receives every vertex reached with its distance from the start
+     * @return number of vertices visited
+     * @throws ArrayIndexOutOfBoundsException when start is not a valid vertex number
+     */
+    public int breadthFirst(int start, int maxDepth, VertexVisitor visitor) {
+        checkVertex(start);
+        nextEpoch();
+        int head = 0;
+        int tail = 0;
+        stamps[start] = epoch;
+        depths[start] = 0;
+        vertices[tail++] = start;
+        if (!visitor.visit(start, 0))
+            return tail;
+
+        while (head < tail) {
+            int vertex = vertices[head++];
+            if (depths[vertex] >= maxDepth)
+                continue;
+            int degree = graph.degree(vertex);
+            if (degree > row.length)
+                row = new int[Math.max(degree, row.length * 2)];
+            int count = graph.neighbors(vertex, row);
+            for (int i = 0; i < count; i++) {
+                int next = row[i];
+                if (stamps[next] != epoch) {
+                    stamps[next] = epoch;
+                    depths[next] = depths[vertex] + 1;
+                    if (tail == vertices.length)
+                        vertices = Arrays.copyOf(vertices, tail * 2);
+                    vertices[tail++] = next;
+                    if (!visitor.visit(next, depths[next]))
+                        return tail;
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Hop count at which the last search reached a vertex
+     * @param vertex vertex number
+     * @return depth of the vertex, or -1 if the last search did not reach it
+     */
+    public int depth(int vertex) {
+        return stamps[vertex] == epoch ? depths[vertex] : -1;
+    }
+
+    /**
+     * Checks whether the last search reached a vertex
+     * @param vertex vertex number
+     * @return true if the vertex was visited
+     */
+    public boolean isVisited(int vertex) {
+        return stamps[vertex] == epoch;
+    }
+
+    /**
+     * Puts a vertex on the depth-first path with its neighbor list copied to the top of rows
+     * @param vertex vertex to enter
+     * @param level position on the path
+     * @param rowStart where its neighbor list starts in rows
+     * @return end of its neighbor list in rows
+     */
+    private int enter(int vertex, int level, int rowStart) {
+        if (level == vertices.length) {
+            vertices = Arrays.copyOf(vertices, level * 2);
+            rowStarts = Arrays.copyOf(rowStarts, level * 2);
+            cursors = Arrays.copyOf(cursors, level * 2);
+        }
+        int degree = graph.degree(vertex);
+        if (degree > row.length)
+            row = new int[Math.max(degree, row.length * 2)];
+        if (rowStart + degree > rows.length)
+            rows = Arrays.copyOf(rows, Math.max(rowStart + degree, rows.length * 2));
+        int count = graph.neighbors(vertex, row);
+        System.arraycopy(row, 0, rows, rowStart, count);
+        vertices[level] = vertex;
+        rowStarts[level] = rowStart;
+        cursors[level] = rowStart;
+        return rowStart + count;
+    }
+
+    /**
+     * Starts a new search, clearing the stamps only when the epoch wraps around.
+     * The stamps grow by doubling when vertices have been added; older stamps are all
+     * below the new epoch, so they stay valid.
+     */
+    private void nextEpoch() {
+        if (stamps.length < graph.size()) {
+            int capacity = Math.max(graph.size(), stamps.length * 2);
+            stamps = Arrays.copyOf(stamps, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+        }
+        epoch++;
+        if (epoch == 0) {
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * The stamps may be longer than the graph, so vertex numbers are checked against it
+     */
+    private void checkVertex(int vertex) {
+        if (vertex < 0 || vertex >= graph.size())
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+}
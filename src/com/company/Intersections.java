@@ -0,0 +1,129 @@
+package com.company;
+
+/**
+ * Intersection of sorted vertex lists and of vertex bitsets, used for common friend queries.
+ * Sorted lists of similar length are merged linearly. When one list is much shorter
+ * every element of it gallops through the longer list, so the cost is
+ * O(small * log(large / small)) instead of O(small + large).
+ */
+public class Intersections {
+    /**
+     * Length ratio above which the shorter list gallops through the longer one
+     */
+    static final int GALLOP_RATIO = 32;
+
+    private Intersections() {
+    }
+
+    /**
+     * Writes the values present in both sorted lists to out
+     * @param a first sorted list
+     * @param aLength number of values used from a
+     * @param b second sorted list
+     * @param bLength number of values used from b
+     * @param out receives the common values in ascending order, at least min(aLength, bLength) long;
+     *            may be null to only count them
+     * @return number of common values
+     */
+    public static int intersect(int[] a, int aLength, int[] b, int bLength, int[] out) {
+        if (aLength > bLength)
+            return intersect(b, bLength, a, aLength, out);
+        if (aLength == 0)
+            return 0;
+        if (bLength / aLength >= GALLOP_RATIO)
+            return gallop(a, aLength, b, bLength, out);
+
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < aLength && j < bLength) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                if (out != null)
+                    out[count] = a[i];
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Looks up every value of the short list in the long one with an exponential search
+     * that starts where the previous value was found
+     */
+    private static int gallop(int[] small, int smallLength, int[] large, int largeLength, int[] out) {
+        int count = 0;
+        int low = 0;
+        for (int i = 0; i < smallLength && low < largeLength; i++) {
+            int value = small[i];
+            int step = 1;
+            int high = low;
+            while (high < largeLength && large[high] < value) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high, largeLength - 1);
+            //Binary search for value in large[low..high]
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (large[middle] < value) {
+                    low = middle + 1;
+                } else if (large[middle] > value) {
+                    high = middle - 1;
+                } else {
+                    if (out != null)
+                        out[count] = value;
+                    count++;
+                    low = middle + 1;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Builds a bitset with one bit per vertex
+     * @param values vertex numbers to set
+     * @param length number of values used
+     * @param n number of vertices
+     * @return bitset of (n + 63) / 64 words
+     */
+    public static long[] toBits(int[] values, int length, int n) {
+        long[] bits = new long[(n + 63) >>> 6];
+        for (int i = 0; i < length; i++) {
+            bits[values[i] >>> 6] |= 1L << values[i];
+        }
+        return bits;
+    }
+
+    /**
+     * Writes the vertices set in both bitsets to out
+     * @param a first bitset
+     * @param b second bitset; words past the end of the shorter bitset count as zero
+     * @param out receives the common vertices in ascending order; may be null to only count them
+     * @return number of common vertices
+     */
+    public static int intersect(long[] a, long[] b, int[] out) {
+        int count = 0;
+        int words = Math.min(a.length, b.length);
+        for (int w = 0; w < words; w++) {
+            long word = a[w] & b[w];
+            if (out == null) {
+                count += Long.bitCount(word);
+            } else {
+                while (word != 0) {
+                    out[count++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        }
+        return count;
+    }
+}
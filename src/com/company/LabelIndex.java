@@ -0,0 +1,163 @@
+package com.company;
+
+/**
+ * Hash table from vertex label to vertex number used by {@link Graph#getVertexIndex(Object)}.
+ * It uses open addressing with linear probing over parallel arrays, so a lookup is one
+ * hash and a short probe with no boxed integers. Null labels are never stored.
+ * When several vertices share a label the lowest vertex number is returned,
+ * the same answer a scan of the labels from vertex 0 would give.
+ */
+public class LabelIndex {
+    /**
+     * Largest fraction of slots that may be filled before the table doubles
+     */
+    private static final double LOAD_FACTOR = 0.5;
+
+    private Object[] keys;
+    private int[] vertices;
+    private int count;
+
+    /**
+     * Creates an index sized for the expected number of labels
+     * @param expected number of labels that will be added
+     */
+    public LabelIndex(int expected) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expected) {
+            capacity <<= 1;
+        }
+        keys = new Object[capacity];
+        vertices = new int[capacity];
+    }
+
+    /**
+     * Number of labels in the index
+     * @return label count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Records that the vertex has the label
+     * @param label vertex label, ignored when null
+     * @param vertex vertex number
+     */
+    public void put(Object label, int vertex) {
+        if (label == null)
+            return;
+        if (count + 1 > keys.length * LOAD_FACTOR) {
+            resize(keys.length << 1);
+        }
+        int mask = keys.length - 1;
+        int slot = hash(label) & mask;
+        while (keys[slot] != null) {
+            if (vertices[slot] == vertex && keys[slot].equals(label))
+                return;
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = label;
+        vertices[slot] = vertex;
+        count++;
+    }
+
+    /**
+     * Forgets that the vertex has the label
+     * @param label vertex label, ignored when null
+     * @param vertex vertex number
+     */
+    public void remove(Object label, int vertex) {
+        if (label == null)
+            return;
+        int mask = keys.length - 1;
+        int slot = hash(label) & mask;
+        while (keys[slot] != null) {
+            if (vertices[slot] == vertex && keys[slot].equals(label)) {
+                deleteSlot(slot);
+                count--;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Looks up the vertex with the label
+     * @param label label to find
+     * @return lowest vertex number with an equal label, or -1 if there is none
+     */
+    public int get(Object label) {
+        if (label == null)
+            return -1;
+        int mask = keys.length - 1;
+        int slot = hash(label) & mask;
+        int answer = -1;
+        while (keys[slot] != null) {
+            if ((answer < 0 || vertices[slot] < answer) && keys[slot].equals(label))
+                answer = vertices[slot];
+            slot = (slot + 1) & mask;
+        }
+        return answer;
+    }
+
+    /**
+     * Creates an independent copy of this index
+     * @return copy of the index
+     */
+    public LabelIndex copy() {
+        LabelIndex answer = new LabelIndex(0);
+        answer.keys = keys.clone();
+        answer.vertices = vertices.clone();
+        answer.count = count;
+        return answer;
+    }
+
+    /**
+     * Empties the slot and shifts later entries of the probe run back so no lookup stops early
+     * @param slot slot to empty
+     */
+    private void deleteSlot(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != null) {
+            int home = hash(keys[next]) & mask;
+            // Move the entry into the hole unless its home lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                vertices[hole] = vertices[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldKeys = keys;
+        int[] oldVertices = vertices;
+        keys = new Object[capacity];
+        vertices = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                vertices[slot] = oldVertices[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the high bits of the label hash code into the low bits used for the slot
+     * @param label nonnull label
+     * @return mixed hash
+     */
+    private static int hash(Object label) {
+        int h = label.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,129 @@
+package com.company;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds with a fixed relative precision, in the manner
+ * of HdrHistogram. Values below 128 get a bucket each; above that every power of two is
+ * split into 64 buckets, so a bucket is less than 1/64 of its values wide and every
+ * percentile is within about 1.6% of the true value, from nanoseconds to centuries, in
+ * 3712 counters.
+ *
+ * Recording is lock free: an atomic increment of one counter, a striped add to the sum,
+ * and a compare-and-set of the maximum only when it grows. Reads taken while other
+ * threads record see each recorded value either whole or not at all in the counters,
+ * though the sum may be a few values ahead or behind.
+ */
+public class LatencyHistogram {
+    /**
+     * log2 of the buckets below which every value has its own bucket
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HALF_SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration
+     * @param nanos duration in nanoseconds, negative values counting as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        sum.add(value);
+        long highest = max.get();
+        while (value > highest && !max.compareAndSet(highest, value)) {
+            highest = max.get();
+        }
+    }
+
+    /**
+     * Number of durations recorded
+     * @return count
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Mean of the durations recorded
+     * @return mean in nanoseconds, 0 without durations
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Longest duration recorded
+     * @return maximum in nanoseconds, 0 without durations
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Duration that a fraction of the recorded durations do not exceed
+     * @param fraction between 0 and 1, for example 0.99 for the 99th percentile
+     * @return the highest value of the bucket holding that duration, at most the
+     *         maximum; 0 without durations
+     */
+    public long getValueAtPercentile(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1))
+            throw new IllegalArgumentException("Fraction must be between 0 and 1: " + fraction);
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(highestInBucket(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets every duration. Durations recorded meanwhile may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Bucket of a value: the value itself below 128, otherwise 64 buckets per power of two
+     */
+    static int bucket(long value) {
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        if (shift <= 0)
+            return (int) value;
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestInBucket(int bucket) {
+        if (bucket < 2 * HALF_SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / HALF_SUB_BUCKETS - 1;
+        long subBucket = bucket - (long) shift * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -1,11 +1,11 @@
 package com.company;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.util.*;
 
-import static java.lang.Integer.parseInt;
-
 /**
  * This program operates a data structure for a social network program in which two file are assigned.
  * One being the member list with index number and the second being the friend list linking the members.
@@ -21,14 +21,39 @@ public class Main {
      * Stores object for graph class
      */
     public static Graph g;
+    /**
+     * Number of threads used to read the friend file, 1 reads it serially
+     */
+    public static int loadThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Queries of the current graph, reused so their buffers, ranking and cache survive between
+     * menu options. Friends and friends of friends are answered through a {@link QueryCache}
+     * bounded by -Dgraph.cache.entries and -Dgraph.cache.bytes.
+     */
+    private static GraphQueries queries;
+    /**
+     * Log of the changes made to the current graph, null if it could not be opened
+     */
+    private static MutationLog log;
+    /**
+     * Writes the current graph back to the files it was read from at a checkpoint
+     */
+    private static MutationLog.BaseWriter baseWriter;
 
     /**
      * Main method
-     * @param args main method args
+     * @param args main method args, either a snapshot file, an index file and a friend file, or nothing
+     *             to read index.txt and friend.txt
      */
     public static void main(String[] args) {
         System.out.println("Social Network Program");
-        setUpGraph("index.txt", "friend.txt");
+        if (args.length == 1) {
+            setUpSnapshot(args[0]);
+        } else if (args.length == 2) {
+            setUpGraph(args[0], args[1]);
+        } else {
+            setUpGraph("index.txt", "friend.txt");
+        }
         startProgram();
     }
 
@@ -42,13 +67,18 @@ public class Main {
             case 1:
                 System.out.println("\n**Update friends files**\n");
                 Scanner sc = new Scanner(System.in);
-                System.out.println("\nEnter the file name (With Out .txt)");
+                System.out.println("\nEnter the file name (With Out .txt), or a snapshot file ending in " + GraphSnapshot.EXTENSION);
                 System.out.print("Enter the friend file name: ");
-                String friendsFile = sc.nextLine() + ".txt";
-                System.out.print("Enter the index file name: ");
-                String indexFile = sc.nextLine() + ".txt";
-
-                setUpGraph(indexFile, friendsFile);
+                String friendsFile = sc.nextLine();
+                if (friendsFile.endsWith(GraphSnapshot.EXTENSION)) {
+                    setUpSnapshot(friendsFile);
+                } else {
+                    friendsFile = friendsFile + ".txt";
+                    System.out.print("Enter the index file name: ");
+                    String indexFile = sc.nextLine() + ".txt";
+
+                    setUpGraph(indexFile, friendsFile);
+                }
                 startProgram();
                 break;
             case 2:
@@ -67,16 +97,37 @@ public class Main {
                 startProgram();
                 break;
             case 5:
+                System.out.println("\n**Display degrees of separation**\n[Two User Input]\n");
+                displaySeparation(g);
+                startProgram();
+                break;
+            case 6:
+                System.out.println("\n**Display people you may know**\n");
+                displaySuggestions(g);
+                startProgram();
+                break;
+            case 7:
                 System.out.println("\n**Remove member**\n");
                 removeFriend(g);
                 startProgram();
                 break;
-            case 6:
+            case 8:
                 System.out.println("\n**Display popular friends**\n");
                 displayPopularFriends(g);
                 startProgram();
                 break;
-            case 7:
+            case 9:
+                System.out.println("\n**Display network statistics**\n");
+                displayStatistics(g);
+                startProgram();
+                break;
+            case 10:
+                System.out.println("\n**Search members by name**\n");
+                displayNameSearch(g);
+                startProgram();
+                break;
+            case 11:
+                closeLog();
                 System.out.println("\n**Program Exit**\nGoodBye!!");
                 System.exit(0);
         }
@@ -92,14 +143,18 @@ public class Main {
                 "2. Display all the friends of a person\n" +
                 "3. Display all the friends and friends of the friends of a person\n" +
                 "4. Display all the common friends of two people\n" +
-                "5. Delete a person from the social network\n" +
-                "6. Display List of all members sorted by popularity, then by names\n" +
-                "7. Exit Program");
+                "5. Display how two people are connected\n" +
+                "6. Display people a person may know\n" +
+                "7. Delete a person from the social network\n" +
+                "8. Display List of all members sorted by popularity, then by names\n" +
+                "9. Display network statistics\n" +
+                "10. Search members by name\n" +
+                "11. Exit Program");
         System.out.print("Enter a number: ");
         try {
             Scanner sc = new Scanner(System.in);
             int menuInput = sc.nextInt();
-            if (!(menuInput >= 1 && menuInput <= 7)) {
+            if (!(menuInput >= 1 && menuInput <= 11)) {
                 System.out.println("\nInvalid Input!!\nPlease try again.");
                 startProgram();
             }
@@ -108,11 +163,13 @@ public class Main {
             System.out.println("\nInput must be integer!!!\nPlease try again. ");
             startProgram();
         }
-        return 7;
+        return 11;
     }
 
     /**
-     * Method to setup graph data structure using adjacency matrix by reading .txt files.
+     * Method to setup graph data structure using compressed adjacency rows by reading .txt files.
+     * Files are looked up on the file system first (absolute or relative to the working directory)
+     * and then next to this class.
      * @param indexFile file that contains members list (Label and Vertex)
      * @param friendsFile file that contains friend list (Edges)
      */
@@ -120,42 +177,23 @@ public class Main {
         Main myApp = new Main();
 
         try {
-            Scanner peopleReader = new Scanner(myApp.getFile(indexFile));
-            Scanner friendReader = new Scanner(myApp.getFile(friendsFile));
-
-            int personCount = parseInt(peopleReader.next());
-            int friendCount = parseInt(friendReader.next());
-            int personCheck = 0;
-            int friendCheck = 0;
-
-            g = new Graph(personCount);
-
+            GraphLoader loader = new GraphLoader(loadThreads);
             try {
-                //Setting up vertex and label from index file
-                while (peopleReader.hasNext()) {
-                    personCheck++;
-                    g.setLabel(parseInt(peopleReader.next()), peopleReader.next());
-                }
-                //Setting up edged of friend network
-                while (friendReader.hasNext()) {
-                    friendCheck++;
-                    int source = parseInt(friendReader.next());
-                    int target = parseInt(friendReader.next());
-                    g.addEdge(source, target);
-                    g.addEdge(target, source);
-                }
-
-                //Checking counts
-                if (friendCheck != friendCount || personCheck != personCount) {
-                    throw new ArrayIndexOutOfBoundsException("Count error");
+                Path index = myApp.getFile(indexFile).toPath();
+                Path friends = myApp.getFile(friendsFile).toPath();
+                recoverLog(friends, index, friends);
+                g = loader.load(index, friends);
+                openLog((graph, files) -> GraphLoader.writeText(graph, files[0], files[1]), friends, index, friends);
+
+                //The counts in the files only presize the graph, a mismatch is just reported
+                if (!loader.countsMatch()) {
+                    System.out.println("Specified count does not match the count of data in the file");
                 }
 
             } catch (ArrayIndexOutOfBoundsException e) {
-                System.out.println("Specified count does not match the count of data in the file");
+                System.out.println("The friend file names a member that is not in the index file");
                 e.printStackTrace();
             }
-            peopleReader.close();
-            friendReader.close();
 
         } catch (Exception e) {
             System.out.println("File Not Found!!\nPlease try again.");
@@ -164,13 +202,109 @@ public class Main {
 
     }
 
+    /**
+     * Method to setup graph data structure from a binary snapshot written by {@link Graph#writeSnapshot}.
+     * The checksum is verified before the snapshot replaces the current graph.
+     * @param snapshotFile snapshot file
+     */
+    public static void setUpSnapshot(String snapshotFile) {
+        Main myApp = new Main();
+
+        try {
+            Path file = myApp.getFile(snapshotFile).toPath();
+            recoverLog(file, file);
+            if (GraphSnapshot.verify(file)) {
+                g = Graph.readSnapshot(file);
+                openLog((graph, files) -> graph.writeSnapshot(files[0]), file, file);
+            } else {
+                System.out.println("Snapshot file is corrupt!!\nPlease try again.");
+            }
+        } catch (Exception e) {
+            System.out.println("File Not Found!!\nPlease try again.");
+            startProgram();
+        }
+    }
+
+    /**
+     * Checkpoints and closes the log of the previous graph, then finishes a checkpoint of the
+     * files about to be read that a crash interrupted, so they are read whole
+     * @param logNextTo file the log is named after
+     * @param base files about to be read
+     */
+    private static void recoverLog(Path logNextTo, Path... base) {
+        closeLog();
+        try {
+            MutationLog.recover(logFile(logNextTo), base);
+        } catch (IOException e) {
+            System.out.println("The last save was interrupted and could not be finished: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replays the log kept next to the files of a graph just read onto it, and starts logging
+     * its changes. {@link #recoverLog} is called before the files are read.
+     * @param writer writes the graph into new files in the format it was read from
+     * @param logNextTo file the log is named after
+     * @param base files the graph was read from
+     */
+    private static void openLog(MutationLog.BaseWriter writer, Path logNextTo, Path... base) {
+        closeLog();
+        try {
+            log = MutationLog.open(logFile(logNextTo), g, base);
+            baseWriter = writer;
+            if (log.getReplayed() > 0) {
+                System.out.println("Replayed " + log.getReplayed() + " changes from the log");
+            }
+        } catch (IOException e) {
+            System.out.println("Changes will not be saved, the log could not be opened: " + e.getMessage());
+        }
+    }
+
+    private static Path logFile(Path logNextTo) {
+        return logNextTo.resolveSibling(logNextTo.getFileName() + MutationLog.EXTENSION);
+    }
+
+    /**
+     * Writes the logged changes back to the files of the graph and closes the log
+     */
+    private static void closeLog() {
+        if (log == null)
+            return;
+        try {
+            if (log.getReplayed() > 0 || log.getAppended() > 0) {
+                log.checkpoint(baseWriter);
+            }
+            log.close();
+        } catch (IOException e) {
+            System.out.println("Changes could not be saved: " + e.getMessage());
+        }
+        log = null;
+    }
+
+    /**
+     * Forces the changes logged so far to disk
+     */
+    private static void syncLog() {
+        if (log == null)
+            return;
+        try {
+            log.sync();
+        } catch (IOException e) {
+            System.out.println("Change could not be saved: " + e.getMessage());
+        }
+    }
+
     /**
      * Gets file from the given file location
-     * @param filename file location
+     * @param filename file location, either a path on the file system or a resource next to this class
      * @return file content
      * @throws URISyntaxException throws error when the file has no correct format
      */
     public File getFile(String filename) throws URISyntaxException {
+        File file = new File(filename);
+        if (file.isFile()) {
+            return file;
+        }
         return new File(this.getClass().getResource(filename).toURI());
     }
 
@@ -208,6 +342,24 @@ public class Main {
         return String.valueOf(chars);
     }
 
+    /**
+     * Gets the queries of a graph, replacing the ones of a previous graph
+     * @param g Graph object
+     * @return queries of the graph
+     */
+    public static GraphQueries queries(Graph g) {
+        if (queries == null || queries.getGraph() != g) {
+            if (queries != null) {
+                queries.close();
+                if (queries.getCache() != null) {
+                    queries.getCache().detach();
+                }
+            }
+            queries = new GraphQueries(g, QueryCache.fromProperties(g));
+        }
+        return queries;
+    }
+
     /**
      * Displays all friends of input member name
      * @param g Graph object
@@ -215,7 +367,8 @@ public class Main {
     public static void displayFriends(Graph g) {
         String user = getNameInput();
         try {
-            int[] friends = g.neighbors(g.getVertexIndex(user));
+            GraphQueries queries = queries(g);
+            int[] friends = queries.friends(queries.vertexOf(user));
             if (friends.length == 0) {
                 System.out.println("No Friends Found!");
             }
@@ -232,17 +385,8 @@ public class Main {
     public static void displayMutualFriends(Graph g) {
         String user = getNameInput();
         try {
-            int[] friends = g.neighbors(g.getVertexIndex(user));
-            Set<Integer> mutual = new TreeSet<Integer>();
-            for (int friend : friends) {
-                mutual.add(friend);
-                int[] friendOfFriend = g.neighbors(friend);
-                for (int j : friendOfFriend) {
-                    if (j != g.getVertexIndex(user)) {
-                        mutual.add(j);
-                    }
-                }
-            }
+            GraphQueries queries = queries(g);
+            int[] mutual = queries.friendsOfFriends(queries.vertexOf(user));
             for (int i : mutual) {
                 System.out.println(g.getLabel(i));
             }
@@ -260,27 +404,17 @@ public class Main {
         try {
             String user = getNameInput();
             String userTwo = getNameInput();
-            int[] friends = g.neighbors(g.getVertexIndex(user));
-            int[] friendsTwo = g.neighbors(g.getVertexIndex(userTwo));
-
-            //Checking and adding all the common friends
-            Set<String> commonFriend = new HashSet<>();
-            for (int friend : friends) {
-                for (int i : friendsTwo) {
-                    if (friend == i) {
-                        commonFriend.add(g.getLabel(friend) + " ");
-                        break;
-                    }
-                }
-            }
+            //Intersecting both friend lists
+            GraphQueries queries = queries(g);
+            int[] commonFriend = queries.commonFriends(queries.vertexOf(user), queries.vertexOf(userTwo));
 
             //Displaying common friends if they have
-            if (commonFriend.isEmpty()) {
+            if (commonFriend.length == 0) {
                 System.out.println("There is no common friend");
             } else {
                 System.out.println("Common friends are: ");
-                for (String i : commonFriend) {
-                    System.out.println(i);
+                for (int i : commonFriend) {
+                    System.out.println(g.getLabel(i) + " ");
                 }
             }
         } catch (ArrayIndexOutOfBoundsException e) {
@@ -289,6 +423,75 @@ public class Main {
 
     }
 
+    /**
+     * Display the degrees of separation of two people and one chain of friends linking them
+     * @param g Graph object
+     */
+    public static void displaySeparation(Graph g) {
+        try {
+            String user = getNameInput();
+            String userTwo = getNameInput();
+            //Searching from both people at once
+            GraphQueries queries = queries(g);
+            int[] path = queries.path(queries.vertexOf(user), queries.vertexOf(userTwo), PathFinder.DEFAULT_MAX_HOPS);
+
+            if (path.length == 0) {
+                System.out.println("They are not connected within " + PathFinder.DEFAULT_MAX_HOPS + " degrees");
+            } else {
+                System.out.println("Degrees of separation: " + (path.length - 1));
+                StringBuilder chain = new StringBuilder();
+                for (int i = 0; i < path.length; i++) {
+                    chain.append(i == 0 ? "" : " -> ").append(g.getLabel(path[i]));
+                }
+                System.out.println(chain);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.out.println("Given name does not exist");
+        }
+    }
+
+    /**
+     * Display the people a person may know, best first
+     * @param g Graph object
+     */
+    public static void displaySuggestions(Graph g) {
+        String user = getNameInput();
+        try {
+            GraphQueries queries = queries(g);
+            int[] suggestions = queries.suggestions(queries.vertexOf(user), Recommender.DEFAULT_COUNT);
+            if (suggestions.length == 0) {
+                System.out.println("No suggestions: none of their friends has other friends");
+            }
+            for (int i : suggestions) {
+                System.out.println(g.getLabel(i));
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.out.println("Given name does not exist");
+        }
+    }
+
+    /**
+     * Display the members whose name starts with what was typed, and the closest names
+     * when it is mistyped
+     * @param g Graph object
+     */
+    public static void displayNameSearch(Graph g) {
+        String name = getNameInput();
+        GraphQueries queries = queries(g);
+        int[] matches = queries.namesStartingWith(name, NameIndex.DEFAULT_COUNT);
+        if (matches.length == 0) {
+            matches = queries.similarNames(name, NameIndex.DEFAULT_COUNT);
+            if (matches.length == 0) {
+                System.out.println("No member has a name like " + name);
+                return;
+            }
+            System.out.println("No name starts with " + name + ", did you mean:");
+        }
+        for (int i : matches) {
+            System.out.println(g.getLabel(i));
+        }
+    }
+
     /**
      * Removes member form the social network
      * @param g Graph object
@@ -302,12 +505,9 @@ public class Main {
             reformatString(confirm);
             //Conforming deletion and deleting the member
             if(reformatString(confirm).equals("Yes")  || reformatString(confirm).equals("Y") ){
-                int[] userFriend = g.neighbors(g.getVertexIndex(user));
-                for (int i = 0; i < userFriend.length; i++) {
-                    g.removeEdge(userFriend[i], g.getVertexIndex(user));
-                    g.removeEdge(g.getVertexIndex(user), userFriend[i]);
-                    
-                }
+                GraphQueries queries = queries(g);
+                queries.removeMember(queries.vertexOf(user));
+                syncLog();
             }else if(reformatString(confirm).equals("No")|| reformatString(confirm).equals("N") ){
                 System.out.println("No Worries!!");
             } else{
@@ -326,42 +526,7 @@ public class Main {
      */
     public static void displayPopularFriends(Graph g) {
 
-        //Adding people object to an array list
-        List<People> peopleList = new ArrayList<People>();
-        for (int i = 0; i < g.size(); i++) {
-            int count = 0;
-            for (int j = 0; j < g.neighbors(i).length; j++) {
-                count++;
-            }
-            String name = g.getLabel(i).toString();
-            peopleList.add(new People(i, name, count));
-
-        }
-
-        //Sorting array list according to the number of friends
-        peopleList.sort(new Comparator<People>() {
-            @Override
-            public int compare(People o1, People o2) {
-                return o2.getNumOfFriends() - o1.getNumOfFriends();
-            }
-        });
-
-        //Selecting range members with same friends count and sorting according to name
-        int cursorIndex = 0;
-        int endIndex = 0;
-        int startIndex = 0;
-        while (cursorIndex < (peopleList.size() - 1)) {
-            if (peopleList.get(cursorIndex).getNumOfFriends() == peopleList.get(cursorIndex + 1).getNumOfFriends()) {
-                endIndex = cursorIndex + 1;
-            } else {
-                sortListWithInRange(peopleList, startIndex, endIndex);
-                startIndex = endIndex + 1;
-            }
-            cursorIndex++;
-            if (cursorIndex == (peopleList.size() - 1)) {
-                sortListWithInRange(peopleList, startIndex, endIndex);
-            }
-        }
+        List<People> peopleList = queries(g).popularity(0, g.size());
 
         //Output in table format
         String leftAlignFormat = "| %-7d | %-23s | %-14d |%n";
@@ -376,17 +541,21 @@ public class Main {
     }
 
     /**
-     * Method to sort according to name in an arraylist within a range.
-     * @param peopleList Arraylist of people
-     * @param startIndex start index from where the sorting need to start
-     * @param endIndex end index in which the sorting need to end.
+     * Displays the member and friendship counts and how many members have how many friends,
+     * read from the counters the graph keeps instead of a sweep over the friendships,
+     * then the latency of every query so far when {@link Metrics} are recorded
+     * @param g Graph Object
      */
-    public static void sortListWithInRange(List<People> peopleList, int startIndex, int endIndex) {
-        peopleList.subList(startIndex, endIndex + 1).sort(new Comparator<People>() {
-            @Override
-            public int compare(People o1, People o2) {
-                return o1.getName().compareTo(o2.getName());
-            }
-        });
+    public static void displayStatistics(Graph g) {
+        g.stats().print(System.out);
+        QueryCache cache = queries(g).getCache();
+        if (cache != null) {
+            System.out.println("Query cache: " + cache.size() + " entries, " + cache.bytes() + " bytes, "
+                    + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+        }
+        if (Metrics.ENABLED) {
+            System.out.println();
+            Metrics.printReport(System.out);
+        }
     }
 }
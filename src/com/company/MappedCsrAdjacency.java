@@ -0,0 +1,181 @@
+package com.company;
+
+import java.nio.IntBuffer;
+
+/**
+ * Compressed sparse row storage read in place from a memory mapped snapshot.
+ * Opening it costs nothing per edge: degrees and neighbors are read straight from the
+ * mapped offsets and targets, and {@link #neighborView(int)} returns the mapped row itself.
+ * The first change copies the rows into a heap {@link CsrAdjacency}, or into an
+ * {@link OffHeapCsrAdjacency} when there are too many edges for an int array or
+ * {@link GraphLoader#OFF_HEAP_PROPERTY} is set. Every later call goes to that copy,
+ * so the snapshot file itself is never written.
+ */
+public class MappedCsrAdjacency implements Adjacency {
+    private final MappedPages pages;
+    private final int n;
+    /**
+     * File offset of the long[n+1] row starts
+     */
+    private final long offsetsStart;
+    /**
+     * File offset of the int[] row targets
+     */
+    private final long targetsStart;
+    /**
+     * Copy made by the first change, null while the mapped rows are used
+     */
+    private Adjacency copy;
+
+    /**
+     * Creates a view of rows stored in a mapped file
+     * @param pages the mapped file
+     * @param n number of vertices
+     * @param offsetsStart file offset of n+1 longs giving the index of the first target of every row
+     * @param targetsStart file offset of the sorted targets of all rows
+     */
+    MappedCsrAdjacency(MappedPages pages, int n, long offsetsStart, long targetsStart) {
+        this.pages = pages;
+        this.n = n;
+        this.offsetsStart = offsetsStart;
+        this.targetsStart = targetsStart;
+    }
+
+    @Override
+    public int size() {
+        return copy != null ? copy.size() : n;
+    }
+
+    @Override
+    public int addVertex() {
+        return changeable().addVertex();
+    }
+
+    @Override
+    public boolean addEdge(int source, int target) {
+        return changeable().addEdge(source, target);
+    }
+
+    @Override
+    public boolean removeEdge(int source, int target) {
+        return changeable().removeEdge(source, target);
+    }
+
+    @Override
+    public boolean isEdge(int source, int target) {
+        if (copy != null)
+            return copy.isEdge(source, target);
+        checkVertex(target);
+        long low = rowStart(source);
+        long high = rowStart(source + 1) - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            int value = target(middle);
+            if (value < target)
+                low = middle + 1;
+            else if (value > target)
+                high = middle - 1;
+            else
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int degree(int vertex) {
+        if (copy != null)
+            return copy.degree(vertex);
+        return (int) (rowStart(vertex + 1) - rowStart(vertex));
+    }
+
+    @Override
+    public int[] neighbors(int vertex) {
+        if (copy != null)
+            return copy.neighbors(vertex);
+        int[] answer = new int[degree(vertex)];
+        neighbors(vertex, answer);
+        return answer;
+    }
+
+    @Override
+    public int neighbors(int vertex, int[] buffer) {
+        if (copy != null)
+            return copy.neighbors(vertex, buffer);
+        long start = rowStart(vertex);
+        int count = (int) (rowStart(vertex + 1) - start);
+        for (int i = 0; i < count; i++) {
+            buffer[i] = target(start + i);
+        }
+        return count;
+    }
+
+    @Override
+    public IntBuffer neighborView(int vertex) {
+        if (copy != null)
+            return copy.neighborView(vertex);
+        long start = rowStart(vertex);
+        int count = (int) (rowStart(vertex + 1) - start);
+        IntBuffer view = count == 0 ? null : pages.intView(targetsStart + 4L * start, count);
+        return view != null ? view : IntBuffer.wrap(neighbors(vertex)).asReadOnlyBuffer();
+    }
+
+    @Override
+    public Adjacency copy() {
+        return copy != null ? copy.copy() : copyRows();
+    }
+
+    /**
+     * Total number of edges stored
+     * @return edge count
+     */
+    public long edgeCount() {
+        if (copy == null)
+            return rowStart(n);
+        long total = 0;
+        for (int v = 0; v < copy.size(); v++) {
+            total += copy.degree(v);
+        }
+        return total;
+    }
+
+    private Adjacency changeable() {
+        if (copy == null)
+            copy = copyRows();
+        return copy;
+    }
+
+    /**
+     * Copies the mapped rows to the heap, or off the heap when they do not fit in an int
+     * array or that is asked for
+     * @return storage with the same edges
+     */
+    private Adjacency copyRows() {
+        long total = rowStart(n);
+        if (total > Integer.MAX_VALUE - 8 || Boolean.getBoolean(GraphLoader.OFF_HEAP_PROPERTY))
+            return OffHeapCsrAdjacency.copyOf(this);
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v <= n; v++) {
+            offsets[v] = (int) rowStart(v);
+        }
+        int[] targets = new int[(int) total];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = target(i);
+        }
+        return new CsrAdjacency(offsets, targets);
+    }
+
+    private long rowStart(int vertex) {
+        if (vertex < 0 || vertex > n)
+            throw new ArrayIndexOutOfBoundsException(vertex);
+        return pages.getLong(offsetsStart + 8L * vertex);
+    }
+
+    private int target(long index) {
+        return pages.getInt(targetsStart + 4L * index);
+    }
+
+    private void checkVertex(int vertex) {
+        if (vertex < 0 || vertex >= n)
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+}
@@ -0,0 +1,158 @@
+package com.company;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Whitespace separated token reader over a memory mapped file.
+ * Integers are parsed straight from the mapped bytes without creating a String,
+ * and files larger than one mapping are read through a sliding window.
+ */
+public class MappedInput implements Closeable {
+    /**
+     * Largest region mapped at once
+     */
+    static final long WINDOW = 1L << 28;
+
+    private final FileChannel channel;
+    private final long end;
+    private long windowStart;
+    private MappedByteBuffer window;
+    private byte[] text = new byte[64];
+
+    /**
+     * Maps the whole file for reading
+     * @param file file to read
+     * @throws IOException when the file cannot be opened or mapped
+     */
+    public MappedInput(Path file) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.READ), 0, -1);
+    }
+
+    /**
+     * Maps part of an open channel for reading
+     * @param channel channel to read, closed together with this input
+     * @param start first byte to read
+     * @param end byte after the last one to read, or -1 for the end of the channel
+     * @throws IOException when the region cannot be mapped
+     */
+    MappedInput(FileChannel channel, long start, long end) throws IOException {
+        this.channel = channel;
+        this.end = end < 0 ? channel.size() : end;
+        this.windowStart = start;
+        map();
+    }
+
+    /**
+     * Checks whether another token follows, skipping the whitespace before it
+     * @return true if a token is available
+     * @throws IOException when the next window cannot be mapped
+     */
+    public boolean hasNext() throws IOException {
+        int b = peek();
+        while (b >= 0 && isWhitespace(b)) {
+            window.get();
+            b = peek();
+        }
+        return b >= 0;
+    }
+
+    /**
+     * Reads the next token as a decimal int
+     * @return the value of the token
+     * @throws IOException when the next window cannot be mapped
+     * @throws NoSuchElementException when the input is exhausted
+     * @throws InputMismatchException when the token is not an int
+     */
+    public int nextInt() throws IOException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        boolean negative = false;
+        int b = peek();
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            window.get();
+            b = peek();
+        }
+        if (b < '0' || b > '9')
+            throw new InputMismatchException("Expected a number at byte " + position());
+        long value = 0;
+        while (b >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            if (value > (long) Integer.MAX_VALUE + 1)
+                throw new InputMismatchException("Number too large at byte " + position());
+            window.get();
+            b = peek();
+        }
+        if (b >= 0 && !isWhitespace(b))
+            throw new InputMismatchException("Expected a number at byte " + position());
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE)
+            throw new InputMismatchException("Number too large at byte " + position());
+        return (int) value;
+    }
+
+    /**
+     * Reads the next token as UTF-8 text
+     * @return the token
+     * @throws IOException when the next window cannot be mapped
+     * @throws NoSuchElementException when the input is exhausted
+     */
+    public String next() throws IOException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        int length = 0;
+        int b = peek();
+        while (b >= 0 && !isWhitespace(b)) {
+            if (length == text.length)
+                text = Arrays.copyOf(text, length * 2);
+            text[length++] = window.get();
+            b = peek();
+        }
+        return new String(text, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Offset in the file of the next unread byte
+     * @return file position
+     */
+    public long position() {
+        return windowStart + window.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Looks at the next byte without consuming it, moving the window when it is used up
+     * @return the byte, or -1 at the end of the input
+     * @throws IOException when the next window cannot be mapped
+     */
+    private int peek() throws IOException {
+        if (!window.hasRemaining()) {
+            if (windowStart + window.limit() >= end)
+                return -1;
+            windowStart += window.limit();
+            map();
+        }
+        return window.get(window.position()) & 0xff;
+    }
+
+    private void map() throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW, end - windowStart));
+    }
+
+    static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0b;
+    }
+}
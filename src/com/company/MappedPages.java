@@ -0,0 +1,123 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
+
+/**
+ * Read only view of a whole file as a sequence of memory mapped pages, so files larger
+ * than a single mapping can be addressed with long byte offsets. Values are read in the
+ * big endian order {@link java.io.DataOutputStream} writes them in. An int or long never
+ * straddles two pages as long as it is stored at an offset that is a multiple of its size.
+ */
+public class MappedPages {
+    /**
+     * log2 of the page size, 1 GB pages
+     */
+    static final int PAGE_SHIFT = 30;
+    private static final long PAGE_MASK = (1L << PAGE_SHIFT) - 1;
+
+    private final MappedByteBuffer[] pages;
+    private final long size;
+
+    /**
+     * Maps the whole channel
+     * @param channel channel to map, it may be closed afterwards
+     * @throws IOException when the file cannot be mapped
+     */
+    public MappedPages(FileChannel channel) throws IOException {
+        size = channel.size();
+        pages = new MappedByteBuffer[(int) ((size + PAGE_MASK) >>> PAGE_SHIFT)];
+        for (int i = 0; i < pages.length; i++) {
+            long start = (long) i << PAGE_SHIFT;
+            pages[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(PAGE_MASK + 1, size - start));
+        }
+    }
+
+    /**
+     * Number of bytes mapped
+     * @return file size
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Reads one byte
+     * @param offset byte offset in the file
+     * @return the byte
+     */
+    public byte getByte(long offset) {
+        return pages[(int) (offset >>> PAGE_SHIFT)].get((int) (offset & PAGE_MASK));
+    }
+
+    /**
+     * Reads an int stored at a multiple of 4
+     * @param offset byte offset in the file
+     * @return the int
+     */
+    public int getInt(long offset) {
+        return pages[(int) (offset >>> PAGE_SHIFT)].getInt((int) (offset & PAGE_MASK));
+    }
+
+    /**
+     * Reads a long stored at a multiple of 8
+     * @param offset byte offset in the file
+     * @return the long
+     */
+    public long getLong(long offset) {
+        return pages[(int) (offset >>> PAGE_SHIFT)].getLong((int) (offset & PAGE_MASK));
+    }
+
+    /**
+     * Read only view of ints stored at a multiple of 4, without copying them
+     * @param offset byte offset in the file
+     * @param count number of ints
+     * @return the view, or null when the ints straddle two pages
+     */
+    public IntBuffer intView(long offset, int count) {
+        MappedByteBuffer page = pages[(int) (offset >>> PAGE_SHIFT)];
+        int start = (int) (offset & PAGE_MASK);
+        if (4L * count > page.limit() - start)
+            return null;
+        return page.slice(start, 4 * count).asIntBuffer();
+    }
+
+    /**
+     * Copies bytes that may cross a page boundary
+     * @param offset byte offset in the file
+     * @param dest destination array
+     * @param destOffset first index written in dest
+     * @param length number of bytes
+     */
+    public void getBytes(long offset, byte[] dest, int destOffset, int length) {
+        while (length > 0) {
+            MappedByteBuffer page = pages[(int) (offset >>> PAGE_SHIFT)];
+            int start = (int) (offset & PAGE_MASK);
+            int chunk = Math.min(length, page.limit() - start);
+            page.get(start, dest, destOffset, chunk);
+            offset += chunk;
+            destOffset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Feeds a range of the file to a checksum without copying it to the heap
+     * @param checksum checksum to update
+     * @param offset first byte
+     * @param length number of bytes
+     */
+    public void update(Checksum checksum, long offset, long length) {
+        while (length > 0) {
+            MappedByteBuffer page = pages[(int) (offset >>> PAGE_SHIFT)];
+            int start = (int) (offset & PAGE_MASK);
+            int chunk = (int) Math.min(length, page.limit() - start);
+            checksum.update(page.slice(start, chunk));
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+}
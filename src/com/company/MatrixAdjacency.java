@@ -0,0 +1,132 @@
+package com.company;
+
+/**
+ * Adjacency matrix storage. This is the original representation of {@link Graph}:
+ * one boolean per pair of vertices, so it needs n*n bytes regardless of the number of edges.
+ * The matrix keeps spare rows and columns, doubled whenever a vertex is added to a full one.
+ */
+public class MatrixAdjacency implements Adjacency {
+    /**
+     * edges[i][j] is true if there is an edge from i to j. The matrix may be bigger than
+     * n by n; the extra cells are false.
+     */
+    private boolean[][] edges;
+    /**
+     * Number of vertices
+     */
+    private int n;
+
+    /**
+     * Creates a matrix with n vertices and no edges
+     * @param n number of vertices
+     */
+    public MatrixAdjacency(int n) {
+        edges = new boolean[n][n];  // All values initially false
+        this.n = n;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public int addVertex() {
+        if (n == edges.length) {
+            int capacity = Math.max(16, n * 2);
+            boolean[][] grown = new boolean[capacity][capacity];
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(edges[i], 0, grown[i], 0, n);
+            }
+            edges = grown;
+        }
+        return n++;
+    }
+
+    @Override
+    public boolean addEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        boolean added = !edges[source][target];
+        edges[source][target] = true;
+        return added;
+    }
+
+    @Override
+    public boolean removeEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        boolean removed = edges[source][target];
+        edges[source][target] = false;
+        return removed;
+    }
+
+    @Override
+    public boolean isEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        return edges[source][target];
+    }
+
+    @Override
+    public int degree(int vertex) {
+        checkVertex(vertex);
+        boolean[] row = edges[vertex];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (row[i])
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int[] neighbors(int vertex) {
+        int[] answer = new int[degree(vertex)];
+        neighbors(vertex, answer);
+        return answer;
+    }
+
+    @Override
+    public int neighbors(int vertex, int[] buffer) {
+        checkVertex(vertex);
+        boolean[] row = edges[vertex];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (row[i])
+                buffer[count++] = i;
+        }
+        return count;
+    }
+
+    @Override
+    public Adjacency copy() {
+        MatrixAdjacency answer = new MatrixAdjacency(0);
+        answer.edges = new boolean[edges.length][];
+        for (int i = 0; i < edges.length; i++) {
+            answer.edges[i] = edges[i].clone();
+        }
+        answer.n = n;
+        return answer;
+    }
+
+    @Override
+    public Adjacency renumber(int[] mapping, int size) {
+        MatrixAdjacency answer = new MatrixAdjacency(size);
+        for (int i = 0; i < n; i++) {
+            if (mapping[i] < 0)
+                continue;
+            boolean[] row = answer.edges[mapping[i]];
+            for (int j = 0; j < n; j++) {
+                if (edges[i][j] && mapping[j] >= 0)
+                    row[mapping[j]] = true;
+            }
+        }
+        return answer;
+    }
+
+    private void checkVertex(int vertex) {
+        if (vertex < 0 || vertex >= n)
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+}
@@ -0,0 +1,296 @@
+package com.company;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, call count and work done of every graph operation, for the whole process.
+ *
+ * Recording is switched on with -Dgraph.metrics=true. The switch is read once into a
+ * static final field, so when it is off the JIT removes the calls to {@link #start()}
+ * and {@link #record} altogether and an operation costs what it did without them.
+ * When it is on, every operation adds its duration to a {@link LatencyHistogram} and
+ * the vertices whose friends it read and the edges it read to striped counters, all
+ * without locks.
+ *
+ * Operations lasting -Dgraph.metrics.slowMillis or more, 10 by default, also commit a
+ * {@link SlowQueryEvent} to Java Flight Recorder, and loads always commit a
+ * {@link LoadEvent}; both cost next to nothing unless a recording enables them, for
+ * example with -XX:StartFlightRecording. When recording is on, the report of
+ * {@link #printReport(PrintStream)} is printed to standard error at exit, and the
+ * JSON of {@link #toJson()} written to the file named by -Dgraph.metrics.dump if there
+ * is one.
+ */
+public final class Metrics {
+    /**
+     * System property switching recording on: -Dgraph.metrics=true
+     */
+    public static final String ENABLED_PROPERTY = "graph.metrics";
+    /**
+     * System property giving the milliseconds from which an operation is slow
+     */
+    public static final String SLOW_MILLIS_PROPERTY = "graph.metrics.slowMillis";
+    /**
+     * System property naming the file the JSON dump is written to at exit
+     */
+    public static final String DUMP_PROPERTY = "graph.metrics.dump";
+
+    /**
+     * Whether operations are recorded
+     */
+    public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong(SLOW_MILLIS_PROPERTY, 10));
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] PERCENTILE_KEYS = {"p50", "p90", "p99", "p999"};
+
+    /**
+     * Operations that are timed
+     */
+    public enum Operation {
+        LOAD, NEIGHBORS, VERTEX_INDEX, FRIENDS, FRIENDS_OF_FRIENDS, COMMON_FRIENDS, PATH, SUGGESTIONS,
+        POPULARITY, REMOVE_MEMBER, NAME_PREFIX, NAME_FUZZY;
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder vertices = new LongAdder();
+        final LongAdder edges = new LongAdder();
+
+        /**
+         * Name used in the report and the dump
+         * @return lower case name
+         */
+        public String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Metrics::dumpAtExit, "metrics-dump"));
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Starts timing an operation
+     * @return the current System.nanoTime(), or 0 when recording is off
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Ends timing an operation, committing a slow query event if it lasted long enough
+     * @param operation operation that ran
+     * @param start value returned by {@link #start()} when it began
+     * @param vertices number of vertices whose friends it read
+     * @param edges number of edges it read
+     */
+    public static void record(Operation operation, long start, long vertices, long edges) {
+        if (!ENABLED)
+            return;
+        long elapsed = System.nanoTime() - start;
+        operation.latency.record(elapsed);
+        operation.vertices.add(vertices);
+        operation.edges.add(edges);
+        if (elapsed >= SLOW_NANOS) {
+            SlowQueryEvent event = new SlowQueryEvent();
+            if (event.isEnabled()) {
+                event.operation = operation.key();
+                event.elapsed = elapsed;
+                event.vertices = vertices;
+                event.edges = edges;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Ends timing a load, which is recorded as {@link Operation#LOAD} and always commits
+     * a load event
+     * @param source file or files the graph was read from
+     * @param start System.nanoTime() when the load began; unlike other operations a load
+     *              is timed whether recording is on or not
+     * @param vertices number of vertices read
+     * @param edges number of edges read
+     */
+    public static void loaded(String source, long start, long vertices, long edges) {
+        long elapsed = System.nanoTime() - start;
+        if (ENABLED) {
+            Operation.LOAD.latency.record(elapsed);
+            Operation.LOAD.vertices.add(vertices);
+            Operation.LOAD.edges.add(edges);
+        }
+        LoadEvent event = new LoadEvent();
+        if (event.isEnabled()) {
+            event.source = source;
+            event.elapsed = elapsed;
+            event.vertices = vertices;
+            event.edges = edges;
+            event.commit();
+        }
+    }
+
+    /**
+     * Latencies recorded for an operation
+     * @param operation operation
+     * @return its histogram of durations in nanoseconds
+     */
+    public static LatencyHistogram latency(Operation operation) {
+        return operation.latency;
+    }
+
+    /**
+     * Vertices whose friends an operation read, over all its calls
+     * @param operation operation
+     * @return vertex count
+     */
+    public static long vertices(Operation operation) {
+        return operation.vertices.sum();
+    }
+
+    /**
+     * Edges an operation read, over all its calls
+     * @param operation operation
+     * @return edge count
+     */
+    public static long edges(Operation operation) {
+        return operation.edges.sum();
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public static void reset() {
+        for (Operation operation : Operation.values()) {
+            operation.latency.reset();
+            operation.vertices.reset();
+            operation.edges.reset();
+        }
+    }
+
+    /**
+     * Prints a table of the operations called so far, with their latencies in microseconds
+     * and the vertices and edges they read per call
+     * @param out stream to print to
+     */
+    public static void printReport(PrintStream out) {
+        out.format("%-18s %12s %10s %10s %10s %10s %10s %10s %12s %12s%n", "operation (us)", "calls", "mean",
+                "p50", "p90", "p99", "p99.9", "max", "vertices", "edges");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = operation.latency;
+            long calls = latency.getCount();
+            if (calls == 0)
+                continue;
+            out.format("%-18s %,12d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %12.1f %12.1f%n", operation.key(), calls,
+                    latency.getMean() / 1e3, latency.getValueAtPercentile(PERCENTILES[0]) / 1e3,
+                    latency.getValueAtPercentile(PERCENTILES[1]) / 1e3, latency.getValueAtPercentile(PERCENTILES[2]) / 1e3,
+                    latency.getValueAtPercentile(PERCENTILES[3]) / 1e3, latency.getMax() / 1e3,
+                    (double) operation.vertices.sum() / calls, (double) operation.edges.sum() / calls);
+        }
+    }
+
+    /**
+     * Everything recorded so far as JSON: an object per operation called, with its call
+     * count, its mean, percentiles and maximum in nanoseconds, and the total vertices and
+     * edges it read
+     * @return JSON object
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\"enabled\":").append(ENABLED)
+                .append(",\"slowNanos\":").append(SLOW_NANOS).append(",\"operations\":{");
+        boolean first = true;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = operation.latency;
+            if (latency.getCount() == 0)
+                continue;
+            if (!first)
+                json.append(',');
+            first = false;
+            json.append('"').append(operation.key()).append("\":{\"calls\":").append(latency.getCount())
+                    .append(",\"meanNanos\":").append(Math.round(latency.getMean()));
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                json.append(",\"").append(PERCENTILE_KEYS[i]).append("Nanos\":")
+                        .append(latency.getValueAtPercentile(PERCENTILES[i]));
+            }
+            json.append(",\"maxNanos\":").append(latency.getMax())
+                    .append(",\"vertices\":").append(operation.vertices.sum())
+                    .append(",\"edges\":").append(operation.edges.sum()).append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Writes {@link #toJson()} to a file
+     * @param file file to write, replaced if it exists
+     * @throws IOException when the file cannot be written
+     */
+    public static void dump(Path file) throws IOException {
+        Files.write(file, toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void dumpAtExit() {
+        printReport(System.err);
+        String file = System.getProperty(DUMP_PROPERTY);
+        if (file == null)
+            return;
+        try {
+            dump(Paths.get(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A graph read from files
+     */
+    @Name("com.company.GraphLoad")
+    @Label("Graph Load")
+    @Category("Graph")
+    @Description("A graph read from text files or a snapshot")
+    static final class LoadEvent extends Event {
+        @Label("Source")
+        String source;
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        @Label("Vertices")
+        long vertices;
+        @Label("Edges")
+        long edges;
+    }
+
+    /**
+     * A graph operation that took at least the slow threshold
+     */
+    @Name("com.company.SlowQuery")
+    @Label("Slow Graph Query")
+    @Category("Graph")
+    @Description("A graph operation lasting at least graph.metrics.slowMillis")
+    static final class SlowQueryEvent extends Event {
+        @Label("Operation")
+        String operation;
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        @Label("Vertices Read")
+        long vertices;
+        @Label("Edges Read")
+        long edges;
+    }
+}
@@ -0,0 +1,636 @@
+package com.company;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Append only log of the changes made to a {@link Graph}, so that changes survive a
+ * restart without rewriting the files the graph was loaded from.
+ *
+ * The log follows the graph as a {@link GraphListener} and records every edge added or
+ * removed, label changed, vertex added or removed and compaction. Records are appended
+ * to a buffer in memory and written to the file in blocks; {@link #sync()} writes the
+ * buffer and forces the file to disk. Threads calling sync at the same time share one
+ * force (group commit), and {@link #startSyncing} forces on a background thread at a
+ * fixed period, so many changes pay for one fsync.
+ *
+ * Layout, all values big endian:
+ * <pre>
+ *   int    magic "GWAL"
+ *   int    format version
+ *   long   fingerprint of the base files the log applies to
+ *   long   fingerprint of the new base files of an unfinished checkpoint, 0 for none
+ *   blocks, each: int payload length, int CRC32C of the payload, payload
+ * </pre>
+ * A payload is a sequence of records, each one byte of operation followed by its fields:
+ * <pre>
+ *   EDGE_ADDED      int source, int target
+ *   EDGE_REMOVED    int source, int target
+ *   LABEL_CHANGED   int vertex, int length (-1 for null), UTF-8 label bytes
+ *   VERTEX_ADDED    int vertex, int length (-1 for null), UTF-8 label bytes
+ *   VERTEX_REMOVED  int vertex
+ *   COMPACTED
+ * </pre>
+ * {@link #open} replays the log onto the graph loaded from the base files. A block cut
+ * short or failing its checksum, as the last block of a crash can be, ends the replay and
+ * is cut off the file. {@link #checkpoint} writes the graph back to its base files and
+ * empties the log. The fingerprint is taken from the size and modification time of the
+ * base files. A checkpoint writes every new base file next to the old one first and
+ * records the fingerprint of the new files in the header before it moves any of them
+ * over the old ones; a move keeps the size and modification time. A log opened with
+ * such an intent in its header belongs to a checkpoint interrupted during or after the
+ * moves: {@link #recover}, called before the base files are loaded, moves the new files
+ * left over, and open then empties the log, which the new files contain, so a graph
+ * never comes back with some base files old and some new. A log
+ * without an intent whose fingerprint does not match was left for base files replaced
+ * some other way, and is emptied. Labels are recorded with toString() and replayed as
+ * Strings.
+ */
+public class MutationLog implements GraphListener, AutoCloseable {
+    /**
+     * File name extension used for logs
+     */
+    public static final String EXTENSION = ".wal";
+    /**
+     * "GWAL" in ASCII
+     */
+    static final int MAGIC = 0x4757414C;
+    /**
+     * Format version written by this class
+     */
+    static final int VERSION = 2;
+    /**
+     * Buffered bytes at which the appending thread writes a block without forcing it
+     */
+    public static final int BLOCK_BYTES = 1 << 20;
+
+    private static final int HEADER_BYTES = 24;
+    private static final int BLOCK_HEADER_BYTES = 8;
+
+    private static final byte EDGE_ADDED = 1;
+    private static final byte EDGE_REMOVED = 2;
+    private static final byte LABEL_CHANGED = 3;
+    private static final byte VERTEX_ADDED = 4;
+    private static final byte VERTEX_REMOVED = 5;
+    private static final byte COMPACTED = 6;
+
+    /**
+     * Writes a graph in the format of the files it was loaded from
+     */
+    @FunctionalInterface
+    public interface BaseWriter {
+        /**
+         * Writes the contents of the graph into new files standing for the base files
+         * @param g graph to write
+         * @param files one file per base file, in the order given to {@link #open}; the
+         *              log forces them to disk and moves them over the base files
+         * @throws IOException when a file cannot be written
+         */
+        void write(Graph g, Path... files) throws IOException;
+    }
+
+    private final Graph graph;
+    private final Path file;
+    private final Path[] base;
+    private final FileChannel channel;
+    private final long replayed;
+    /**
+     * Records appended but not yet written; guarded by this
+     */
+    private ByteBuffer pending = ByteBuffer.allocate(BLOCK_BYTES + 64);
+    private long appended;
+    /**
+     * Makes block writes and forces run one at a time; taken before this, never after
+     */
+    private final Object flushLock = new Object();
+    private ByteBuffer spare = ByteBuffer.allocate(BLOCK_BYTES + 64);
+    private long written;
+    private long durable;
+    private final CRC32C crc = new CRC32C();
+    private volatile IOException failure;
+    private ScheduledExecutorService syncer;
+
+    private MutationLog(Graph graph, Path file, Path[] base, FileChannel channel, long replayed) {
+        this.graph = graph;
+        this.file = file;
+        this.base = base;
+        this.channel = channel;
+        this.replayed = replayed;
+    }
+
+    /**
+     * Replays a log onto a graph just loaded from its base files and starts logging the
+     * changes of the graph. A missing log is created empty.
+     * @param file log file
+     * @param g graph as loaded from the base files, not yet changed
+     * @param base files the graph was loaded from, written again by {@link #checkpoint}
+     * @return the log, following g
+     * @throws IOException when the log cannot be read or written, holds a record that
+     *                     does not apply to the graph, or belongs to an interrupted
+     *                     checkpoint that {@link #recover} has not finished
+     */
+    public static MutationLog open(Path file, Graph g, Path... base) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long replayed = 0;
+            long[] header = channel.size() >= HEADER_BYTES ? readHeader(channel, file) : null;
+            long fingerprint = fingerprint(base);
+            if (header != null && header[1] != 0 && header[1] != fingerprint)
+                throw new IOException("Checkpoint of " + file + " was interrupted; recover it before loading the base files");
+            if (header != null && header[1] == 0 && header[0] == fingerprint) {
+                replayed = replay(channel, g, file);
+                for (Path written : temporaries(base)) {
+                    Files.deleteIfExists(written);
+                }
+            } else {
+                // Empty, or left behind by a checkpoint that replaced the base files already
+                channel.truncate(0);
+                writeHeader(channel, fingerprint, 0);
+                channel.force(false);
+            }
+            channel.position(channel.size());
+            MutationLog log = new MutationLog(g, file, base, channel, replayed);
+            g.addGraphListener(log);
+            return log;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finishes a checkpoint of a log that a crash interrupted while it was replacing the
+     * base files. Call before loading the graph the log is opened with, since the base
+     * files may change; does nothing when no checkpoint was interrupted or there is no log.
+     * @param file log file
+     * @param base files the graph is loaded from
+     * @throws IOException when the log cannot be read, or the base files do not end up as
+     *                     the checkpoint wrote them
+     */
+    public static void recover(Path file, Path... base) throws IOException {
+        if (!Files.exists(file))
+            return;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES)
+                return;
+            long target = readHeader(channel, file)[1];
+            if (target != 0)
+                finishCheckpoint(base, target, file);
+        }
+    }
+
+    /**
+     * Number of records replayed by {@link #open}
+     * @return record count
+     */
+    public long getReplayed() {
+        return replayed;
+    }
+
+    /**
+     * Number of records appended since the log was opened or last checkpointed
+     * @return record count
+     */
+    public synchronized long getAppended() {
+        return appended;
+    }
+
+    /**
+     * Number of appended records known to be on disk
+     * @return record count
+     */
+    public long getDurable() {
+        synchronized (flushLock) {
+            return durable;
+        }
+    }
+
+    /**
+     * Writes every record appended so far and forces it to disk. When several threads
+     * sync at once, the first one forces for all of them.
+     * @throws IOException when the log cannot be written
+     */
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        synchronized (flushLock) {
+            if (durable >= target)
+                return;
+            writeBlock();
+            channel.force(false);
+            durable = written;
+        }
+    }
+
+    /**
+     * Syncs on a background thread at a fixed period, so a crash loses at most one
+     * period of changes
+     * @param period time between syncs
+     * @param unit unit of period
+     */
+    public synchronized void startSyncing(long period, TimeUnit unit) {
+        if (syncer != null)
+            throw new IllegalStateException("Already syncing");
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mutation-log-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Writes the graph to its base files and empties the log. The base files keep no
+     * removed vertices, so a graph with removed vertices is compacted first and its vertex
+     * numbers change, see {@link Graph#compact()}; the writers of this package save the
+     * external ids with the graph, so those stay. The graph must not change while the
+     * checkpoint runs.
+     *
+     * Every base file is written next to itself, with ".tmp" appended to its name, and
+     * forced to disk; the fingerprint of the new files is recorded in the header; only
+     * then are they moved over the base files. A crash at any point leaves either the old
+     * base files with this log, or new files that {@link #open} completes.
+     * @param writer writes the graph into the files standing for the base files given to
+     *               {@link #open}
+     * @throws IOException when the base files or the log cannot be written
+     */
+    public void checkpoint(BaseWriter writer) throws IOException {
+        if (graph.vertexCount() < graph.size())
+            graph.compact();
+        sync();
+        Path[] newBase = temporaries(base);
+        writer.write(graph, newBase);
+        for (Path path : newBase) {
+            try (FileChannel newFile = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                newFile.force(true);
+            }
+        }
+        long target = fingerprint(newBase);
+        synchronized (flushLock) {
+            // The intent goes to disk before the first move, so a crash between two moves
+            // leaves a log that names the new base rather than one that does not apply
+            writeHeader(channel, fingerprint(base), target);
+            channel.force(false);
+            moveAll(newBase, base);
+            synchronized (this) {
+                pending.clear();
+                appended = 0;
+            }
+            // Drop the blocks before the header clears the intent, so a crash in between
+            // leaves an empty log rather than old blocks claiming to apply to the new base
+            channel.truncate(HEADER_BYTES);
+            channel.force(false);
+            writeHeader(channel, fingerprint(base), 0);
+            channel.force(false);
+            channel.position(HEADER_BYTES);
+            written = 0;
+            durable = 0;
+        }
+    }
+
+    /**
+     * Stops following the graph, syncs and closes the file
+     * @throws IOException when the last records cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (syncer != null) {
+                syncer.shutdown();
+                syncer = null;
+            }
+        }
+        graph.removeGraphListener(this);
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public void edgeAdded(int source, int target) {
+        append(EDGE_ADDED, source, target);
+    }
+
+    @Override
+    public void edgeRemoved(int source, int target) {
+        append(EDGE_REMOVED, source, target);
+    }
+
+    @Override
+    public void labelChanged(int vertex, Object oldLabel, Object newLabel) {
+        append(LABEL_CHANGED, vertex, newLabel);
+    }
+
+    @Override
+    public void vertexAdded(int vertex) {
+        append(VERTEX_ADDED, vertex, graph.getLabel(vertex));
+    }
+
+    @Override
+    public void vertexRemoved(int vertex) {
+        synchronized (this) {
+            reserve(5);
+            pending.put(VERTEX_REMOVED).putInt(vertex);
+            appended++;
+        }
+        afterAppend();
+    }
+
+    @Override
+    public void verticesRenumbered(int[] mapping, int size) {
+        synchronized (this) {
+            reserve(1);
+            pending.put(COMPACTED);
+            appended++;
+        }
+        afterAppend();
+    }
+
+    /**
+     * Fingerprint of the base files: their sizes and modification times
+     * @param base files the graph is loaded from
+     * @return fingerprint, 0 for no files
+     * @throws IOException when a file cannot be read
+     */
+    public static long fingerprint(Path... base) throws IOException {
+        long fingerprint = 0;
+        for (Path path : base) {
+            fingerprint = fingerprint * 31 + Files.size(path);
+            fingerprint = fingerprint * 31 + Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS);
+        }
+        return fingerprint;
+    }
+
+    private void append(byte operation, int source, int target) {
+        synchronized (this) {
+            reserve(9);
+            pending.put(operation).putInt(source).putInt(target);
+            appended++;
+        }
+        afterAppend();
+    }
+
+    private void append(byte operation, int vertex, Object label) {
+        byte[] bytes = label == null ? null : label.toString().getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            reserve(9 + (bytes == null ? 0 : bytes.length));
+            pending.put(operation).putInt(vertex);
+            if (bytes == null) {
+                pending.putInt(-1);
+            } else {
+                pending.putInt(bytes.length).put(bytes);
+            }
+            appended++;
+        }
+        afterAppend();
+    }
+
+    /**
+     * Makes room for one record in the pending buffer. Called holding this.
+     */
+    private void reserve(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+    }
+
+    /**
+     * Writes a full buffer as a block, and reports a failure of the background sync
+     */
+    private void afterAppend() {
+        IOException failed = failure;
+        if (failed != null)
+            throw new UncheckedIOException("Mutation log could not be synced", failed);
+        boolean full;
+        synchronized (this) {
+            full = pending.position() >= BLOCK_BYTES;
+        }
+        if (full) {
+            synchronized (flushLock) {
+                try {
+                    writeBlock();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the pending records as one block without forcing it. Called holding flushLock.
+     */
+    private void writeBlock() throws IOException {
+        ByteBuffer block;
+        long upTo;
+        synchronized (this) {
+            if (pending.position() == 0)
+                return;
+            block = pending;
+            upTo = appended;
+            spare.clear();
+            pending = spare;
+        }
+        block.flip();
+        crc.reset();
+        crc.update(block.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+        header.putInt(block.remaining()).putInt((int) crc.getValue()).flip();
+        ByteBuffer[] buffers = {header, block};
+        while (header.hasRemaining() || block.hasRemaining()) {
+            channel.write(buffers);
+        }
+        block.clear();
+        spare = block;
+        written = upTo;
+    }
+
+    /**
+     * Files a checkpoint writes the new base files to, one next to every base file
+     */
+    private static Path[] temporaries(Path[] base) {
+        Path[] written = new Path[base.length];
+        for (int i = 0; i < base.length; i++) {
+            written[i] = base[i].resolveSibling(base[i].getFileName() + ".tmp");
+        }
+        return written;
+    }
+
+    /**
+     * Moves every new base file that is still there over its base file and forces the
+     * directories, so the moves survive a crash
+     */
+    private static void moveAll(Path[] written, Path[] base) throws IOException {
+        for (int i = 0; i < base.length; i++) {
+            if (Files.exists(written[i]))
+                Files.move(written[i], base[i], StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (Path path : base) {
+            Path directory = path.toAbsolutePath().getParent();
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Not every platform opens directories; there a move is as durable as the file system makes it
+            }
+        }
+    }
+
+    /**
+     * Completes a checkpoint whose intent is in the header: its new base files were all
+     * on disk before the first move, so the ones not moved yet are moved now
+     * @param target fingerprint of the new base files recorded by the checkpoint
+     * @throws IOException when the base files do not end up as the checkpoint wrote them
+     */
+    private static void finishCheckpoint(Path[] base, long target, Path file) throws IOException {
+        moveAll(temporaries(base), base);
+        if (fingerprint(base) != target)
+            throw new IOException("Base files changed during an interrupted checkpoint of " + file);
+    }
+
+    private static void writeHeader(FileChannel channel, long fingerprint, long target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putLong(fingerprint).putLong(target).flip();
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * Reads the header
+     * @return the fingerprint of the base files, then the fingerprint of the new base files
+     *         of an unfinished checkpoint or 0
+     */
+    private static long[] readHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC)
+            throw new IOException("Not a mutation log: " + file);
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported mutation log version " + version + ": " + file);
+        return new long[]{header.getLong(), header.getLong()};
+    }
+
+    /**
+     * Applies every complete block to the graph and cuts off a torn last block
+     * @return number of records applied
+     */
+    private static long replay(FileChannel channel, Graph g, Path file) throws IOException {
+        long size = channel.size();
+        long position = HEADER_BYTES;
+        long records = 0;
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+        ByteBuffer block = ByteBuffer.allocate(0);
+        CRC32C crc = new CRC32C();
+        while (position + BLOCK_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + BLOCK_HEADER_BYTES + length > size)
+                break;
+            if (block.capacity() < length)
+                block = ByteBuffer.allocate(Math.max(length, block.capacity() * 2));
+            block.clear().limit(length);
+            readFully(channel, block, position + BLOCK_HEADER_BYTES);
+            block.flip();
+            crc.reset();
+            crc.update(block.duplicate());
+            if ((int) crc.getValue() != checksum)
+                break;
+
+            try {
+                while (block.hasRemaining()) {
+                    byte operation = block.get();
+                    switch (operation) {
+                        case EDGE_ADDED:
+                            g.addEdge(block.getInt(), block.getInt());
+                            break;
+                        case EDGE_REMOVED:
+                            g.removeEdge(block.getInt(), block.getInt());
+                            break;
+                        case LABEL_CHANGED: {
+                            int vertex = block.getInt();
+                            String label = readLabel(block);
+                            // The label of a vertex being added is replayed with VERTEX_ADDED
+                            if (vertex < g.size() && !g.isRemoved(vertex))
+                                g.setLabel(vertex, label);
+                            break;
+                        }
+                        case VERTEX_ADDED: {
+                            int vertex = block.getInt();
+                            int added = g.addVertex(readLabel(block));
+                            if (added != vertex)
+                                throw new IOException("Mutation log adds vertex " + vertex + " but the graph numbered it "
+                                        + added + ": " + file);
+                            break;
+                        }
+                        case VERTEX_REMOVED:
+                            g.removeVertex(block.getInt());
+                            break;
+                        case COMPACTED:
+                            g.compact();
+                            break;
+                        default:
+                            throw new IOException("Unknown mutation log record " + operation + ": " + file);
+                    }
+                    records++;
+                }
+            } catch (ArrayIndexOutOfBoundsException | BufferUnderflowException e) {
+                throw new IOException("Mutation log does not apply to the graph: " + file, e);
+            }
+            position += BLOCK_HEADER_BYTES + length;
+        }
+        if (position < size)
+            channel.truncate(position);
+        return records;
+    }
+
+    private static String readLabel(ByteBuffer block) {
+        int length = block.getInt();
+        if (length < 0)
+            return null;
+        if (length > block.remaining())
+            throw new BufferUnderflowException();
+        String label = new String(block.array(), block.arrayOffset() + block.position(), length, StandardCharsets.UTF_8);
+        block.position(block.position() + length);
+        return label;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of mutation log");
+            position += read;
+        }
+    }
+}
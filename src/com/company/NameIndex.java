@@ -0,0 +1,903 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Search of members by the beginning of their name or by a misspelled name.
+ *
+ * The names are kept once, formatted by {@link Main#reformatString(String)} like the
+ * names users type, in one sorted array with the vertex of every name in a parallel
+ * array. The names starting with a prefix are then a range of the array found by a
+ * binary search. The same array read as a trie, where the children of a node are
+ * the runs of names sharing one more character, drives the fuzzy search: a row of the
+ * edit distance table is computed per trie node and a branch is left as soon as no
+ * name below it can be close enough, so only the nodes near the query are read
+ * whatever the number of names. Distances count insertions, deletions, substitutions
+ * and swaps of two adjacent characters, ignoring case.
+ *
+ * Near the root every branch is close to any query, so with two edits or more a name
+ * is looked for twice: once from its beginning allowing only half the edits in the
+ * first half of the query, and once from its end, through a second order of the names
+ * sorted by their reversed text, allowing only half the edits in the second half. A
+ * name close enough has at most half its edits in one of the halves, so one of the
+ * searches finds it, and neither branches widely before the middle of the query.
+ *
+ * The index is built once from the labels a graph has, on a ForkJoinPool: the names are
+ * formatted in parallel chunks, each chunk is sorted and the sorted chunks are merged
+ * pairwise, once for each order. Members removed or renamed since are left out of the
+ * answers. A name set later, as when a member signs up, is added by {@link Graph#setLabel}
+ * to a short sorted list of recent names beside the arrays, which every search also reads
+ * and which stands for the older name of the member. Once it holds {@link #RECENT_LIMIT}
+ * names it is merged into the arrays on the thread changing the graph, placing each
+ * recent name by a binary search and dropping the names of removed or renamed members,
+ * so a sign-up never makes a search rebuild the index. An index is immutable,
+ * adding a name makes a new one, and it may be searched by several threads at once.
+ */
+public class NameIndex {
+    /**
+     * Names searched for when none is given
+     */
+    public static final int DEFAULT_COUNT = 10;
+    /**
+     * Edits a misspelled name may be away from the name it is meant to be
+     */
+    public static final int DEFAULT_MAX_EDITS = 2;
+    /**
+     * Names formatted and sorted per task
+     */
+    private static final int CHUNK = 1 << 14;
+    /**
+     * Ranges sorted by insertion rather than merged
+     */
+    private static final int INSERTION_SORT = 16;
+    /**
+     * Recent names kept beside the arrays before they are merged into them
+     */
+    static final int RECENT_LIMIT = 1024;
+    private static final String[] NO_NAMES = {};
+    private static final int[] NO_VERTICES = {};
+
+    private final Graph graph;
+    /**
+     * Formatted names in ascending order
+     */
+    private final String[] names;
+    /**
+     * Vertex of every name
+     */
+    private final int[] vertices;
+    /**
+     * Positions of the names in the order of their reversed text
+     */
+    private final int[] reversed;
+    /**
+     * Names set since the arrays were built, in ascending order; their positions follow
+     * those of the arrays
+     */
+    private final String[] recentNames;
+    /**
+     * Vertex of every recent name
+     */
+    private final int[] recentVertices;
+    /**
+     * Vertices of the recent names in ascending order, whose names in the arrays are stale
+     */
+    private final int[] recentByVertex;
+
+    private NameIndex(Graph graph, String[] names, int[] vertices, int[] reversed) {
+        this(graph, names, vertices, reversed, NO_NAMES, NO_VERTICES, NO_VERTICES);
+    }
+
+    private NameIndex(Graph graph, String[] names, int[] vertices, int[] reversed,
+                      String[] recentNames, int[] recentVertices, int[] recentByVertex) {
+        this.graph = graph;
+        this.names = names;
+        this.vertices = vertices;
+        this.reversed = reversed;
+        this.recentNames = recentNames;
+        this.recentVertices = recentVertices;
+        this.recentByVertex = recentByVertex;
+    }
+
+    /**
+     * Indexes the labels of a graph. The graph must not change while it runs.
+     * @param graph graph whose labels are indexed; null labels are left out
+     * @param parallelism number of worker threads
+     * @return the index
+     */
+    public static NameIndex build(Graph graph, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        int n = graph.size();
+        String[] keys = new String[n];
+        int[] order = new int[n];
+        int[] counts = new int[(n + CHUNK - 1) / CHUNK];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(counts.length);
+        for (int c = 0; c < counts.length; c++) {
+            int chunk = c;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                int from = chunk * CHUNK;
+                int end = Math.min(n, from + CHUNK);
+                int at = from;
+                for (int v = from; v < end; v++) {
+                    Object label = graph.getLabel(v);
+                    if (label != null) {
+                        keys[v] = format(label);
+                        order[at++] = v;
+                    }
+                }
+                counts[chunk] = at - from;
+            }));
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            int size = 0;
+            for (int count : counts) {
+                size += count;
+            }
+            int[] vertices = Arrays.copyOf(pool.invoke(ForkJoinTask.adapt(() -> sort(order, counts,
+                    (a, b) -> compare(keys[a], keys[b], a, b)))), size);
+            String[] names = new String[size];
+            for (int i = 0; i < size; i++) {
+                names[i] = keys[vertices[i]];
+            }
+
+            int[] positions = new int[size];
+            int[] positionCounts = new int[(size + CHUNK - 1) / CHUNK];
+            for (int i = 0; i < size; i++) {
+                positions[i] = i;
+                positionCounts[i / CHUNK]++;
+            }
+            int[] reversed = Arrays.copyOf(pool.invoke(ForkJoinTask.adapt(() -> sort(positions, positionCounts,
+                    (a, b) -> compareReversed(names[a], names[b], a, b)))), size);
+            return new NameIndex(graph, names, vertices, reversed);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The same index reading the labels of a copy of its graph
+     * @param copy clone of the graph the index was built from
+     * @return index sharing these arrays
+     */
+    NameIndex forGraph(Graph copy) {
+        return new NameIndex(copy, names, vertices, reversed, recentNames, recentVertices, recentByVertex);
+    }
+
+    /**
+     * The index with the label a vertex of its graph was just given, among the recent
+     * names, merged into the arrays when there are enough of them
+     * @param vertex vertex whose label was set, not null
+     * @return index finding the vertex under its new name
+     */
+    NameIndex withName(int vertex) {
+        String name = format(graph.getLabel(vertex));
+        int recent = recentNames.length;
+        int old = -1;
+        if (Arrays.binarySearch(recentByVertex, vertex) >= 0) {
+            old = 0;
+            while (recentVertices[old] != vertex)
+                old++;
+        }
+        int size = old < 0 ? recent + 1 : recent;
+        String[] addedNames = new String[size];
+        int[] addedVertices = new int[size];
+        int at = 0;
+        boolean placed = false;
+        for (int r = 0; r < recent; r++) {
+            if (r == old)
+                continue;
+            if (!placed && compare(name, recentNames[r], vertex, recentVertices[r]) < 0) {
+                addedNames[at] = name;
+                addedVertices[at++] = vertex;
+                placed = true;
+            }
+            addedNames[at] = recentNames[r];
+            addedVertices[at++] = recentVertices[r];
+        }
+        if (!placed) {
+            addedNames[at] = name;
+            addedVertices[at] = vertex;
+        }
+        int[] byVertex = addedVertices.clone();
+        Arrays.sort(byVertex);
+        NameIndex answer = new NameIndex(graph, names, vertices, reversed, addedNames, addedVertices, byVertex);
+        return size < RECENT_LIMIT ? answer : answer.merged();
+    }
+
+    /**
+     * The index with its vertices renumbered as {@link Graph#compact()} does
+     * @param mapping new number of every vertex, -1 for a removed one
+     * @return index of the renumbered graph, without the names of the removed vertices
+     */
+    NameIndex renumbered(int[] mapping) {
+        int[] moved = new int[names.length];
+        int size = 0;
+        for (int i = 0; i < names.length; i++) {
+            moved[i] = mapping[vertices[i]] >= 0 ? size++ : -1;
+        }
+        String[] keptNames = new String[size];
+        int[] keptVertices = new int[size];
+        for (int i = 0; i < names.length; i++) {
+            if (moved[i] >= 0) {
+                keptNames[moved[i]] = names[i];
+                keptVertices[moved[i]] = mapping[vertices[i]];
+            }
+        }
+        int[] keptReversed = new int[size];
+        int at = 0;
+        for (int position : reversed) {
+            if (moved[position] >= 0)
+                keptReversed[at++] = moved[position];
+        }
+
+        int recent = 0;
+        for (int vertex : recentVertices) {
+            if (mapping[vertex] >= 0)
+                recent++;
+        }
+        String[] keptRecentNames = new String[recent];
+        int[] keptRecentVertices = new int[recent];
+        at = 0;
+        for (int r = 0; r < recentNames.length; r++) {
+            if (mapping[recentVertices[r]] >= 0) {
+                keptRecentNames[at] = recentNames[r];
+                keptRecentVertices[at++] = mapping[recentVertices[r]];
+            }
+        }
+        int[] byVertex = keptRecentVertices.clone();
+        Arrays.sort(byVertex);
+        return new NameIndex(graph, keptNames, keptVertices, keptReversed, keptRecentNames, keptRecentVertices,
+                byVertex);
+    }
+
+    /**
+     * Number of names indexed, including the recent ones and those no longer current
+     * @return name count
+     */
+    public int size() {
+        return names.length + recentNames.length;
+    }
+
+    /**
+     * Members whose name starts with a prefix
+     * @param prefix beginning of a name, formatted by {@link Main#reformatString(String)} here
+     * @param k largest number of members
+     * @return vertex numbers of the first k members in the order of their names
+     */
+    public int[] startingWith(String prefix, int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("Match count must not be negative: " + k);
+        String key = Main.reformatString(prefix);
+        int[] answer = new int[Math.min(k, size())];
+        int count = 0;
+        int i = lowerBound(names, key);
+        int r = lowerBound(recentNames, key);
+        while (count < answer.length) {
+            boolean inNames = i < names.length && names[i].startsWith(key);
+            boolean inRecent = r < recentNames.length && recentNames[r].startsWith(key);
+            if (!inNames && !inRecent)
+                break;
+            int position;
+            if (inNames && (!inRecent || compare(names[i], recentNames[r], vertices[i], recentVertices[r]) < 0))
+                position = i++;
+            else
+                position = names.length + r++;
+            if (isCurrent(position))
+                answer[count++] = vertex(position);
+        }
+        return Arrays.copyOf(answer, count);
+    }
+
+    /**
+     * Members whose name is within a few edits of a name
+     * @param name name as typed, formatted by {@link Main#reformatString(String)} here
+     * @param maxEdits largest number of edits, where an edit inserts, deletes or replaces a
+     *                 character or swaps two adjacent ones
+     * @param k largest number of members
+     * @return vertex numbers of the k closest members, closest first and then in the
+     *         order of their names
+     */
+    public int[] closestTo(String name, int maxEdits, int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("Match count must not be negative: " + k);
+        if (maxEdits < 0)
+            throw new IllegalArgumentException("Edit count must not be negative: " + maxEdits);
+        Search search = new Search(Main.reformatString(name), maxEdits, k);
+        if (k > 0 && size() > 0)
+            search.run();
+        return search.result();
+    }
+
+    /**
+     * Edit distance of two names formatted alike, with the measure of {@link #closestTo}
+     * @param first first name
+     * @param second second name
+     * @return number of edits turning one into the other
+     */
+    public static int distance(String first, String second) {
+        char[] columns = lowerCase(first);
+        int[][] rows = new int[second.length() + 1][columns.length + 2];
+        for (int j = 0; j <= columns.length; j++) {
+            rows[0][j] = j;
+        }
+        int band = Math.max(columns.length, second.length());
+        for (int i = 1; i <= second.length(); i++) {
+            nextRow(rows, i, columns, second.charAt(i - 1), i > 1 ? second.charAt(i - 2) : 0, band);
+        }
+        return rows[second.length()][columns.length];
+    }
+
+    /**
+     * Fills row i of the edit distance table of a query against a name from the rows before it.
+     * Only the cells at most band columns off the diagonal are computed, the only ones that
+     * can hold band or less; the cell on each side of them is set above band.
+     * @param rows table, row i - 1 filled, with one column more than the query needs
+     * @param i length of the name prefix
+     * @param query query in lower case, as columns
+     * @param c character i - 1 of the name
+     * @param previous character i - 2 of the name, unused when i is 1
+     * @param band largest distance of interest
+     * @return smallest value of the row, or more than band
+     */
+    private static int nextRow(int[][] rows, int i, char[] query, char c, char previous, int band) {
+        int[] above = rows[i - 1];
+        int[] row = rows[i];
+        int from = Math.max(1, i - band);
+        int to = Math.min(query.length, i + band);
+        int min = band + 1;
+        row[from - 1] = from == 1 ? i : band + 1;
+        if (from == 1)
+            min = Math.min(min, i);
+        row[to + 1] = band + 1;
+        char lower = Character.toLowerCase(c);
+        char lowerPrevious = Character.toLowerCase(previous);
+        for (int j = from; j <= to; j++) {
+            char q = query[j - 1];
+            int cost = q == lower ? 0 : 1;
+            int value = Math.min(above[j - 1] + cost, Math.min(above[j], row[j - 1]) + 1);
+            if (cost == 1 && i > 1 && j > 1 && q == lowerPrevious && query[j - 2] == lower)
+                value = Math.min(value, rows[i - 2][j - 2] + 1);
+            row[j] = value;
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    /**
+     * Characters of a text in lower case one by one, so they stay as many
+     */
+    private static char[] lowerCase(String text) {
+        char[] answer = text.toCharArray();
+        for (int i = 0; i < answer.length; i++) {
+            answer[i] = Character.toLowerCase(answer[i]);
+        }
+        return answer;
+    }
+
+    private static String format(Object label) {
+        String text = String.valueOf(label);
+        String formatted = Main.reformatString(text);
+        //Labels read from the files are usually formatted already; keep a single copy
+        return formatted.equals(text) ? text : formatted;
+    }
+
+    private static int compare(String first, String second, int a, int b) {
+        int order = first.compareTo(second);
+        return order != 0 ? order : Integer.compare(a, b);
+    }
+
+    private static int compareReversed(String first, String second, int a, int b) {
+        int common = Math.min(first.length(), second.length());
+        for (int i = 1; i <= common; i++) {
+            int order = Character.compare(first.charAt(first.length() - i), second.charAt(second.length() - i));
+            if (order != 0)
+                return order;
+        }
+        int order = Integer.compare(first.length(), second.length());
+        return order != 0 ? order : Integer.compare(a, b);
+    }
+
+    /**
+     * Sorts chunks of items in parallel, then merges the sorted chunks pairwise, each round
+     * in parallel, until one run is left. Runs in a ForkJoinPool.
+     * @param items chunks of CHUNK items, the first counts[c] of chunk c to be sorted
+     * @param counts number of items of every chunk
+     * @param order comparison of two items
+     * @return the items or an array of the same length holding all the items of the chunks
+     *         in order, packed at its start
+     */
+    private static int[] sort(int[] items, int[] counts, IntBinaryOperator order) {
+        int runs = counts.length;
+        int[] starts = new int[runs];
+        int[] ends = new int[runs];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(runs);
+        for (int c = 0; c < runs; c++) {
+            int start = c * CHUNK;
+            int end = start + counts[c];
+            starts[c] = start;
+            ends[c] = end;
+            tasks.add(ForkJoinTask.adapt(() -> sort(items, start, end, new int[(end - start + 1) / 2], order)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        int[] from = items;
+        int[] to = new int[items.length];
+        while (runs > 1) {
+            int[] source = from;
+            int[] target = to;
+            int pairs = (runs + 1) / 2;
+            int[] mergedStarts = new int[pairs];
+            int[] mergedEnds = new int[pairs];
+            tasks.clear();
+            for (int p = 0; p < pairs; p++) {
+                int left = 2 * p;
+                boolean single = left + 1 == runs;
+                int iStart = starts[left];
+                int iEnd = ends[left];
+                int jStart = single ? 0 : starts[left + 1];
+                int jEnd = single ? 0 : ends[left + 1];
+                //The merged run starts where the left one did; the chunks leave room up to the next pair
+                mergedStarts[p] = iStart;
+                mergedEnds[p] = iStart + (iEnd - iStart) + (jEnd - jStart);
+                tasks.add(ForkJoinTask.adapt(() ->
+                        merge(source, iStart, iEnd, source, jStart, jEnd, target, iStart, order)));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            starts = mergedStarts;
+            ends = mergedEnds;
+            runs = pairs;
+            from = target;
+            to = source;
+        }
+        if (runs == 1 && starts[0] > 0)
+            System.arraycopy(from, starts[0], from, 0, ends[0] - starts[0]);
+        return from;
+    }
+
+    /**
+     * Merge sort of a range of items
+     * @param temp room for half the items, rounded up
+     */
+    private static void sort(int[] items, int from, int to, int[] temp, IntBinaryOperator order) {
+        if (to - from <= INSERTION_SORT) {
+            for (int i = from + 1; i < to; i++) {
+                int item = items[i];
+                int j = i;
+                while (j > from && order.applyAsInt(items[j - 1], item) > 0) {
+                    items[j] = items[j - 1];
+                    j--;
+                }
+                items[j] = item;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(items, from, middle, temp, order);
+        sort(items, middle, to, temp, order);
+        if (order.applyAsInt(items[middle - 1], items[middle]) <= 0)
+            return;
+        //The second half is merged in place: the merged items never overtake it
+        System.arraycopy(items, from, temp, 0, middle - from);
+        merge(temp, 0, middle - from, items, middle, to, items, from, order);
+    }
+
+    private static void merge(int[] first, int i, int iEnd, int[] second, int j, int jEnd, int[] target, int at,
+                              IntBinaryOperator order) {
+        while (i < iEnd && j < jEnd) {
+            target[at++] = order.applyAsInt(first[i], second[j]) <= 0 ? first[i++] : second[j++];
+        }
+        while (i < iEnd) {
+            target[at++] = first[i++];
+        }
+        while (j < jEnd) {
+            target[at++] = second[j++];
+        }
+    }
+
+    /**
+     * The index with the recent names merged into the arrays, in time linear in the number
+     * of names. The names of members removed, left without a label or
+     * given a recent name are left out; a rename always leaves a recent name, so no label
+     * needs formatting again. Reads the graph, so it runs on the thread changing it.
+     */
+    private NameIndex merged() {
+        int total = size();
+        String[] mergedNames = new String[total];
+        int[] mergedVertices = new int[total];
+        int[] moved = new int[total];
+        int size = 0;
+        int i = 0;
+        for (int r = 0; r <= recentNames.length; r++) {
+            //The names of the arrays before the next recent one, found by a binary search, so
+            //only the recent names are compared
+            int end = r == recentNames.length ? names.length : after(recentNames[r], recentVertices[r], i);
+            for (; i < end; i++) {
+                size = keep(i, size, mergedNames, mergedVertices, moved);
+            }
+            if (r < recentNames.length)
+                size = keep(names.length + r, size, mergedNames, mergedVertices, moved);
+        }
+
+        //The names kept from the arrays stay in their reversed order; only the recent ones are sorted
+        IntBinaryOperator order = (a, b) -> compareReversed(mergedNames[a], mergedNames[b], a, b);
+        int[] kept = new int[size];
+        int keptCount = 0;
+        for (int position : reversed) {
+            if (moved[position] >= 0)
+                kept[keptCount++] = moved[position];
+        }
+        int[] added = new int[size - keptCount];
+        int addedCount = 0;
+        for (int position = names.length; position < total; position++) {
+            if (moved[position] >= 0)
+                added[addedCount++] = moved[position];
+        }
+        sort(added, 0, addedCount, new int[(addedCount + 1) / 2], order);
+        int[] mergedReversed = new int[size];
+        mergeFew(kept, keptCount, added, addedCount, mergedReversed, order);
+        return new NameIndex(graph, Arrays.copyOf(mergedNames, size), Arrays.copyOf(mergedVertices, size),
+                mergedReversed);
+    }
+
+    /**
+     * Copies the name at a position to the next place of a merge if it is kept
+     * @return the next place after it
+     */
+    private int keep(int position, int at, String[] mergedNames, int[] mergedVertices, int[] moved) {
+        if (!isKept(position)) {
+            moved[position] = -1;
+            return at;
+        }
+        moved[position] = at;
+        mergedNames[at] = name(position);
+        mergedVertices[at] = vertex(position);
+        return at + 1;
+    }
+
+    /**
+     * First position from a start on whose name comes after a name and vertex
+     */
+    private int after(String name, int vertex, int from) {
+        int low = from;
+        int high = names.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(names[middle], name, vertices[middle], vertex) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Merges a few sorted items into many, placing each of the few by a binary search and
+     * copying the runs of the many between them
+     */
+    private static void mergeFew(int[] many, int manyCount, int[] few, int fewCount, int[] target,
+                                 IntBinaryOperator order) {
+        int from = 0;
+        int at = 0;
+        for (int f = 0; f < fewCount; f++) {
+            int low = from;
+            int high = manyCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (order.applyAsInt(many[middle], few[f]) < 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            System.arraycopy(many, from, target, at, low - from);
+            at += low - from;
+            target[at++] = few[f];
+            from = low;
+        }
+        System.arraycopy(many, from, target, at, manyCount - from);
+    }
+
+    /**
+     * Whether the name at a position may still be current, from the checks that need no
+     * formatting of its label
+     */
+    private boolean isKept(int position) {
+        int vertex = vertex(position);
+        if (vertex >= graph.size() || graph.isRemoved(vertex) || graph.getLabel(vertex) == null)
+            return false;
+        return position >= names.length || recentByVertex.length == 0
+                || Arrays.binarySearch(recentByVertex, vertex) < 0;
+    }
+
+    /**
+     * Name at a position, the recent names following those of the arrays
+     */
+    private String name(int position) {
+        return position < names.length ? names[position] : recentNames[position - names.length];
+    }
+
+    /**
+     * Vertex of the name at a position
+     */
+    private int vertex(int position) {
+        return position < names.length ? vertices[position] : recentVertices[position - names.length];
+    }
+
+    /**
+     * Order of two positions by name, then vertex, as the names are sorted
+     */
+    private int order(int a, int b) {
+        if (a < names.length && b < names.length)
+            return Integer.compare(a, b);
+        return compare(name(a), name(b), vertex(a), vertex(b));
+    }
+
+    /**
+     * First position of a sorted array whose name is not below a key
+     */
+    private static int lowerBound(String[] names, String key) {
+        int low = 0;
+        int high = names.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (names[middle].compareTo(key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Whether the member at a position still has the name it was indexed under, and was
+     * not given a recent name since
+     */
+    private boolean isCurrent(int position) {
+        if (!isKept(position))
+            return false;
+        Object label = graph.getLabel(vertex(position));
+        String name = name(position);
+        return label == name || label != null && format(label).equals(name);
+    }
+
+    /**
+     * State of one fuzzy search: the rows of the edit distance table along the current
+     * trie path and the best matches so far, in a bounded max-heap on distance, then position
+     */
+    private final class Search {
+        private final char[] forward;
+        private final int maxEdits;
+        private final int[][] rows;
+        private final int[] heapPositions;
+        private final int[] heapDistances;
+        private int count;
+        /**
+         * Query of the current pass, reversed when the names are read from their end
+         */
+        private char[] query;
+        private boolean backward;
+        /**
+         * Length of the half of the query that may take at most halfEdits edits
+         */
+        private int split;
+        private int halfEdits;
+
+        Search(String query, int maxEdits, int k) {
+            this.forward = lowerCase(query);
+            this.maxEdits = maxEdits;
+            //Names more than maxEdits longer than the query are too far whatever they hold
+            this.rows = new int[forward.length + maxEdits + 1][];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new int[forward.length + 2];
+            }
+            for (int j = 0; j <= forward.length; j++) {
+                rows[0][j] = j;
+            }
+            heapPositions = new int[Math.min(k, size())];
+            heapDistances = new int[heapPositions.length];
+        }
+
+        void run() {
+            query = forward;
+            //A swap across the middle takes an edit in each half, so the two halves take at
+            //most maxEdits + 1 edits together and one of them at most half of that
+            halfEdits = (maxEdits + 1) / 2;
+            if (halfEdits == maxEdits) {
+                visit(0, names.length, 0, true);
+                visitRecent();
+                return;
+            }
+            split = forward.length / 2;
+            visit(0, names.length, 0, false);
+            backward = true;
+            query = new char[forward.length];
+            for (int j = 0; j < query.length; j++) {
+                query[j] = forward[forward.length - 1 - j];
+            }
+            split = forward.length - split;
+            visit(0, names.length, 0, false);
+            visitRecent();
+        }
+
+        /**
+         * Measures the recent names one by one, leaving a name as soon as a row of its
+         * table is too far
+         */
+        private void visitRecent() {
+            for (int r = 0; r < recentNames.length; r++) {
+                String name = recentNames[r];
+                if (Math.abs(name.length() - forward.length) > maxEdits)
+                    continue;
+                int min = 0;
+                for (int i = 1; i <= name.length() && min <= maxEdits; i++) {
+                    min = nextRow(rows, i, forward, name.charAt(i - 1), i > 1 ? name.charAt(i - 2) : 0, maxEdits);
+                }
+                if (min <= maxEdits && rows[name.length()][forward.length] <= maxEdits)
+                    offer(names.length + r, rows[name.length()][forward.length]);
+            }
+        }
+
+        private int position(int index) {
+            return backward ? reversed[index] : index;
+        }
+
+        private char charAt(int index, int depth) {
+            String name = names[position(index)];
+            return backward ? name.charAt(name.length() - 1 - depth) : name.charAt(depth);
+        }
+
+        /**
+         * Largest distance still worth finding. The first pass visits the names in order, so
+         * once the heap is full a name only gets in by being strictly closer than the farthest
+         * kept; the second pass does not.
+         */
+        private int bound() {
+            if (count < heapPositions.length)
+                return maxEdits;
+            return backward ? heapDistances[0] : heapDistances[0] - 1;
+        }
+
+        /**
+         * Visits the trie node of the names in [low, high), which share their first depth
+         * characters; row depth of the table is filled for that prefix
+         * @param halfDone whether the half of the query before split is matched with at most
+         *                 halfEdits edits on this path
+         */
+        void visit(int low, int high, int depth, boolean halfDone) {
+            int[] row = rows[depth];
+            if (!halfDone && Math.abs(depth - split) <= halfEdits && row[split] <= halfEdits)
+                halfDone = true;
+            while (low < high && names[position(low)].length() == depth) {
+                if (halfDone && depth >= query.length - maxEdits && row[query.length] <= bound())
+                    offer(position(low), row[query.length]);
+                low++;
+            }
+            if (depth + 1 >= rows.length || !halfDone && depth + 1 > split + halfEdits)
+                return;
+            while (low < high) {
+                char c = charAt(low, depth);
+                int end = endOfRun(low, high, depth, c);
+                char previous = depth > 0 ? charAt(low, depth - 1) : 0;
+                if (nextRow(rows, depth + 1, query, c, previous, maxEdits) <= bound()
+                        && (halfDone || halfMin(depth + 1) <= halfEdits))
+                    visit(low, end, depth + 1, halfDone);
+                low = end;
+            }
+        }
+
+        /**
+         * Smallest cell of a row up to the split column, which the half of the query before
+         * split cannot beat on any name below
+         */
+        private int halfMin(int depth) {
+            int[] row = rows[depth];
+            int min = maxEdits + 1;
+            for (int j = Math.max(0, depth - maxEdits); j <= Math.min(split, depth + maxEdits); j++) {
+                min = Math.min(min, row[j]);
+            }
+            return min;
+        }
+
+        /**
+         * First index after low in [low, high) whose character at depth is above c,
+         * galloping since most runs are short
+         */
+        private int endOfRun(int low, int high, int depth, char c) {
+            int step = 1;
+            int below = low;
+            int above = low + 1;
+            while (above < high && charAt(above, depth) == c) {
+                below = above;
+                step <<= 1;
+                above = Math.min(high, low + step);
+            }
+            while (below + 1 < above) {
+                int middle = (below + above) >>> 1;
+                if (charAt(middle, depth) == c)
+                    below = middle;
+                else
+                    above = middle;
+            }
+            return above;
+        }
+
+        private void offer(int position, int distance) {
+            boolean full = count == heapPositions.length;
+            if (full && (distance > heapDistances[0] || distance == heapDistances[0] && order(position, heapPositions[0]) > 0))
+                return;
+            for (int i = 0; i < count; i++) {
+                //Found by both passes
+                if (heapPositions[i] == position)
+                    return;
+            }
+            if (!isCurrent(position))
+                return;
+            if (!full) {
+                heapPositions[count] = position;
+                heapDistances[count] = distance;
+                siftUp(count++);
+            } else {
+                heapPositions[0] = position;
+                heapDistances[0] = distance;
+                siftDown(0);
+            }
+        }
+
+        private boolean above(int a, int b) {
+            return heapDistances[a] != heapDistances[b] ? heapDistances[a] > heapDistances[b]
+                    : order(heapPositions[a], heapPositions[b]) > 0;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0 && above(i, (i - 1) / 2)) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < count; child++) {
+                    if (above(child, largest))
+                        largest = child;
+                }
+                if (largest == i)
+                    return;
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int position = heapPositions[a];
+            heapPositions[a] = heapPositions[b];
+            heapPositions[b] = position;
+            int distance = heapDistances[a];
+            heapDistances[a] = heapDistances[b];
+            heapDistances[b] = distance;
+        }
+
+        /**
+         * Vertices of the matches, closest first, emptying the heap
+         */
+        int[] result() {
+            int[] answer = new int[count];
+            for (int last = count - 1; last >= 0; last--) {
+                answer[last] = vertex(heapPositions[0]);
+                heapPositions[0] = heapPositions[last];
+                heapDistances[0] = heapDistances[last];
+                count = last;
+                siftDown(0);
+            }
+            return answer;
+        }
+    }
+}
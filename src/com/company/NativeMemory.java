@@ -0,0 +1,256 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Growable block of memory outside the Java heap, addressed with long byte offsets:
+ * direct buffers, or a file mapped read and write. Like {@link MappedPages} it is a
+ * sequence of pages of at most 1 GB, so it can hold more than a single buffer can.
+ * Values are kept in the native byte order.
+ *
+ * Below one page the memory is a single page that doubles when it grows; direct memory
+ * is then copied, a mapped file is only mapped again. From one page on it grows a page
+ * at a time and nothing is copied. An int or long never straddles two pages as long as
+ * it is stored at an offset that is a multiple of its size.
+ *
+ * Direct memory is given back when the object becomes unreachable and is collected;
+ * it counts against -XX:MaxDirectMemorySize, which defaults to the maximum heap size,
+ * mapped memory does not. Not thread safe for changes.
+ */
+public class NativeMemory {
+    /**
+     * log2 of the largest page size, 1 GB pages
+     */
+    static final int PAGE_SHIFT = MappedPages.PAGE_SHIFT;
+    static final long PAGE_BYTES = 1L << PAGE_SHIFT;
+    private static final long PAGE_MASK = PAGE_BYTES - 1;
+
+    /**
+     * File the pages are mapped from, null for direct memory
+     */
+    private final FileChannel channel;
+    private ByteBuffer[] pages;
+    /**
+     * The same pages read as ints, for bulk copies and views of int arrays
+     */
+    private IntBuffer[] intPages;
+    private long capacity;
+
+    private NativeMemory(FileChannel channel) {
+        this.channel = channel;
+        this.pages = new ByteBuffer[0];
+        this.intPages = new IntBuffer[0];
+    }
+
+    /**
+     * Allocates direct memory
+     * @param bytes initial capacity; the memory holds zeros
+     * @return the memory
+     */
+    public static NativeMemory allocate(long bytes) {
+        NativeMemory answer = new NativeMemory(null);
+        try {
+            answer.ensureCapacity(bytes);
+        } catch (IOException e) {
+            throw new AssertionError("Direct memory does no I/O", e);
+        }
+        return answer;
+    }
+
+    /**
+     * Maps a file, creating it or dropping what it held. The file is not deleted
+     * afterwards; the caller owns it.
+     * @param file file to map
+     * @param bytes initial capacity; the memory holds zeros
+     * @return the memory
+     * @throws IOException when the file cannot be created or mapped
+     */
+    public static NativeMemory map(Path file, long bytes) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        NativeMemory answer = new NativeMemory(channel);
+        try {
+            answer.ensureCapacity(bytes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return answer;
+    }
+
+    /**
+     * Number of bytes that can be addressed
+     * @return capacity in bytes
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Whether the memory is mapped from a file
+     * @return true for mapped memory, false for direct memory
+     */
+    public boolean isMapped() {
+        return channel != null;
+    }
+
+    /**
+     * Grows the memory to hold at least the given number of bytes, by doubling below one
+     * page and then by whole pages. The new bytes are zeros.
+     * @param bytes bytes needed
+     * @throws IOException when a mapped file cannot grow
+     */
+    public void ensureCapacity(long bytes) throws IOException {
+        if (bytes <= capacity)
+            return;
+        if (bytes <= PAGE_BYTES) {
+            long size = Math.min(PAGE_BYTES, Math.max(bytes, Math.max(64, capacity * 2)));
+            ByteBuffer page = newPage(0, size);
+            if (channel == null && capacity > 0)
+                page.put(0, pages[0], 0, (int) capacity);
+            setPages(new ByteBuffer[]{page});
+            capacity = size;
+            return;
+        }
+        int count = (int) ((bytes + PAGE_MASK) >>> PAGE_SHIFT);
+        ByteBuffer[] grown = new ByteBuffer[count];
+        //A single page smaller than a full one is replaced by a full one
+        int kept = capacity >= PAGE_BYTES ? pages.length : 0;
+        System.arraycopy(pages, 0, grown, 0, kept);
+        for (int i = kept; i < count; i++) {
+            grown[i] = newPage((long) i << PAGE_SHIFT, PAGE_BYTES);
+        }
+        if (kept == 0 && capacity > 0 && channel == null)
+            grown[0].put(0, pages[0], 0, (int) capacity);
+        setPages(grown);
+        capacity = (long) count << PAGE_SHIFT;
+    }
+
+    /**
+     * Reads an int stored at a multiple of 4
+     * @param offset byte offset
+     * @return the int
+     */
+    public int getInt(long offset) {
+        return pages[(int) (offset >>> PAGE_SHIFT)].getInt((int) (offset & PAGE_MASK));
+    }
+
+    /**
+     * Writes an int at a multiple of 4
+     * @param offset byte offset
+     * @param value the int
+     */
+    public void putInt(long offset, int value) {
+        pages[(int) (offset >>> PAGE_SHIFT)].putInt((int) (offset & PAGE_MASK), value);
+    }
+
+    /**
+     * Reads a long stored at a multiple of 8
+     * @param offset byte offset
+     * @return the long
+     */
+    public long getLong(long offset) {
+        return pages[(int) (offset >>> PAGE_SHIFT)].getLong((int) (offset & PAGE_MASK));
+    }
+
+    /**
+     * Writes a long at a multiple of 8
+     * @param offset byte offset
+     * @param value the long
+     */
+    public void putLong(long offset, long value) {
+        pages[(int) (offset >>> PAGE_SHIFT)].putLong((int) (offset & PAGE_MASK), value);
+    }
+
+    /**
+     * Copies ints stored at a multiple of 4 into an array
+     * @param offset byte offset of the first int
+     * @param dest destination array
+     * @param count number of ints
+     */
+    public void getInts(long offset, int[] dest, int count) {
+        int at = 0;
+        while (at < count) {
+            int page = (int) (offset >>> PAGE_SHIFT);
+            int index = (int) ((offset & PAGE_MASK) >>> 2);
+            int chunk = Math.min(count - at, intPages[page].limit() - index);
+            intPages[page].get(index, dest, at, chunk);
+            at += chunk;
+            offset += 4L * chunk;
+        }
+    }
+
+    /**
+     * Read only view of ints stored at a multiple of 4, without copying them
+     * @param offset byte offset of the first int
+     * @param count number of ints
+     * @return the view, or null when the ints straddle two pages
+     */
+    public IntBuffer intView(long offset, int count) {
+        int page = (int) (offset >>> PAGE_SHIFT);
+        int index = (int) ((offset & PAGE_MASK) >>> 2);
+        if (count > intPages[page].limit() - index)
+            return null;
+        return intPages[page].slice(index, count).asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies bytes within the memory; overlapping ranges are copied as if through a
+     * buffer in between
+     * @param from byte offset of the source
+     * @param to byte offset of the destination
+     * @param bytes number of bytes
+     */
+    public void copy(long from, long to, long bytes) {
+        //Moving a range up over itself has to start from its end
+        boolean backward = to > from && to < from + bytes;
+        while (bytes > 0) {
+            long source = backward ? from + bytes - 1 : from;
+            long dest = backward ? to + bytes - 1 : to;
+            int chunk = (int) Math.min(bytes, backward
+                    ? Math.min((source & PAGE_MASK) + 1, (dest & PAGE_MASK) + 1)
+                    : Math.min(pages[(int) (source >>> PAGE_SHIFT)].limit() - (source & PAGE_MASK),
+                            pages[(int) (dest >>> PAGE_SHIFT)].limit() - (dest & PAGE_MASK)));
+            if (backward) {
+                source -= chunk - 1;
+                dest -= chunk - 1;
+            }
+            pages[(int) (dest >>> PAGE_SHIFT)].put((int) (dest & PAGE_MASK), pages[(int) (source >>> PAGE_SHIFT)],
+                    (int) (source & PAGE_MASK), chunk);
+            if (!backward) {
+                from += chunk;
+                to += chunk;
+            }
+            bytes -= chunk;
+        }
+    }
+
+    /**
+     * Closes the file of mapped memory. The mapping stays valid until it is collected.
+     * @throws IOException when the file cannot be closed
+     */
+    public void close() throws IOException {
+        if (channel != null)
+            channel.close();
+    }
+
+    private ByteBuffer newPage(long start, long size) throws IOException {
+        ByteBuffer page = channel == null ? ByteBuffer.allocateDirect((int) size)
+                : channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        return page.order(ByteOrder.nativeOrder());
+    }
+
+    private void setPages(ByteBuffer[] pages) {
+        this.pages = pages;
+        intPages = new IntBuffer[pages.length];
+        for (int i = 0; i < pages.length; i++) {
+            intPages[i] = pages[i].asIntBuffer();
+        }
+    }
+}
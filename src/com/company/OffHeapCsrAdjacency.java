@@ -0,0 +1,330 @@
+package com.company;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+
+/**
+ * Compressed sparse row storage kept outside the Java heap, in {@link NativeMemory}.
+ * It works like {@link CsrAdjacency}, with sorted rows that move to the end of the
+ * targets with twice the room when they fill up, but the heap only holds a few fields
+ * whatever the size of the network, so the garbage collector never copies or scans
+ * the rows. Row starts are longs, so the total number of edges may exceed
+ * Integer.MAX_VALUE.
+ *
+ * Every vertex has 16 bytes in a table of direct memory: the index of its first target
+ * as a long, then its length and its capacity as ints. The targets are direct memory
+ * too, or a file mapped read and write for networks bigger than memory. A row is never
+ * placed across two 1 GB pages unless it is bigger than a page, so
+ * {@link #neighborView(int)} returns the row itself rather than a copy. A mapped file
+ * that cannot grow makes a change throw UncheckedIOException.
+ */
+public class OffHeapCsrAdjacency implements Adjacency {
+    private static final int ROW_BYTES = 16;
+    private static final long INTS_PER_PAGE = NativeMemory.PAGE_BYTES / 4;
+
+    /**
+     * Start, length and capacity of every row
+     */
+    private final NativeMemory rows;
+    /**
+     * Rows of edge targets
+     */
+    private final NativeMemory targets;
+    private int vertices;
+    /**
+     * Number of target slots reserved by some row
+     */
+    private long used;
+
+    /**
+     * Creates storage in direct memory with n vertices and no edges
+     * @param n number of vertices
+     */
+    public OffHeapCsrAdjacency(int n) {
+        this(n, NativeMemory.allocate(0));
+    }
+
+    /**
+     * Creates storage with n vertices and no edges whose targets are kept in a mapped file
+     * @param n number of vertices
+     * @param file file to map, created or replaced; the caller deletes it
+     * @throws IOException when the file cannot be created or mapped
+     */
+    public OffHeapCsrAdjacency(int n, Path file) throws IOException {
+        this(n, NativeMemory.map(file, 0));
+    }
+
+    private OffHeapCsrAdjacency(int n, NativeMemory targets) {
+        if (n < 0)
+            throw new NegativeArraySizeException(String.valueOf(n));
+        this.rows = NativeMemory.allocate((long) ROW_BYTES * n);
+        this.targets = targets;
+        this.vertices = n;
+    }
+
+    /**
+     * Copies another storage into direct memory, rows packed back to back
+     * @param edges storage to copy
+     * @return off heap storage holding the same edges
+     */
+    public static OffHeapCsrAdjacency copyOf(Adjacency edges) {
+        return copyOf(edges, null, edges.size(), new OffHeapCsrAdjacency(edges.size()));
+    }
+
+    /**
+     * Copies another storage into a mapped file, rows packed back to back
+     * @param edges storage to copy
+     * @param file file to map, created or replaced; the caller deletes it
+     * @return off heap storage holding the same edges
+     * @throws IOException when the file cannot be created or mapped
+     */
+    public static OffHeapCsrAdjacency copyOf(Adjacency edges, Path file) throws IOException {
+        return copyOf(edges, null, edges.size(), new OffHeapCsrAdjacency(edges.size(), file));
+    }
+
+    /**
+     * Copies the rows of the vertices that are kept, renumbered
+     * @param mapping new number of every vertex, -1 to drop it, or null to keep every vertex
+     */
+    private static OffHeapCsrAdjacency copyOf(Adjacency edges, int[] mapping, int size, OffHeapCsrAdjacency answer) {
+        int n = edges.size();
+        long total = 0;
+        for (int v = 0; v < n; v++) {
+            total += edges.degree(v);
+        }
+        grow(answer.targets, 4 * total);
+        int[] row = new int[16];
+        for (int v = 0; v < n; v++) {
+            int vertex = mapping == null ? v : mapping[v];
+            if (vertex < 0)
+                continue;
+            int degree = edges.degree(v);
+            if (degree > row.length)
+                row = new int[Math.max(degree, row.length * 2)];
+            int count = edges.neighbors(v, row);
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int target = mapping == null ? row[i] : mapping[row[i]];
+                if (target >= 0)
+                    row[kept++] = target;
+            }
+            long start = answer.place(kept);
+            for (int i = 0; i < kept; i++) {
+                answer.targets.putInt(4 * (start + i), row[i]);
+            }
+            answer.setRow(vertex, start, kept, kept);
+        }
+        return answer;
+    }
+
+    @Override
+    public int size() {
+        return vertices;
+    }
+
+    @Override
+    public int addVertex() {
+        grow(rows, (long) ROW_BYTES * (vertices + 1));
+        //An empty row with no room; the first edge relocates it
+        setRow(vertices, used, 0, 0);
+        return vertices++;
+    }
+
+    @Override
+    public boolean addEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        int position = find(source, target);
+        if (position >= 0)
+            return false;
+        position = -(position + 1);
+        int length = length(source);
+        if (length == capacity(source)) {
+            relocate(source, Math.max(4, capacity(source) * 2));
+        }
+        long start = start(source);
+        targets.copy(4 * (start + position), 4 * (start + position + 1), 4L * (length - position));
+        targets.putInt(4 * (start + position), target);
+        setLength(source, length + 1);
+        return true;
+    }
+
+    @Override
+    public boolean removeEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        int position = find(source, target);
+        if (position < 0)
+            return false;
+        long start = start(source);
+        int length = length(source);
+        targets.copy(4 * (start + position + 1), 4 * (start + position), 4L * (length - position - 1));
+        setLength(source, length - 1);
+        return true;
+    }
+
+    @Override
+    public boolean isEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        return find(source, target) >= 0;
+    }
+
+    @Override
+    public int degree(int vertex) {
+        checkVertex(vertex);
+        return length(vertex);
+    }
+
+    @Override
+    public int[] neighbors(int vertex) {
+        checkVertex(vertex);
+        int[] answer = new int[length(vertex)];
+        targets.getInts(4 * start(vertex), answer, answer.length);
+        return answer;
+    }
+
+    @Override
+    public int neighbors(int vertex, int[] buffer) {
+        checkVertex(vertex);
+        int length = length(vertex);
+        if (length > buffer.length)
+            throw new ArrayIndexOutOfBoundsException(length);
+        targets.getInts(4 * start(vertex), buffer, length);
+        return length;
+    }
+
+    @Override
+    public IntBuffer neighborView(int vertex) {
+        checkVertex(vertex);
+        int length = length(vertex);
+        IntBuffer view = length == 0 ? null : targets.intView(4 * start(vertex), length);
+        return view != null ? view : IntBuffer.wrap(neighbors(vertex)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies the edges into new direct memory, also when these targets are mapped from a file
+     */
+    @Override
+    public Adjacency copy() {
+        return copyOf(this);
+    }
+
+    /**
+     * Renumbers into new direct memory instead of the heap
+     */
+    @Override
+    public Adjacency renumber(int[] mapping, int size) {
+        return copyOf(this, mapping, size, new OffHeapCsrAdjacency(size));
+    }
+
+    /**
+     * Total number of edges stored
+     * @return edge count
+     */
+    public long edgeCount() {
+        long total = 0;
+        for (int v = 0; v < vertices; v++) {
+            total += length(v);
+        }
+        return total;
+    }
+
+    /**
+     * Whether the targets are mapped from a file
+     * @return true for a mapped file, false for direct memory
+     */
+    public boolean isMapped() {
+        return targets.isMapped();
+    }
+
+    /**
+     * Binary search for target in the row of source
+     * @param source row to search
+     * @param target vertex to find
+     * @return position in the row, or -(insertion point)-1 when absent
+     */
+    private int find(int source, int target) {
+        long start = start(source);
+        int low = 0;
+        int high = length(source) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = targets.getInt(4 * (start + middle));
+            if (value < target)
+                low = middle + 1;
+            else if (value > target)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Moves the row of a vertex to the end of the targets with a bigger capacity
+     * @param vertex vertex whose row is full
+     * @param capacity new capacity of the row
+     */
+    private void relocate(int vertex, int capacity) {
+        long start = place(capacity);
+        targets.copy(4 * start(vertex), 4 * start, 4L * length(vertex));
+        setRow(vertex, start, length(vertex), capacity);
+    }
+
+    /**
+     * Reserves room for a row at the end of the targets, skipping to the next page when
+     * the row would straddle two pages and fits in one
+     * @param capacity number of targets
+     * @return index of the first target of the room
+     */
+    private long place(int capacity) {
+        long start = used;
+        long pageEnd = (start / INTS_PER_PAGE + 1) * INTS_PER_PAGE;
+        if (start + capacity > pageEnd && capacity <= INTS_PER_PAGE)
+            start = pageEnd;
+        grow(targets, 4 * (start + capacity));
+        used = start + capacity;
+        return start;
+    }
+
+    private static void grow(NativeMemory memory, long bytes) {
+        if (bytes <= memory.capacity())
+            return;
+        try {
+            memory.ensureCapacity(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long start(int vertex) {
+        return rows.getLong((long) ROW_BYTES * vertex);
+    }
+
+    private int length(int vertex) {
+        return rows.getInt((long) ROW_BYTES * vertex + 8);
+    }
+
+    private int capacity(int vertex) {
+        return rows.getInt((long) ROW_BYTES * vertex + 12);
+    }
+
+    private void setLength(int vertex, int length) {
+        rows.putInt((long) ROW_BYTES * vertex + 8, length);
+    }
+
+    private void setRow(int vertex, long start, int length, int capacity) {
+        long at = (long) ROW_BYTES * vertex;
+        rows.putLong(at, start);
+        rows.putInt(at + 8, length);
+        rows.putInt(at + 12, capacity);
+    }
+
+    private void checkVertex(int vertex) {
+        if (vertex < 0 || vertex >= vertices)
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+}
@@ -0,0 +1,235 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * Shortest paths between two members of a {@link Graph}, found by a bidirectional
+ * breadth-first search: one search grows from each end, a whole level at a time, and the
+ * side whose next level costs less, counted in edges to read, is always the one grown.
+ * The searches stop at the first friendship joining them, which closes a shortest path,
+ * or once no path within the hop limit is left. The backward search follows edges from
+ * the target, so paths are exact for friendships, which are stored in both directions.
+ *
+ * Visited marks are epoch stamps and the frontiers and parents live in int arrays that
+ * are reused between searches, so once they have grown a search allocates nothing.
+ * A path finder is not thread safe.
+ */
+public class PathFinder {
+    /**
+     * Hop limit of the menu and batch queries: six degrees of separation
+     */
+    public static final int DEFAULT_MAX_HOPS = 6;
+
+    private static final int FORWARD = 0;
+    private static final int BACKWARD = 1;
+
+    private Graph graph;
+    /**
+     * Epoch shifted left by one, plus the side that reached the vertex
+     */
+    private int[] stamps;
+    /**
+     * Vertex each vertex was reached from, towards the end its side started at
+     */
+    private int[] parents;
+    private int epoch;
+    /**
+     * Current level of each side, then the level being built
+     */
+    private int[][] frontiers = {new int[16], new int[16]};
+    private final int[] frontierSizes = new int[2];
+    /**
+     * Edges leaving the current level of each side
+     */
+    private final long[] frontierEdges = new long[2];
+    private int[] next = new int[16];
+    private int[] row = new int[16];
+    private int meetForward;
+    private int meetBackward;
+    private int hops = -1;
+    private int source;
+    private int verticesRead;
+    private long edgesRead;
+
+    /**
+     * Creates a path finder for the graph
+     * @param graph graph to search
+     */
+    public PathFinder(Graph graph) {
+        this.graph = graph;
+        this.stamps = new int[graph.size()];
+        this.parents = new int[graph.size()];
+    }
+
+    /**
+     * Searches another graph from now on, such as a newer version of the same network,
+     * keeping the stamps, parents and frontiers grown so far. The last path is forgotten.
+     * @param graph graph to search
+     */
+    public void setGraph(Graph graph) {
+        this.graph = graph;
+        hops = -1;
+    }
+
+    /**
+     * Finds the number of hops on a shortest path between two members
+     * @param source first member vertex number
+     * @param target second member vertex number
+     * @param maxHops largest number of hops to look for
+     * @return hop count of a shortest path, 0 when source is target, or -1 when there is
+     *         no path of at most maxHops hops
+     * @throws ArrayIndexOutOfBoundsException when source or target is not a valid vertex number
+     */
+    public int search(int source, int target, int maxHops) {
+        checkVertex(source);
+        checkVertex(target);
+        nextEpoch();
+        this.source = source;
+        hops = -1;
+        verticesRead = 0;
+        edgesRead = 0;
+        if (source == target) {
+            meetForward = source;
+            meetBackward = -1;
+            hops = 0;
+            return hops;
+        }
+        start(FORWARD, source);
+        start(BACKWARD, target);
+
+        int depth = 0;
+        while (depth < maxHops && frontierSizes[FORWARD] > 0 && frontierSizes[BACKWARD] > 0) {
+            int side = frontierEdges[FORWARD] <= frontierEdges[BACKWARD] ? FORWARD : BACKWARD;
+            if (expand(side)) {
+                hops = depth + 1;
+                return hops;
+            }
+            depth++;
+        }
+        return hops;
+    }
+
+    /**
+     * Hop count found by the last search
+     * @return hops, or -1 if it found no path
+     */
+    public int getHops() {
+        return hops;
+    }
+
+    /**
+     * Number of vertices whose friends the last search read
+     * @return vertex count
+     */
+    public int getVerticesRead() {
+        return verticesRead;
+    }
+
+    /**
+     * Number of edges the last search read
+     * @return edge count
+     */
+    public long getEdgesRead() {
+        return edgesRead;
+    }
+
+    /**
+     * Members on the path found by the last search
+     * @return vertex numbers from the source to the target, empty if it found no path
+     */
+    public int[] path() {
+        if (hops < 0)
+            return new int[0];
+        int[] answer = new int[hops + 1];
+        int at = 0;
+        for (int v = meetForward; v != source; v = parents[v]) {
+            answer[at++] = v;
+        }
+        answer[at++] = source;
+        //The forward half was collected from the meeting point back to the source
+        for (int i = 0, j = at - 1; i < j; i++, j--) {
+            int swap = answer[i];
+            answer[i] = answer[j];
+            answer[j] = swap;
+        }
+        for (int v = meetBackward; at <= hops; v = parents[v]) {
+            answer[at++] = v;
+        }
+        return answer;
+    }
+
+    private void start(int side, int vertex) {
+        stamps[vertex] = epoch << 1 | side;
+        parents[vertex] = vertex;
+        frontiers[side][0] = vertex;
+        frontierSizes[side] = 1;
+        frontierEdges[side] = graph.degree(vertex);
+    }
+
+    /**
+     * Replaces the current level of one side by the next one
+     * @return true when an edge reached a vertex of the other side, which is then recorded
+     *         as the meeting point
+     */
+    private boolean expand(int side) {
+        int[] level = frontiers[side];
+        int size = frontierSizes[side];
+        int mine = epoch << 1 | side;
+        int theirs = epoch << 1 | (1 - side);
+        int nextSize = 0;
+        long nextEdges = 0;
+        for (int i = 0; i < size; i++) {
+            int vertex = level[i];
+            int degree = graph.degree(vertex);
+            if (degree > row.length)
+                row = new int[Math.max(degree, row.length * 2)];
+            int count = graph.neighbors(vertex, row);
+            verticesRead++;
+            edgesRead += count;
+            for (int j = 0; j < count; j++) {
+                int friend = row[j];
+                int stamp = stamps[friend];
+                if (stamp == theirs) {
+                    meetForward = side == FORWARD ? vertex : friend;
+                    meetBackward = side == FORWARD ? friend : vertex;
+                    return true;
+                }
+                if (stamp != mine) {
+                    stamps[friend] = mine;
+                    parents[friend] = vertex;
+                    if (nextSize == next.length)
+                        next = Arrays.copyOf(next, nextSize * 2);
+                    next[nextSize++] = friend;
+                    nextEdges += graph.degree(friend);
+                }
+            }
+        }
+        frontiers[side] = next;
+        next = level;
+        frontierSizes[side] = nextSize;
+        frontierEdges[side] = nextEdges;
+        return false;
+    }
+
+    private void checkVertex(int vertex) {
+        if (vertex < 0 || vertex >= graph.size())
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+
+    /**
+     * Starts a new search, clearing the stamps only when the epoch wraps around.
+     * The stamps grow by doubling when vertices have been added.
+     */
+    private void nextEpoch() {
+        if (stamps.length < graph.size()) {
+            int capacity = Math.max(graph.size(), stamps.length * 2);
+            stamps = Arrays.copyOf(stamps, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+        }
+        epoch++;
+        if (epoch == 1 << 30) {
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+    }
+}
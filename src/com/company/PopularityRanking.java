@@ -0,0 +1,281 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Members of a {@link Graph} ranked by number of friends, most first, then by name.
+ *
+ * Names are sorted once when the ranking is built. The ranking itself is a counting sort:
+ * the members are laid out in one array in buckets of equal degree, highest degree first.
+ * The bucket sizes come from the degree histogram the graph keeps, so building needs no
+ * count of its own. A change of degree moves a member to the neighboring bucket with one
+ * swap, so the ranking follows {@link Graph#addEdge} and {@link Graph#removeEdge} in O(1)
+ * through a {@link GraphListener}. The swap disturbs the name order inside the two buckets involved;
+ * they are re-sorted the next time a page that overlaps them is read.
+ *
+ * Removed members are moved behind the ranked ones in O(1) and are not ranked. Added
+ * members and renumbered vertices make the ranking rebuild itself at the next read.
+ * Label changes are not followed; call {@link #rebuild()} after renaming members.
+ * The ranking is not thread safe.
+ */
+public class PopularityRanking implements GraphListener {
+    private final Graph graph;
+    /**
+     * Ranked members in ranking order, followed by the removed members
+     */
+    private int[] order;
+    /**
+     * Number of ranked members, the removed ones start at order[live]
+     */
+    private int live;
+    /**
+     * True when members were added or renumbered since the last rebuild
+     */
+    private boolean stale;
+    /**
+     * position[v] is the index of member v in order
+     */
+    private int[] position;
+    /**
+     * bucketStart[d] is the index in order of the first member with d friends.
+     * Bucket d ends where bucket d-1 starts, and bucket 0 ends at live.
+     */
+    private int[] bucketStart;
+    /**
+     * sorted[d] is true while bucket d is in name order
+     */
+    private boolean[] sorted;
+    /**
+     * nameRank[v] is the position of member v in name order
+     */
+    private int[] nameRank;
+    /**
+     * byName[r] is the member at position r in name order
+     */
+    private int[] byName;
+
+    /**
+     * Ranks the members of the graph and follows its later edge changes
+     * @param graph graph to rank
+     */
+    public PopularityRanking(Graph graph) {
+        this.graph = graph;
+        rebuild();
+        graph.addGraphListener(this);
+    }
+
+    /**
+     * Stops following the changes of the graph
+     */
+    public void detach() {
+        graph.removeGraphListener(this);
+    }
+
+    /**
+     * Graph this ranking follows
+     * @return the graph
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Sorts the names again and recomputes the ranking from the degrees of the graph
+     */
+    public void rebuild() {
+        int n = graph.size();
+        Integer[] names = new Integer[n];
+        for (int v = 0; v < n; v++) {
+            names[v] = v;
+        }
+        Arrays.sort(names, (a, b) -> name(a).compareTo(name(b)));
+        byName = new int[n];
+        nameRank = new int[n];
+        for (int r = 0; r < n; r++) {
+            byName[r] = names[r];
+            nameRank[names[r]] = r;
+        }
+
+        //Counting sort of the members by degree, walking them in name order
+        int maxDegree = graph.maxDegree();
+        bucketStart = new int[maxDegree + 2];
+        int start = 0;
+        for (int d = maxDegree; d >= 0; d--) {
+            bucketStart[d] = start;
+            start += graph.degreeCount(d);
+        }
+        live = start;
+        order = new int[n];
+        position = new int[n];
+        int[] next = bucketStart.clone();
+        int removed = live;
+        for (int r = 0; r < n; r++) {
+            int v = byName[r];
+            position[v] = graph.isRemoved(v) ? removed++ : next[graph.degree(v)]++;
+            order[position[v]] = v;
+        }
+        sorted = new boolean[bucketStart.length];
+        Arrays.fill(sorted, true);
+        stale = false;
+    }
+
+    /**
+     * Number of ranked members
+     * @return member count
+     */
+    public int size() {
+        refresh();
+        return live;
+    }
+
+    /**
+     * Number of friends of a member
+     * @param vertex member vertex number
+     * @return friend count
+     */
+    public int degree(int vertex) {
+        return graph.degree(vertex);
+    }
+
+    /**
+     * Rank of a member
+     * @param vertex member vertex number
+     * @return zero based rank, 0 being the most popular, or -1 for a removed member
+     */
+    public int rankOf(int vertex) {
+        refresh();
+        if (position[vertex] >= live)
+            return -1;
+        sortBucket(graph.degree(vertex));
+        return position[vertex];
+    }
+
+    /**
+     * Writes a page of the ranking
+     * @param from rank of the first member of the page
+     * @param out receives the vertex numbers of the page in rank order
+     * @return number of members written, less than out.length at the end of the ranking
+     */
+    public int page(int from, int[] out) {
+        refresh();
+        int to = Math.min(live, from + out.length);
+        if (from >= to)
+            return 0;
+        //Name order is restored in the buckets overlapping the page
+        for (int d = graph.degree(order[from]); d >= graph.degree(order[to - 1]); d--) {
+            sortBucket(d);
+        }
+        System.arraycopy(order, from, out, 0, to - from);
+        return to - from;
+    }
+
+    /**
+     * Top members as {@link People}
+     * @param from rank of the first member of the page
+     * @param count largest number of members to return
+     * @return members of the page in rank order
+     */
+    public List<People> top(int from, int count) {
+        refresh();
+        int[] page = new int[Math.max(0, Math.min(count, live - from))];
+        int length = page(from, page);
+        List<People> answer = new ArrayList<People>(length);
+        for (int i = 0; i < length; i++) {
+            answer.add(new People(page[i], name(page[i]), graph.degree(page[i])));
+        }
+        return answer;
+    }
+
+    @Override
+    public void edgeAdded(int source, int target) {
+        if (stale)
+            return;
+        //The graph has counted the edge already
+        int d = graph.degree(source) - 1;
+        if (d + 2 >= bucketStart.length) {
+            //A new highest degree, its bucket starts empty at the front
+            bucketStart = Arrays.copyOf(bucketStart, bucketStart.length * 2);
+            sorted = Arrays.copyOf(sorted, bucketStart.length);
+        }
+        //Swap the member with the first member of its bucket, then give that slot to bucket d+1
+        int first = bucketStart[d];
+        swap(position[source], first);
+        bucketStart[d]++;
+        sorted[d] = false;
+        sorted[d + 1] = false;
+    }
+
+    @Override
+    public void edgeRemoved(int source, int target) {
+        if (stale)
+            return;
+        int d = graph.degree(source) + 1;
+        //Swap the member with the last member of its bucket, then give that slot to bucket d-1
+        int last = bucketStart[d - 1] - 1;
+        swap(position[source], last);
+        bucketStart[d - 1]--;
+        sorted[d] = false;
+        sorted[d - 1] = false;
+    }
+
+    @Override
+    public void vertexRemoved(int vertex) {
+        if (stale)
+            return;
+        //The member has no friends left, so it is in bucket 0, which ends at live
+        swap(position[vertex], live - 1);
+        live--;
+        sorted[0] = false;
+    }
+
+    @Override
+    public void vertexAdded(int vertex) {
+        stale = true;
+    }
+
+    @Override
+    public void verticesRenumbered(int[] mapping, int size) {
+        stale = true;
+    }
+
+    private void refresh() {
+        if (stale)
+            rebuild();
+    }
+
+    private void swap(int i, int j) {
+        int a = order[i];
+        int b = order[j];
+        order[i] = b;
+        order[j] = a;
+        position[b] = i;
+        position[a] = j;
+    }
+
+    /**
+     * Restores name order inside a bucket by sorting the name ranks of its members
+     * @param d degree of the bucket
+     */
+    private void sortBucket(int d) {
+        if (sorted[d])
+            return;
+        int start = bucketStart[d];
+        int end = d == 0 ? live : bucketStart[d - 1];
+        for (int i = start; i < end; i++) {
+            order[i] = nameRank[order[i]];
+        }
+        Arrays.sort(order, start, end);
+        for (int i = start; i < end; i++) {
+            order[i] = byName[order[i]];
+            position[order[i]] = i;
+        }
+        sorted[d] = true;
+    }
+
+    private String name(int vertex) {
+        Object label = graph.getLabel(vertex);
+        return label == null ? "" : label.toString();
+    }
+}
@@ -0,0 +1,488 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * Least recently used cache of neighborhood query results of a {@link Graph}.
+ *
+ * A result is the int array a query returns, stored as is and keyed by the kind of query
+ * and the vertex asked about. Entries live in parallel arrays linked into a recency list
+ * and are found through an open addressing table of slot numbers, so a lookup boxes
+ * nothing. The cache holds at most a given number of entries and a given number of bytes,
+ * counting each entry as its array plus a fixed overhead; the least recently used entries
+ * are evicted to stay within both bounds.
+ *
+ * The cache follows the graph as a {@link GraphListener}. Friendships are stored in both
+ * directions, so a change to an edge from s to t only changes the friends of s and the
+ * friends of friends of s, of t and of the friends of s; exactly those entries are dropped.
+ * When fewer friends of friends are cached than s has friends, the cached entries are
+ * tested for a friendship with s instead of reading the row of s, so a change costs no
+ * more than the cache holds. A removed member is handled once, before its edges go: the
+ * friends of friends it changes are the entries of the member and the cached arrays that
+ * hold it, which are kept sorted, and the edges it then loses are not looked at again.
+ * Arrays returned by {@link #get} are shared and must not be changed.
+ * The cache is not thread safe.
+ */
+public class QueryCache implements GraphListener {
+    /**
+     * Kind of {@link GraphQueries#friends(int)} results
+     */
+    public static final int FRIENDS = 0;
+    /**
+     * Kind of {@link GraphQueries#friendsOfFriends(int)} results
+     */
+    public static final int FRIENDS_OF_FRIENDS = 1;
+    /**
+     * Bytes counted for an entry besides the elements of its array: array header, key,
+     * recency links and table slots
+     */
+    public static final int ENTRY_OVERHEAD = 48;
+    /**
+     * System property giving the largest number of entries of the caches made by
+     * {@link #fromProperties}; 0 turns them off
+     */
+    public static final String ENTRIES_PROPERTY = "graph.cache.entries";
+    /**
+     * System property giving the largest number of bytes of the caches made by
+     * {@link #fromProperties}
+     */
+    public static final String BYTES_PROPERTY = "graph.cache.bytes";
+    /**
+     * Entries kept when {@link #ENTRIES_PROPERTY} is not set
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+    /**
+     * Bytes kept when {@link #BYTES_PROPERTY} is not set, 64 MB
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private static final double LOAD_FACTOR = 0.5;
+
+    private final Graph graph;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    /**
+     * Key of every slot: kind in the high half, vertex in the low half
+     */
+    private long[] keys = new long[16];
+    private int[][] values = new int[16][];
+    /**
+     * Recency list through the slots, from head (most recent) to tail; free slots are
+     * chained through next
+     */
+    private int[] previous = new int[16];
+    private int[] next = new int[16];
+    private int head = -1;
+    private int tail = -1;
+    private int free = -1;
+    private int slotsUsed;
+    /**
+     * Open addressing table holding slot + 1, 0 for an empty position
+     */
+    private int[] table = new int[32];
+
+    private int count;
+    private long bytes;
+    private final int[] kindCounts = new int[2];
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    /**
+     * Vertex being removed, whose edge removals were accounted for in advance; -1 for none
+     */
+    private int removing = -1;
+    /**
+     * Buffer the friends of a changed vertex are read into
+     */
+    private int[] row = new int[16];
+
+    /**
+     * Creates a cache and starts following the changes of the graph
+     * @param graph graph whose results are cached
+     * @param maxEntries largest number of entries kept
+     * @param maxBytes largest number of bytes kept, see {@link #ENTRY_OVERHEAD}
+     */
+    public QueryCache(Graph graph, int maxEntries, long maxBytes) {
+        if (maxEntries < 1 || maxBytes < 1)
+            throw new IllegalArgumentException("Cache bounds must be positive: " + maxEntries + ", " + maxBytes);
+        this.graph = graph;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        graph.addGraphListener(this);
+    }
+
+    /**
+     * Creates a cache bounded by -Dgraph.cache.entries and -Dgraph.cache.bytes, or by
+     * {@link #DEFAULT_MAX_ENTRIES} and {@link #DEFAULT_MAX_BYTES} when they are not set
+     * @param graph graph whose results are cached
+     * @return the cache, following graph, or null when the entry bound is 0
+     */
+    public static QueryCache fromProperties(Graph graph) {
+        int maxEntries = Integer.getInteger(ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES);
+        if (maxEntries == 0)
+            return null;
+        return new QueryCache(graph, maxEntries, Long.getLong(BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * Stops following the changes of the graph. The entries can no longer be trusted afterwards.
+     */
+    public void detach() {
+        graph.removeGraphListener(this);
+    }
+
+    /**
+     * Graph this cache follows
+     * @return the graph
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Looks up a result and marks it most recently used
+     * @param kind {@link #FRIENDS} or {@link #FRIENDS_OF_FRIENDS}
+     * @param vertex vertex asked about
+     * @return the cached array, or null
+     */
+    public int[] get(int kind, int vertex) {
+        int slot = find(key(kind, vertex));
+        if (slot < 0) {
+            misses++;
+            return null;
+        }
+        hits++;
+        unlink(slot);
+        linkFirst(slot);
+        return values[slot];
+    }
+
+    /**
+     * Stores a result as the most recently used entry, evicting others as needed.
+     * A result too large for the byte bound by itself is not stored.
+     * @param kind {@link #FRIENDS} or {@link #FRIENDS_OF_FRIENDS}
+     * @param vertex vertex asked about
+     * @param result result of the query, kept without copying
+     */
+    public void put(int kind, int vertex, int[] result) {
+        long key = key(kind, vertex);
+        int slot = find(key);
+        if (slot >= 0)
+            remove(slot);
+        long size = sizeOf(result);
+        if (size > maxBytes)
+            return;
+        while (count > 0 && (count + 1 > maxEntries || bytes + size > maxBytes)) {
+            remove(tail);
+            evictions++;
+        }
+
+        slot = allocate();
+        keys[slot] = key;
+        values[slot] = result;
+        linkFirst(slot);
+        insert(slot);
+        count++;
+        bytes += size;
+        kindCounts[kind]++;
+    }
+
+    /**
+     * Drops the result of one query if it is cached
+     * @param kind {@link #FRIENDS} or {@link #FRIENDS_OF_FRIENDS}
+     * @param vertex vertex asked about
+     */
+    public void invalidate(int kind, int vertex) {
+        if (kindCounts[kind] == 0)
+            return;
+        int slot = find(key(kind, vertex));
+        if (slot >= 0) {
+            remove(slot);
+            invalidations++;
+        }
+    }
+
+    /**
+     * Drops every entry; the counters are kept
+     */
+    public void clear() {
+        while (count > 0) {
+            remove(tail);
+        }
+    }
+
+    @Override
+    public void edgeAdded(int source, int target) {
+        changed(source, target);
+    }
+
+    @Override
+    public void edgeRemoved(int source, int target) {
+        if (source != removing && target != removing)
+            changed(source, target);
+    }
+
+    /**
+     * Drops, once for all the edges the vertex is about to lose, its friends and friends
+     * of friends, the friends of its friends, and the friends of friends holding it
+     */
+    @Override
+    public void vertexRemoving(int vertex) {
+        removing = vertex;
+        invalidate(FRIENDS, vertex);
+        int degree = graph.degree(vertex);
+        if (kindCounts[FRIENDS] < degree) {
+            for (int slot = head; slot >= 0 && kindCounts[FRIENDS] > 0; ) {
+                int following = next[slot];
+                if (kind(slot) == FRIENDS && graph.isEdge(vertex(slot), vertex))
+                    drop(slot);
+                slot = following;
+            }
+        } else {
+            int count = readRow(vertex);
+            for (int i = 0; i < count; i++) {
+                invalidate(FRIENDS, row[i]);
+            }
+        }
+        invalidate(FRIENDS_OF_FRIENDS, vertex);
+        for (int slot = head; slot >= 0 && kindCounts[FRIENDS_OF_FRIENDS] > 0; ) {
+            int following = next[slot];
+            if (kind(slot) == FRIENDS_OF_FRIENDS && Arrays.binarySearch(values[slot], vertex) >= 0)
+                drop(slot);
+            slot = following;
+        }
+    }
+
+    @Override
+    public void vertexRemoved(int vertex) {
+        removing = -1;
+    }
+
+    @Override
+    public void verticesRenumbered(int[] mapping, int size) {
+        clear();
+    }
+
+    /**
+     * Number of entries
+     * @return entry count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Bytes counted for the entries
+     * @return size in bytes
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Number of lookups that found a result
+     * @return hit count
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of lookups that found nothing
+     * @return miss count
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Number of entries dropped to make room
+     * @return eviction count
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Number of entries dropped because the graph changed
+     * @return invalidation count
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Drops the entries that a change of the edge from source to target makes stale.
+     * The friends of source before the change are its friends now plus target.
+     */
+    private void changed(int source, int target) {
+        invalidate(FRIENDS, source);
+        if (kindCounts[FRIENDS_OF_FRIENDS] == 0)
+            return;
+        invalidate(FRIENDS_OF_FRIENDS, source);
+        invalidate(FRIENDS_OF_FRIENDS, target);
+        if (kindCounts[FRIENDS_OF_FRIENDS] < graph.degree(source)) {
+            // Fewer entries than friends: test the entries instead of reading the row
+            for (int slot = head; slot >= 0 && kindCounts[FRIENDS_OF_FRIENDS] > 0; ) {
+                int following = next[slot];
+                if (kind(slot) == FRIENDS_OF_FRIENDS && graph.isEdge(source, vertex(slot)))
+                    drop(slot);
+                slot = following;
+            }
+        } else {
+            int count = readRow(source);
+            for (int i = 0; i < count; i++) {
+                invalidate(FRIENDS_OF_FRIENDS, row[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads the friends of a vertex into the row buffer
+     * @return number of friends
+     */
+    private int readRow(int vertex) {
+        int degree = graph.degree(vertex);
+        if (degree > row.length)
+            row = new int[Math.max(degree, row.length * 2)];
+        return graph.neighbors(vertex, row);
+    }
+
+    private void drop(int slot) {
+        remove(slot);
+        invalidations++;
+    }
+
+    private int kind(int slot) {
+        return (int) (keys[slot] >>> 32);
+    }
+
+    private int vertex(int slot) {
+        return (int) keys[slot];
+    }
+
+    private static long key(int kind, int vertex) {
+        return ((long) kind << 32) | (vertex & 0xFFFFFFFFL);
+    }
+
+    private static long sizeOf(int[] result) {
+        return ENTRY_OVERHEAD + 4L * result.length;
+    }
+
+    private int find(long key) {
+        int mask = table.length - 1;
+        int position = hash(key) & mask;
+        while (table[position] != 0) {
+            int slot = table[position] - 1;
+            if (keys[slot] == key)
+                return slot;
+            position = (position + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void remove(int slot) {
+        long size = sizeOf(values[slot]);
+        delete(slot);
+        unlink(slot);
+        kindCounts[(int) (keys[slot] >>> 32)]--;
+        values[slot] = null;
+        next[slot] = free;
+        free = slot;
+        count--;
+        bytes -= size;
+    }
+
+    private int allocate() {
+        if (free >= 0) {
+            int slot = free;
+            free = next[slot];
+            return slot;
+        }
+        if (slotsUsed == keys.length) {
+            int capacity = keys.length << 1;
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return slotsUsed++;
+    }
+
+    private void linkFirst(int slot) {
+        previous[slot] = -1;
+        next[slot] = head;
+        if (head >= 0)
+            previous[head] = slot;
+        else
+            tail = slot;
+        head = slot;
+    }
+
+    private void unlink(int slot) {
+        if (previous[slot] >= 0)
+            next[previous[slot]] = next[slot];
+        else
+            head = next[slot];
+        if (next[slot] >= 0)
+            previous[next[slot]] = previous[slot];
+        else
+            tail = previous[slot];
+    }
+
+    private void insert(int slot) {
+        if (count + 1 > table.length * LOAD_FACTOR)
+            resize(table.length << 1);
+        int mask = table.length - 1;
+        int position = hash(keys[slot]) & mask;
+        while (table[position] != 0) {
+            position = (position + 1) & mask;
+        }
+        table[position] = slot + 1;
+    }
+
+    /**
+     * Empties the table position of a slot and shifts later entries of the probe run back
+     * so no lookup stops early
+     */
+    private void delete(int slot) {
+        int mask = table.length - 1;
+        int hole = hash(keys[slot]) & mask;
+        while (table[hole] != slot + 1) {
+            hole = (hole + 1) & mask;
+        }
+        int position = (hole + 1) & mask;
+        while (table[position] != 0) {
+            int home = hash(keys[table[position] - 1]) & mask;
+            // Move the entry into the hole unless its home lies cyclically in (hole, position]
+            if (((position - home) & mask) >= ((position - hole) & mask)) {
+                table[hole] = table[position];
+                hole = position;
+            }
+            position = (position + 1) & mask;
+        }
+        table[hole] = 0;
+    }
+
+    private void resize(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry : old) {
+            if (entry != 0) {
+                int position = hash(keys[entry - 1]) & mask;
+                while (table[position] != 0) {
+                    position = (position + 1) & mask;
+                }
+                table[position] = entry;
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,558 @@
+package com.company;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HTTP service answering the questions of the {@link Main} menu with JSON.
+ *
+ * <pre>
+ * GET  /friends?name=N            friends of N
+ * GET  /fof?name=N                friends and friends of the friends of N
+ * GET  /common?name=N&amp;other=M     common friends of N and M
+ * GET  /path?name=N&amp;other=M&amp;maxHops=H shortest chain of friends from N to M, at most H
+ *                                 hops (6 by default); hops is -1 and path empty when none
+ * GET  /suggest?name=N&amp;count=C   at most C people N may know, best first (10 by default)
+ * GET  /popularity?from=F&amp;count=C C members by popularity, then by names, from rank F
+ *                                 (0 and 10 by default)
+ * GET  /names?prefix=P&amp;count=C  at most C names starting with P, sorted (10 by default)
+ * GET  /similar?name=N&amp;count=C   at most C names at most 2 edits from N, closest first
+ * GET  /stats                     member and friendship counts and the friend count histogram
+ * GET  /metrics                   calls, latencies and work of every graph operation, see
+ *                                 {@link Metrics#toJson()}; empty unless -Dgraph.metrics=true
+ * POST /remove?name=N             removes N and every friendship of N
+ * </pre>
+ * Names are formatted by {@link Main#reformatString(String)} before the lookup. An unknown
+ * name gets 404, a missing or malformed parameter 400, any other failure 500; errors
+ * come as {"error": message}.
+ *
+ * Every request is handled on its own virtual thread when the JVM has them, and on a
+ * cached thread pool otherwise. Requests read the published version of a
+ * {@link ConcurrentGraph} and take no lock, except the popularity ranking, which is read
+ * under its lock. Query buffers are pooled and moved from version to version, so a
+ * publish does not make requests allocate them again. The ranking of a new version is
+ * built on a background thread while requests are answered from the previous one, so
+ * /popularity may lag the other paths by a version. Removals are queued on the
+ * ConcurrentGraph and answered with 202 Accepted: they become visible at its next publish.
+ */
+public class QueryServer {
+    /**
+     * Milliseconds between publishes of the graph served by {@link #main(String[])}
+     */
+    public static final long PUBLISH_PERIOD = 100;
+    /**
+     * Members in a page of the popularity ranking when the request does not say
+     */
+    public static final int DEFAULT_PAGE_SIZE = 10;
+
+    static {
+        // The JDK server writes the headers and the body of a response separately; with
+        // Nagle's algorithm on, the body then waits for the client's delayed ACK, about
+        // 40 ms per request on a kept-alive connection.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ConcurrentGraph graph;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile View view;
+    /**
+     * Queries not in use by a request, whatever version they last read; each holds its own
+     * friends of friends, path and suggestion buffers, which are kept across versions
+     */
+    private final ConcurrentLinkedQueue<GraphQueries> idle = new ConcurrentLinkedQueue<>();
+    /**
+     * Popularity ranking of the newest version one was built for; read under its own lock
+     */
+    private volatile GraphQueries ranked;
+    /**
+     * Builds the ranking of a newer version while requests read the older one
+     */
+    private final ExecutorService ranker;
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    /**
+     * Creates a server, not yet started
+     * @param graph graph to serve
+     * @param address address to listen on, port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public QueryServer(ConcurrentGraph graph, InetSocketAddress address) throws IOException {
+        this.graph = graph;
+        this.server = HttpServer.create(address, 0);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        this.ranker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "popularity-ranker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/friends", new Handler("GET") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                //A published version never changes, so its rows can be read in place
+                IntBuffer friends = view.graph.neighborView(vertex(view, parameters, "name"));
+                return names(view.graph, friends, new StringBuilder()).toString();
+            }
+        });
+        server.createContext("/fof", new Handler("GET") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                int vertex = vertex(view, parameters, "name");
+                GraphQueries queries = view.acquire();
+                try {
+                    return names(view.graph, queries.friendsOfFriends(vertex), new StringBuilder()).toString();
+                } finally {
+                    view.release(queries);
+                }
+            }
+        });
+        server.createContext("/common", new Handler("GET") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                int first = vertex(view, parameters, "name");
+                int second = vertex(view, parameters, "other");
+                return names(view.graph, view.graph.commonNeighbors(first, second), new StringBuilder()).toString();
+            }
+        });
+        server.createContext("/path", new Handler("GET") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                int first = vertex(view, parameters, "name");
+                int second = vertex(view, parameters, "other");
+                int maxHops = number(parameters, "maxHops", PathFinder.DEFAULT_MAX_HOPS);
+                GraphQueries queries = view.acquire();
+                try {
+                    int[] path = queries.path(first, second, maxHops);
+                    StringBuilder json = new StringBuilder("{\"hops\":").append(path.length - 1).append(",\"path\":");
+                    return names(view.graph, path, json).append('}').toString();
+                } finally {
+                    view.release(queries);
+                }
+            }
+        });
+        server.createContext("/suggest", new Handler("GET") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                int vertex = vertex(view, parameters, "name");
+                int count = number(parameters, "count", Recommender.DEFAULT_COUNT);
+                GraphQueries queries = view.acquire();
+                try {
+                    return names(view.graph, queries.suggestions(vertex, count), new StringBuilder()).toString();
+                } finally {
+                    view.release(queries);
+                }
+            }
+        });
+        server.createContext("/popularity", new Handler("GET") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                int from = number(parameters, "from", 0);
+                int count = number(parameters, "count", DEFAULT_PAGE_SIZE);
+                List<People> page = popularity(view, from, count);
+                StringBuilder json = new StringBuilder("[");
+                for (int i = 0; i < page.size(); i++) {
+                    if (i > 0)
+                        json.append(',');
+                    json.append("{\"rank\":").append(from + i + 1).append(",\"name\":");
+                    quote(page.get(i).name, json);
+                    json.append(",\"friends\":").append(page.get(i).getNumOfFriends()).append('}');
+                }
+                return json.append(']').toString();
+            }
+        });
+        server.createContext("/names", new Handler("GET") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                String prefix = text(parameters, "prefix");
+                int count = number(parameters, "count", NameIndex.DEFAULT_COUNT);
+                GraphQueries queries = view.acquire();
+                try {
+                    return names(view.graph, queries.namesStartingWith(prefix, count), new StringBuilder()).toString();
+                } finally {
+                    view.release(queries);
+                }
+            }
+        });
+        server.createContext("/similar", new Handler("GET") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                String name = text(parameters, "name");
+                int count = number(parameters, "count", NameIndex.DEFAULT_COUNT);
+                GraphQueries queries = view.acquire();
+                try {
+                    return names(view.graph, queries.similarNames(name, count), new StringBuilder()).toString();
+                } finally {
+                    view.release(queries);
+                }
+            }
+        });
+        server.createContext("/stats", new Handler("GET") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                GraphStats stats = view.graph.stats();
+                StringBuilder json = new StringBuilder("{\"members\":").append(stats.getVertexCount())
+                        .append(",\"friendships\":").append(stats.getEdgeCount() / 2)
+                        .append(",\"maxFriends\":").append(stats.getMaxDegree())
+                        .append(",\"averageFriends\":").append(stats.getAverageDegree())
+                        .append(",\"histogram\":[");
+                for (int d = 0; d <= stats.getMaxDegree(); d++) {
+                    if (d > 0)
+                        json.append(',');
+                    json.append(stats.getDegreeCount(d));
+                }
+                return json.append("]}").toString();
+            }
+        });
+        server.createContext("/metrics", new Handler("GET") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                return Metrics.toJson();
+            }
+        });
+        server.createContext("/remove", new Handler("POST") {
+            @Override
+            String answer(View view, Map<String, String> parameters) {
+                int vertex = vertex(view, parameters, "name");
+                graph.removeMember(vertex);
+                StringBuilder json = new StringBuilder("{\"name\":");
+                quote(String.valueOf(view.graph.getLabel(vertex)), json);
+                return json.append(",\"removed\":").append(view.graph.degree(vertex)).append('}').toString();
+            }
+
+            @Override
+            int status() {
+                return 202;
+            }
+        });
+    }
+
+    /**
+     * Starts answering requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting at most the given time for requests being answered
+     * @param delaySeconds seconds to wait
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        ranker.shutdown();
+    }
+
+    /**
+     * Port the server listens on, useful after binding port 0
+     * @return port number
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Serves a graph until the process is stopped
+     * @param args port, then either a snapshot file or an index file and a friend file
+     * @throws IOException if the files cannot be read or the port bound
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.out.println("Usage: QueryServer <port> (<snapshot file> | <index file> <friend file>)");
+            return;
+        }
+        Graph g;
+        if (args.length == 2) {
+            Path snapshot = Paths.get(args[1]);
+            if (!GraphSnapshot.verify(snapshot)) {
+                System.out.println("Snapshot file is corrupt!!");
+                return;
+            }
+            g = Graph.readSnapshot(snapshot);
+        } else {
+            GraphLoader loader = new GraphLoader(Runtime.getRuntime().availableProcessors());
+            g = loader.load(Paths.get(args[1]), Paths.get(args[2]));
+            if (!loader.countsMatch()) {
+                System.out.println("Specified count does not match the count of data in the file");
+            }
+        }
+        ConcurrentGraph shared = new ConcurrentGraph(g);
+        shared.startPublishing(PUBLISH_PERIOD, TimeUnit.MILLISECONDS);
+        QueryServer server = new QueryServer(shared, new InetSocketAddress(Integer.parseInt(args[0])));
+        server.start();
+        System.out.println("Serving " + g.size() + " members on port " + server.getPort());
+    }
+
+    /**
+     * Executor running every task on a new virtual thread. Virtual threads are looked up
+     * by reflection so the program still runs, on a cached pool, on JVMs without them.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "query-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * The view of the current published version, replaced when a new version is published
+     */
+    private View view() {
+        Graph snapshot = graph.snapshot();
+        View current = view;
+        if (current == null || current.graph != snapshot) {
+            current = new View(snapshot, idle);
+            view = current;
+        }
+        return current;
+    }
+
+    /**
+     * A page of the popularity ranking. The ranking is built once for the first version
+     * asked about; after that a request seeing a newer version starts building its
+     * ranking on the ranker thread, at most one build at a time, and is answered from the
+     * ranking already built, so no request waits for a build but the very first.
+     * The ranking is always of the newest version when its build starts.
+     */
+    private List<People> popularity(View view, int from, int count) {
+        GraphQueries current = ranked;
+        if (current == null) {
+            synchronized (this) {
+                if (ranked == null)
+                    ranked = rank(view.graph);
+                current = ranked;
+            }
+        } else if (current.getGraph() != graph.snapshot() && building.compareAndSet(false, true)) {
+            ranker.execute(() -> {
+                try {
+                    GraphQueries next = rank(graph.snapshot());
+                    GraphQueries previous = ranked;
+                    ranked = next;
+                    synchronized (previous) {
+                        previous.close();
+                    }
+                } finally {
+                    building.set(false);
+                }
+            });
+        }
+        synchronized (current) {
+            //A ranking closed after this request took it is replaced; read the new one
+            if (current != ranked)
+                return popularity(view, from, count);
+            return current.popularity(from, count);
+        }
+    }
+
+    private static GraphQueries rank(Graph graph) {
+        GraphQueries queries = new GraphQueries(graph);
+        queries.ranking();
+        return queries;
+    }
+
+    /**
+     * One published version, reading it with the queries of the server
+     */
+    private static final class View {
+        final Graph graph;
+        private final ConcurrentLinkedQueue<GraphQueries> idle;
+
+        View(Graph graph, ConcurrentLinkedQueue<GraphQueries> idle) {
+            this.graph = graph;
+            this.idle = idle;
+        }
+
+        /**
+         * Idle queries moved to this version, or new ones when none is idle
+         */
+        GraphQueries acquire() {
+            GraphQueries queries = idle.poll();
+            if (queries == null)
+                return new GraphQueries(graph);
+            if (queries.getGraph() != graph)
+                queries.setGraph(graph);
+            return queries;
+        }
+
+        void release(GraphQueries queries) {
+            idle.offer(queries);
+        }
+    }
+
+    /**
+     * Answers the requests of one path with JSON
+     */
+    private abstract class Handler implements HttpHandler {
+        private final String method;
+
+        Handler(String method) {
+            this.method = method;
+        }
+
+        /**
+         * Computes the answer
+         * @return the JSON body
+         * @throws IllegalArgumentException for a missing or malformed parameter
+         * @throws NotFoundException for an unknown name
+         */
+        abstract String answer(View view, Map<String, String> parameters);
+
+        /**
+         * Status of a successful answer
+         */
+        int status() {
+            return 200;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int status;
+            String body;
+            if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                status = 405;
+                body = error("Method must be " + method);
+            } else {
+                try {
+                    body = answer(view(), parameters(exchange.getRequestURI().getRawQuery()));
+                    status = status();
+                } catch (NotFoundException e) {
+                    status = 404;
+                    body = error(e.getMessage());
+                } catch (IllegalArgumentException e) {
+                    status = 400;
+                    body = error(e.getMessage());
+                } catch (RuntimeException e) {
+                    status = 500;
+                    body = error("Internal error: " + e);
+                }
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static int vertex(View view, Map<String, String> parameters, String key) {
+        String name = text(parameters, key);
+        int vertex = view.graph.getVertexIndex(Main.reformatString(name));
+        if (vertex < 0)
+            throw new NotFoundException("Given name does not exist");
+        return vertex;
+    }
+
+    /**
+     * A name in a request that no member has, answered with 404. Every other exception
+     * thrown while answering, an ArrayIndexOutOfBoundsException included, is a fault of
+     * the server and answered with 500.
+     */
+    private static final class NotFoundException extends RuntimeException {
+        NotFoundException(String message) {
+            super(message);
+        }
+    }
+
+    private static String text(Map<String, String> parameters, String key) {
+        String value = parameters.get(key);
+        if (value == null || value.isEmpty())
+            throw new IllegalArgumentException("Missing parameter " + key);
+        return value;
+    }
+
+    private static int number(Map<String, String> parameters, String key, int otherwise) {
+        String value = parameters.get(key);
+        if (value == null)
+            return otherwise;
+        try {
+            int number = Integer.parseInt(value);
+            if (number < 0)
+                throw new IllegalArgumentException("Negative parameter " + key);
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + key + " must be a number");
+        }
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null)
+            return parameters;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0)
+                continue;
+            parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static StringBuilder names(Graph g, int[] vertices, StringBuilder json) {
+        json.append('[');
+        for (int i = 0; i < vertices.length; i++) {
+            if (i > 0)
+                json.append(',');
+            quote(String.valueOf(g.getLabel(vertices[i])), json);
+        }
+        return json.append(']');
+    }
+
+    private static StringBuilder names(Graph g, IntBuffer vertices, StringBuilder json) {
+        json.append('[');
+        for (int i = 0; i < vertices.limit(); i++) {
+            if (i > 0)
+                json.append(',');
+            quote(String.valueOf(g.getLabel(vertices.get(i))), json);
+        }
+        return json.append(']');
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        quote(message, json);
+        return json.append('}').toString();
+    }
+
+    private static void quote(String string, StringBuilder json) {
+        json.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
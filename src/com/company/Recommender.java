@@ -0,0 +1,508 @@
+package com.company;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * "People you may know" suggestions over a {@link Graph}: the friends of the friends of a
+ * member who are not friends yet, scored by how closely they are linked to the member,
+ * best first.
+ *
+ * A query reads the row of the member, then the row of every friend, adding each friend
+ * of a friend to a sparse set of candidates: a candidate list plus a slot array indexed
+ * by vertex, where a vertex is in the set when its slot points back at it, so a new query
+ * starts by emptying the list and never clears the slots. The member and its friends go
+ * into the set first, marked as excluded, so no candidate needs an edge lookup. Only the
+ * best k candidates are kept, in a bounded min-heap of primitive arrays whose root is the
+ * weakest kept candidate. Equal scores rank the lower vertex number first.
+ *
+ * The work of a query grows with the squares of the friend counts of the friends of the
+ * member, so a few hubs cost more than all other friends together. A recommender can
+ * be given a friend count above which a friend is not followed: a common friend with
+ * thousands of friends says little about who else knows whom, and skipping hubs is what
+ * makes {@link #main(String[])} run in time on a large network. Hubs are still excluded
+ * as suggestions.
+ *
+ * Once its buffers have grown to the largest neighborhood seen a recommender allocates
+ * nothing per query. It is not thread safe; {@link #recommendAll} gives each worker its own.
+ */
+public class Recommender {
+    /**
+     * How closely a candidate is linked to the member
+     */
+    public enum Measure {
+        /**
+         * Number of friends in common
+         */
+        COMMON_FRIENDS,
+        /**
+         * Friends in common divided by the friends the two have together
+         */
+        JACCARD,
+        /**
+         * Friends in common, each counted 1 / ln(its friend count), so a common friend
+         * with few friends says more than a hub
+         */
+        ADAMIC_ADAR
+    }
+
+    /**
+     * Measure of the menu, batch and precomputed suggestions
+     */
+    public static final Measure DEFAULT_MEASURE = Measure.ADAMIC_ADAR;
+    /**
+     * Suggestions per member of the menu, batch and precomputed suggestions
+     */
+    public static final int DEFAULT_COUNT = 10;
+    /**
+     * Friend count above which {@link #main(String[])} does not follow a friend
+     */
+    public static final int DEFAULT_MAX_FRIEND_DEGREE = 1000;
+    /**
+     * Members handed to a worker at a time by {@link #recommendAll}; small enough that
+     * a member with hubs for friends does not hold up the others
+     */
+    private static final int CHUNK = 1 << 10;
+    /**
+     * Common friend count of the member and its friends, which are not candidates
+     */
+    private static final int EXCLUDED = -1;
+
+    private Graph graph;
+    private final Measure measure;
+    private final int maxFriendDegree;
+    /**
+     * Position in the candidate list of each vertex, valid only when it points back at it
+     */
+    private int[] slots;
+    private int[] candidates = new int[16];
+    private int[] common = new int[16];
+    private double[] weights = new double[16];
+    private int candidateCount;
+    private int[] row = new int[16];
+    private int[] friendRow = new int[16];
+    private int[] heapVertices = new int[16];
+    private double[] heapScores = new double[16];
+    private int count;
+    private int verticesRead;
+    private long edgesRead;
+
+    /**
+     * Precomputed suggestions of every member, kept in two flat arrays
+     */
+    public static final class Table {
+        private final int k;
+        private final int[] vertices;
+        private final float[] scores;
+
+        Table(int n, int k) {
+            this.k = k;
+            this.vertices = new int[Math.multiplyExact(n, k)];
+            this.scores = new float[vertices.length];
+            Arrays.fill(vertices, -1);
+        }
+
+        /**
+         * Largest number of suggestions per member
+         * @return k
+         */
+        public int getK() {
+            return k;
+        }
+
+        /**
+         * Number of suggestions of a member
+         * @param vertex member vertex number
+         * @return suggestion count, at most k
+         */
+        public int getCount(int vertex) {
+            int count = 0;
+            while (count < k && vertices[vertex * k + count] >= 0) {
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * One suggestion of a member
+         * @param vertex member vertex number
+         * @param i rank, 0 being the best
+         * @return vertex number of the suggested member, -1 past the last suggestion
+         */
+        public int get(int vertex, int i) {
+            checkRank(i);
+            return vertices[vertex * k + i];
+        }
+
+        /**
+         * Score of one suggestion of a member
+         * @param vertex member vertex number
+         * @param i rank, 0 being the best
+         * @return score of the suggestion
+         */
+        public float getScore(int vertex, int i) {
+            checkRank(i);
+            return scores[vertex * k + i];
+        }
+
+        private void checkRank(int i) {
+            if (i < 0 || i >= k)
+                throw new ArrayIndexOutOfBoundsException(i);
+        }
+    }
+
+    /**
+     * Creates a recommender for the graph following every friend
+     * @param graph graph to read
+     * @param measure how candidates are scored
+     */
+    public Recommender(Graph graph, Measure measure) {
+        this(graph, measure, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a recommender for the graph
+     * @param graph graph to read
+     * @param measure how candidates are scored
+     * @param maxFriendDegree friend count above which a friend is not followed
+     */
+    public Recommender(Graph graph, Measure measure, int maxFriendDegree) {
+        if (measure == null)
+            throw new NullPointerException("measure");
+        if (maxFriendDegree < 0)
+            throw new IllegalArgumentException("Friend count limit must not be negative: " + maxFriendDegree);
+        this.graph = graph;
+        this.measure = measure;
+        this.maxFriendDegree = maxFriendDegree;
+        this.slots = new int[graph.size()];
+    }
+
+    /**
+     * Reads another graph from now on, such as a newer version of the same network,
+     * keeping the slots and buffers grown so far. The last suggestions are forgotten.
+     * @param graph graph to read
+     */
+    public void setGraph(Graph graph) {
+        this.graph = graph;
+        candidateCount = 0;
+        count = 0;
+    }
+
+    /**
+     * How candidates are scored
+     * @return the measure
+     */
+    public Measure getMeasure() {
+        return measure;
+    }
+
+    /**
+     * Finds the best suggestions for a member
+     * @param vertex member vertex number
+     * @param k largest number of suggestions
+     * @return number of suggestions found, readable through {@link #get(int)} and
+     *         {@link #getScore(int)} best first
+     * @throws ArrayIndexOutOfBoundsException when the vertex is not a valid vertex number
+     */
+    public int recommend(int vertex, int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("Suggestion count must not be negative: " + k);
+        checkVertex(vertex);
+        if (slots.length < graph.size())
+            slots = Arrays.copyOf(slots, Math.max(graph.size(), slots.length * 2));
+        candidateCount = 0;
+        count = 0;
+        verticesRead = 0;
+        edgesRead = 0;
+        if (k == 0)
+            return 0;
+
+        int degree = graph.degree(vertex);
+        if (degree > row.length)
+            row = new int[Math.max(degree, row.length * 2)];
+        graph.neighbors(vertex, row);
+        verticesRead = 1;
+        edgesRead = degree;
+        add(vertex, EXCLUDED, 0);
+        for (int i = 0; i < degree; i++) {
+            add(row[i], EXCLUDED, 0);
+        }
+        for (int i = 0; i < degree; i++) {
+            int friendDegree = graph.degree(row[i]);
+            if (friendDegree > maxFriendDegree)
+                continue;
+            if (friendDegree > friendRow.length)
+                friendRow = new int[Math.max(friendDegree, friendRow.length * 2)];
+            graph.neighbors(row[i], friendRow);
+            verticesRead++;
+            edgesRead += friendDegree;
+            //The friend has the member and the candidate as friends, so at least two
+            double weight = friendDegree < 2 ? 0 : 1 / Math.log(friendDegree);
+            for (int j = 0; j < friendDegree; j++) {
+                int candidate = friendRow[j];
+                int slot = slots[candidate];
+                if (slot < candidateCount && candidates[slot] == candidate) {
+                    if (common[slot] != EXCLUDED) {
+                        common[slot]++;
+                        weights[slot] += weight;
+                    }
+                } else {
+                    add(candidate, 1, weight);
+                }
+            }
+        }
+
+        if (k > heapVertices.length) {
+            heapVertices = new int[Math.max(k, heapVertices.length * 2)];
+            heapScores = new double[heapVertices.length];
+        }
+        for (int slot = 0; slot < candidateCount; slot++) {
+            if (common[slot] != EXCLUDED)
+                offer(candidates[slot], score(degree, slot), k);
+        }
+        //Popping the weakest candidate into the last free position leaves the best first
+        for (int last = count - 1; last > 0; last--) {
+            int vertexAtRoot = heapVertices[0];
+            double scoreAtRoot = heapScores[0];
+            heapVertices[0] = heapVertices[last];
+            heapScores[0] = heapScores[last];
+            siftDown(0, last);
+            heapVertices[last] = vertexAtRoot;
+            heapScores[last] = scoreAtRoot;
+        }
+        return count;
+    }
+
+    /**
+     * Number of suggestions found by the last query
+     * @return suggestion count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Number of vertices whose friends the last query read
+     * @return vertex count
+     */
+    public int getVerticesRead() {
+        return verticesRead;
+    }
+
+    /**
+     * Number of edges the last query read
+     * @return edge count
+     */
+    public long getEdgesRead() {
+        return edgesRead;
+    }
+
+    /**
+     * One suggestion found by the last query
+     * @param i rank, less than size(), 0 being the best
+     * @return vertex number of the suggested member
+     */
+    public int get(int i) {
+        if (i >= count)
+            throw new ArrayIndexOutOfBoundsException(i);
+        return heapVertices[i];
+    }
+
+    /**
+     * Score of one suggestion found by the last query
+     * @param i rank, less than size(), 0 being the best
+     * @return score under the measure of this recommender
+     */
+    public double getScore(int i) {
+        if (i >= count)
+            throw new ArrayIndexOutOfBoundsException(i);
+        return heapScores[i];
+    }
+
+    /**
+     * Copy of the suggestions found by the last query
+     * @return vertex numbers, best first
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(heapVertices, count);
+    }
+
+    /**
+     * Finds the best suggestions of every member on a ForkJoinPool.
+     * The graph must not change while it runs.
+     * @param graph graph to read
+     * @param measure how candidates are scored
+     * @param k largest number of suggestions per member
+     * @param maxFriendDegree friend count above which a friend is not followed
+     * @param parallelism number of worker threads
+     * @return suggestions of every vertex, none for removed vertices
+     */
+    public static Table recommendAll(Graph graph, Measure measure, int k, int maxFriendDegree, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        int n = graph.size();
+        Table table = new Table(n, k);
+        ConcurrentLinkedQueue<Recommender> idle = new ConcurrentLinkedQueue<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(n / CHUNK + 1);
+        for (int from = 0; from < n; from += CHUNK) {
+            int start = from;
+            int end = Math.min(n, from + CHUNK);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                Recommender recommender = idle.poll();
+                if (recommender == null)
+                    recommender = new Recommender(graph, measure, maxFriendDegree);
+                for (int v = start; v < end; v++) {
+                    if (graph.isRemoved(v))
+                        continue;
+                    int found = recommender.recommend(v, k);
+                    for (int i = 0; i < found; i++) {
+                        table.vertices[v * k + i] = recommender.heapVertices[i];
+                        table.scores[v * k + i] = (float) recommender.heapScores[i];
+                    }
+                }
+                idle.offer(recommender);
+            }));
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        } finally {
+            pool.shutdown();
+        }
+        return table;
+    }
+
+    /**
+     * Writes the suggestions of every member of a graph read from text files or a snapshot
+     * to a result file: one line per member, the member and then the suggested members,
+     * best first, separated by tabs. Friends with more than
+     * {@link #DEFAULT_MAX_FRIEND_DEGREE} friends are not followed.
+     * @param args either a snapshot file or an index file and a friend file, then the result file
+     * @throws IOException when a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.out.println("Usage: Recommender (<snapshot file> | <index file> <friend file>) <result file>");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        Graph g;
+        if (args.length == 2) {
+            g = Graph.readSnapshot(Paths.get(args[0]));
+        } else {
+            GraphLoader loader = new GraphLoader(threads);
+            g = loader.load(Paths.get(args[0]), Paths.get(args[1]));
+            if (!loader.countsMatch()) {
+                System.out.println("Specified count does not match the count of data in the file");
+            }
+        }
+        long start = System.nanoTime();
+        Table table = recommendAll(g, DEFAULT_MEASURE, DEFAULT_COUNT, DEFAULT_MAX_FRIEND_DEGREE, threads);
+        System.out.format("%,d members, %,.1f ms%n", g.size(), (System.nanoTime() - start) / 1e6);
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[args.length - 1]), StandardCharsets.UTF_8)) {
+            for (int v = 0; v < g.size(); v++) {
+                if (g.isRemoved(v))
+                    continue;
+                out.write(String.valueOf(g.getLabel(v)));
+                for (int i = 0; i < table.getK() && table.get(v, i) >= 0; i++) {
+                    out.write('\t');
+                    out.write(String.valueOf(g.getLabel(table.get(v, i))));
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    private void add(int vertex, int commonCount, double weight) {
+        if (candidateCount == candidates.length) {
+            candidates = Arrays.copyOf(candidates, candidateCount * 2);
+            common = Arrays.copyOf(common, candidateCount * 2);
+            weights = Arrays.copyOf(weights, candidateCount * 2);
+        }
+        slots[vertex] = candidateCount;
+        candidates[candidateCount] = vertex;
+        common[candidateCount] = commonCount;
+        weights[candidateCount] = weight;
+        candidateCount++;
+    }
+
+    private double score(int degree, int slot) {
+        switch (measure) {
+            case COMMON_FRIENDS:
+                return common[slot];
+            case JACCARD:
+                return (double) common[slot] / (degree + graph.degree(candidates[slot]) - common[slot]);
+            default:
+                return weights[slot];
+        }
+    }
+
+    /**
+     * Keeps a candidate if fewer than k are kept or it beats the weakest one kept
+     */
+    private void offer(int vertex, double score, int k) {
+        if (count < k) {
+            int at = count++;
+            //Sift up
+            while (at > 0) {
+                int parent = (at - 1) >>> 1;
+                if (!weaker(vertex, score, heapVertices[parent], heapScores[parent]))
+                    break;
+                heapVertices[at] = heapVertices[parent];
+                heapScores[at] = heapScores[parent];
+                at = parent;
+            }
+            heapVertices[at] = vertex;
+            heapScores[at] = score;
+        } else if (weaker(heapVertices[0], heapScores[0], vertex, score)) {
+            heapVertices[0] = vertex;
+            heapScores[0] = score;
+            siftDown(0, count);
+        }
+    }
+
+    private void siftDown(int at, int size) {
+        int vertex = heapVertices[at];
+        double score = heapScores[at];
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && weaker(heapVertices[child + 1], heapScores[child + 1],
+                    heapVertices[child], heapScores[child]))
+                child++;
+            if (!weaker(heapVertices[child], heapScores[child], vertex, score))
+                break;
+            heapVertices[at] = heapVertices[child];
+            heapScores[at] = heapScores[child];
+            at = child;
+        }
+        heapVertices[at] = vertex;
+        heapScores[at] = score;
+    }
+
+    /**
+     * Whether the first candidate ranks below the second: a lower score, or the same
+     * score and a higher vertex number
+     */
+    private static boolean weaker(int vertex, double score, int otherVertex, double otherScore) {
+        return score < otherScore || (score == otherScore && vertex > otherVertex);
+    }
+
+    /**
+     * The slots may be longer than the graph, so vertex numbers are checked against it
+     */
+    private void checkVertex(int vertex) {
+        if (vertex < 0 || vertex >= graph.size())
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+}
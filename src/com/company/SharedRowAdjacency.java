@@ -0,0 +1,206 @@
+package com.company;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Storage whose rows are shared with its copies until they change. Every vertex keeps its
+ * sorted targets in an array of its own, so {@link #copy()} only copies the array of rows
+ * and the row lengths, O(n), and the copy and the original share every row. A row is
+ * copied the first time either of them changes it after a copy; a row that is not shared
+ * is changed in place and doubles its room when full. A bit per vertex records which rows
+ * are not shared.
+ *
+ * {@link ConcurrentGraph} keeps its versions in this storage, so publishing a batch copies
+ * the rows the batch changes rather than every row. Every row costs an array header more
+ * than in {@link CsrAdjacency}.
+ */
+public class SharedRowAdjacency implements Adjacency {
+    private static final int[] EMPTY = {};
+
+    /**
+     * Number of vertices; the per vertex arrays may be longer
+     */
+    private int vertices;
+    /**
+     * rows[v] holds the targets of v, sorted, in its first lengths[v] slots
+     */
+    private int[][] rows;
+    /**
+     * lengths[v] is the number of edges leaving v
+     */
+    private int[] lengths;
+    /**
+     * Bit v is set when rows[v] belongs to this storage alone and may be changed in place
+     */
+    private long[] owned;
+
+    /**
+     * Creates storage with n vertices and no edges
+     * @param n number of vertices
+     */
+    public SharedRowAdjacency(int n) {
+        vertices = n;
+        rows = new int[n][];
+        Arrays.fill(rows, EMPTY);
+        lengths = new int[n];
+        owned = new long[(n + 63) >>> 6];
+    }
+
+    /**
+     * Copies other storage into rows of their own
+     * @param edges storage to copy
+     * @return storage with the same edges
+     */
+    public static SharedRowAdjacency copyOf(Adjacency edges) {
+        int n = edges.size();
+        SharedRowAdjacency answer = new SharedRowAdjacency(n);
+        for (int v = 0; v < n; v++) {
+            int[] row = edges.neighbors(v);
+            answer.rows[v] = row;
+            answer.lengths[v] = row.length;
+        }
+        Arrays.fill(answer.owned, -1L);
+        return answer;
+    }
+
+    @Override
+    public int size() {
+        return vertices;
+    }
+
+    @Override
+    public int addVertex() {
+        if (vertices == rows.length) {
+            int capacity = Math.max(16, vertices * 2);
+            rows = Arrays.copyOf(rows, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            owned = Arrays.copyOf(owned, (capacity + 63) >>> 6);
+        }
+        rows[vertices] = EMPTY;
+        return vertices++;
+    }
+
+    @Override
+    public boolean addEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        int length = lengths[source];
+        int position = Arrays.binarySearch(rows[source], 0, length, target);
+        if (position >= 0)
+            return false;
+        position = -(position + 1);
+        int[] row = writableRow(source, length + 1);
+        System.arraycopy(row, position, row, position + 1, length - position);
+        row[position] = target;
+        lengths[source]++;
+        return true;
+    }
+
+    @Override
+    public boolean removeEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        int length = lengths[source];
+        int position = Arrays.binarySearch(rows[source], 0, length, target);
+        if (position < 0)
+            return false;
+        int[] row = writableRow(source, length);
+        System.arraycopy(row, position + 1, row, position, length - position - 1);
+        lengths[source]--;
+        return true;
+    }
+
+    @Override
+    public boolean isEdge(int source, int target) {
+        checkVertex(source);
+        checkVertex(target);
+        return Arrays.binarySearch(rows[source], 0, lengths[source], target) >= 0;
+    }
+
+    @Override
+    public int degree(int vertex) {
+        checkVertex(vertex);
+        return lengths[vertex];
+    }
+
+    @Override
+    public int[] neighbors(int vertex) {
+        checkVertex(vertex);
+        return Arrays.copyOf(rows[vertex], lengths[vertex]);
+    }
+
+    @Override
+    public int neighbors(int vertex, int[] buffer) {
+        checkVertex(vertex);
+        System.arraycopy(rows[vertex], 0, buffer, 0, lengths[vertex]);
+        return lengths[vertex];
+    }
+
+    @Override
+    public IntBuffer neighborView(int vertex) {
+        checkVertex(vertex);
+        return IntBuffer.wrap(rows[vertex], 0, lengths[vertex]).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Creates a copy sharing every row with this storage. Neither changes a shared row
+     * afterwards; each copies a row before its first change.
+     * @return copy of the edges
+     */
+    @Override
+    public Adjacency copy() {
+        SharedRowAdjacency answer = new SharedRowAdjacency(0);
+        answer.vertices = vertices;
+        answer.rows = rows.clone();
+        answer.lengths = lengths.clone();
+        answer.owned = new long[owned.length];
+        Arrays.fill(owned, 0);
+        return answer;
+    }
+
+    @Override
+    public Adjacency renumber(int[] mapping, int size) {
+        SharedRowAdjacency answer = new SharedRowAdjacency(size);
+        for (int v = 0; v < vertices; v++) {
+            if (mapping[v] < 0)
+                continue;
+            int[] row = rows[v];
+            int[] renumbered = new int[lengths[v]];
+            int count = 0;
+            for (int i = 0; i < lengths[v]; i++) {
+                if (mapping[row[i]] >= 0)
+                    renumbered[count++] = mapping[row[i]];
+            }
+            //Renumbering keeps the order of the vertices, so the row stays sorted
+            answer.rows[mapping[v]] = count == renumbered.length ? renumbered : Arrays.copyOf(renumbered, count);
+            answer.lengths[mapping[v]] = count;
+        }
+        Arrays.fill(answer.owned, -1L);
+        return answer;
+    }
+
+    /**
+     * Makes the row of a vertex one this storage alone holds, with room for a length
+     * @param vertex vertex about to change
+     * @param length number of targets the row must have room for
+     * @return the row, copied if it was shared or too small
+     */
+    private int[] writableRow(int vertex, int length) {
+        int[] row = rows[vertex];
+        long bit = 1L << vertex;
+        boolean mine = (owned[vertex >>> 6] & bit) != 0;
+        int capacity = row.length >= length ? row.length : Math.max(4, Math.max(length, row.length * 2));
+        if (!mine || capacity != row.length) {
+            row = Arrays.copyOf(row, capacity);
+            rows[vertex] = row;
+            owned[vertex >>> 6] |= bit;
+        }
+        return row;
+    }
+
+    private void checkVertex(int vertex) {
+        if (vertex < 0 || vertex >= vertices)
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+}
@@ -0,0 +1,201 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * Reusable friends plus friends-of-friends expansion over a {@link Graph}.
+ *
+ * Visited vertices are marked by writing the current epoch into an int array, so
+ * starting a new query is one increment instead of clearing n flags. Results go to an
+ * internal int buffer that is reused by the next query. Once the buffers have grown
+ * to the largest neighborhood seen, queries allocate nothing.
+ *
+ * An expander is not thread safe; give every thread its own.
+ */
+public class TwoHopExpander {
+    private Graph graph;
+    private int[] stamps;
+    private int epoch;
+    private int[] result = new int[16];
+    private int count;
+    private int[] friends = new int[16];
+    private int[] friendsOfFriend = new int[16];
+    private int verticesRead;
+    private long edgesRead;
+
+    /**
+     * Creates an expander for the graph
+     * @param graph graph to expand
+     */
+    public TwoHopExpander(Graph graph) {
+        this.graph = graph;
+        this.stamps = new int[graph.size()];
+    }
+
+    /**
+     * Graph this expander reads
+     * @return the graph
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Expands another graph from now on, such as a newer version of the same network,
+     * keeping the stamps and buffers grown so far. The last result is forgotten.
+     * @param graph graph to expand
+     */
+    public void setGraph(Graph graph) {
+        this.graph = graph;
+        count = 0;
+    }
+
+    /**
+     * Collects every friend and friend of a friend of the vertex, without the vertex itself
+     * @param vertex vertex to expand
+     * @param sorted true to return the vertices in ascending order, otherwise friends come first
+     *               followed by friends of friends in the order they were reached
+     * @param limit largest number of vertices to collect; when it is reached the expansion stops,
+     *              so direct friends are always kept before friends of friends
+     * @return number of vertices collected, readable through {@link #get(int)} or {@link #result()}
+     * @throws ArrayIndexOutOfBoundsException when the vertex is not a valid vertex number
+     */
+    public int expand(int vertex, boolean sorted, int limit) {
+        checkVertex(vertex);
+        nextEpoch();
+        count = 0;
+        verticesRead = 0;
+        edgesRead = 0;
+        stamps[vertex] = epoch;
+
+        int friendCount = readNeighbors(vertex, true);
+        for (int i = 0; i < friendCount && count < limit; i++) {
+            visit(friends[i]);
+        }
+        for (int i = 0; i < friendCount && count < limit; i++) {
+            int fofCount = readNeighbors(friends[i], false);
+            for (int j = 0; j < fofCount && count < limit; j++) {
+                visit(friendsOfFriend[j]);
+            }
+        }
+
+        if (sorted)
+            Arrays.sort(result, 0, count);
+        return count;
+    }
+
+    /**
+     * Collects every friend and friend of a friend of the vertex in ascending order
+     * @param vertex vertex to expand
+     * @return number of vertices collected
+     * @throws ArrayIndexOutOfBoundsException when the vertex is not a valid vertex number
+     */
+    public int expand(int vertex) {
+        return expand(vertex, true, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Number of vertices collected by the last expansion
+     * @return vertex count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * One vertex collected by the last expansion
+     * @param i position, less than size()
+     * @return vertex number
+     */
+    public int get(int i) {
+        if (i >= count)
+            throw new ArrayIndexOutOfBoundsException(i);
+        return result[i];
+    }
+
+    /**
+     * Internal result buffer; the first size() elements hold the last expansion.
+     * It is overwritten by the next expansion.
+     * @return result buffer
+     */
+    public int[] result() {
+        return result;
+    }
+
+    /**
+     * Copy of the last expansion
+     * @return vertices collected
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Number of vertices whose friends the last expansion read
+     * @return vertex count
+     */
+    public int getVerticesRead() {
+        return verticesRead;
+    }
+
+    /**
+     * Number of edges the last expansion read
+     * @return edge count
+     */
+    public long getEdgesRead() {
+        return edgesRead;
+    }
+
+    private void visit(int vertex) {
+        if (stamps[vertex] != epoch) {
+            stamps[vertex] = epoch;
+            if (count == result.length)
+                result = Arrays.copyOf(result, count * 2);
+            result[count++] = vertex;
+        }
+    }
+
+    /**
+     * Copies the neighbors of a vertex into one of the two row buffers, growing it if needed
+     * @param vertex vertex number
+     * @param first true for the friend buffer, false for the friend of friend buffer
+     * @return number of neighbors
+     */
+    private int readNeighbors(int vertex, boolean first) {
+        int degree = graph.degree(vertex);
+        verticesRead++;
+        edgesRead += degree;
+        if (first) {
+            if (degree > friends.length)
+                friends = new int[Math.max(degree, friends.length * 2)];
+            return graph.neighbors(vertex, friends);
+        }
+        if (degree > friendsOfFriend.length)
+            friendsOfFriend = new int[Math.max(degree, friendsOfFriend.length * 2)];
+        return graph.neighbors(vertex, friendsOfFriend);
+    }
+
+    /**
+     * Starts a new query, clearing the stamps only when the epoch wraps around.
+     * The stamps grow by doubling when vertices have been added; older stamps are all
+     * below the new epoch, so they stay valid.
+     */
+    private void nextEpoch() {
+        if (stamps.length < graph.size()) {
+            stamps = Arrays.copyOf(stamps, Math.max(graph.size(), stamps.length * 2));
+        }
+        epoch++;
+        if (epoch == 0) {
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * The stamps may be longer than the graph, so vertex numbers are checked against it
+     */
+    private void checkVertex(int vertex) {
+        if (vertex < 0 || vertex >= graph.size())
+            throw new ArrayIndexOutOfBoundsException(vertex);
+    }
+}
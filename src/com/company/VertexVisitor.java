@@ -0,0 +1,15 @@
+package com.company;
+
+/**
+ * Callback given every vertex a {@link GraphTraversal} reaches.
+ */
+public interface VertexVisitor {
+
+    /**
+     * Called once for every vertex reached, in traversal order
+     * @param vertex vertex number
+     * @param depth number of edges between the start and the vertex along the traversal
+     * @return true to continue the traversal, false to stop it
+     */
+    boolean visit(int vertex, int depth);
+}